@@ -1,5 +1,11 @@
 package com.rusel.RCTBluetoothSerial;
 
+import com.rusel.RCTBluetoothSerial.pump.PumpExecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 public class BluetoothSerialConfiguration {
 
     private final String socketFolderPath;
@@ -7,6 +13,53 @@ public class BluetoothSerialConfiguration {
     private String incomingSocketPath;
     private String controlSocketPath;
 
+    // Buffers used to pump data between bluetooth and the unix sockets
+    private int pumpMinBufferSize = 1024;
+    private int pumpMaxBufferSize = 32 * 1024;
+    private long bufferPoolMaxBytes = 1024 * 1024;
+
+    // Threads running the pumps. Each connection needs two, and more with buffering or coalescing.
+    private int pumpMaxThreads = 64;
+    private PumpExecutor.QueuePolicy pumpQueuePolicy = PumpExecutor.QueuePolicy.REJECT;
+    private int pumpQueueCapacity = 16;
+    private long pumpThreadKeepAliveMillis = 30 * 1000;
+
+    // Coalescing of small writes from the local socket into larger bluetooth writes
+    private boolean writeCoalescingEnabled = false;
+    private int coalesceTargetBytes = 4096;
+    private long coalesceMaxDelayMicros = 2000;
+
+    // Outgoing connection attempts
+    private int connectWorkers = 4;
+    private long connectTimeoutMillis = 15 * 1000;
+    private ConnectRetryPolicy connectRetryPolicy = ConnectRetryPolicy.NONE;
+
+    // Buffering between the two sides of each direction of a connection
+    private boolean intermediateBufferingEnabled = false;
+    private int intermediateBufferSize = 64 * 1024;
+    private int intermediateBufferHighWatermark = 48 * 1024;
+    private int intermediateBufferLowWatermark = 16 * 1024;
+    private long intermediateBufferBudgetBytes = 2 * 1024 * 1024;
+
+    // Carrying many connections to the same device over one bluetooth link
+    private boolean multiplexingEnabled = false;
+    private int multiplexChannelWindow = 64 * 1024;
+    private int multiplexMaxFrameSize = 4096;
+    private long multiplexBufferBudgetBytes = 4 * 1024 * 1024;
+
+    // Control socket
+    private boolean controlBinaryEncodingEnabled = false;
+    private List<String> additionalControlSocketNames = Collections.emptyList();
+
+    // Devices seen by recent scans
+    private long discoveryCacheTimeToLiveMillis = 5 * 60 * 1000;
+    private int discoveryCacheMaxDevices = 256;
+
+    // Giving the radio over to connections while discovery is running
+    private boolean discoveryPausedDuringConnects = true;
+    private boolean discoveryPausedDuringTransfers = false;
+    private long discoveryMaxDeferralMillis = 60 * 1000;
+
     public BluetoothSerialConfiguration(String socketFolderPath) {
         this.socketFolderPath = socketFolderPath;
     }
@@ -32,4 +85,338 @@ public class BluetoothSerialConfiguration {
     public String getControlSocketPath() {
         return getUnixSocketPath("manyverse_bt_control.sock");
     }
+
+    /**
+     * The control socket, followed by any additional ones.
+     */
+    public List<String> getControlSocketPaths() {
+        List<String> paths = new ArrayList<>();
+        paths.add(getControlSocketPath());
+
+        for (String socketName : additionalControlSocketNames) {
+            paths.add(getUnixSocketPath(socketName));
+        }
+
+        return paths;
+    }
+
+    public int getPumpMinBufferSize() {
+        return pumpMinBufferSize;
+    }
+
+    /**
+     * The buffer size a connection starts with, and shrinks back to when idle. Rounded up to a power of two.
+     */
+    public void setPumpMinBufferSize(int pumpMinBufferSize) {
+        this.pumpMinBufferSize = pumpMinBufferSize;
+    }
+
+    public int getPumpMaxBufferSize() {
+        return pumpMaxBufferSize;
+    }
+
+    /**
+     * The largest buffer a connection grows to under sustained load. Rounded up to a power of two.
+     */
+    public void setPumpMaxBufferSize(int pumpMaxBufferSize) {
+        this.pumpMaxBufferSize = pumpMaxBufferSize;
+    }
+
+    public long getBufferPoolMaxBytes() {
+        return bufferPoolMaxBytes;
+    }
+
+    /**
+     * The most memory the shared buffer pool keeps hold of for reuse between connections.
+     */
+    public void setBufferPoolMaxBytes(long bufferPoolMaxBytes) {
+        this.bufferPoolMaxBytes = bufferPoolMaxBytes;
+    }
+
+    public int getPumpMaxThreads() {
+        return pumpMaxThreads;
+    }
+
+    /**
+     * The maximum number of pump threads. Each bridged connection uses two while it is open.
+     */
+    public void setPumpMaxThreads(int pumpMaxThreads) {
+        this.pumpMaxThreads = pumpMaxThreads;
+    }
+
+    public PumpExecutor.QueuePolicy getPumpQueuePolicy() {
+        return pumpQueuePolicy;
+    }
+
+    /**
+     * What happens to new connections when every pump thread is busy: they are either refused, or
+     * accepted with their pumps waiting (up to the pump queue capacity) until there is a free thread
+     * for each of them.
+     */
+    public void setPumpQueuePolicy(PumpExecutor.QueuePolicy pumpQueuePolicy) {
+        this.pumpQueuePolicy = pumpQueuePolicy;
+    }
+
+    public int getPumpQueueCapacity() {
+        return pumpQueueCapacity;
+    }
+
+    public void setPumpQueueCapacity(int pumpQueueCapacity) {
+        this.pumpQueueCapacity = pumpQueueCapacity;
+    }
+
+    public long getPumpThreadKeepAliveMillis() {
+        return pumpThreadKeepAliveMillis;
+    }
+
+    /**
+     * How long an idle pump thread is kept around for reuse by later connections.
+     */
+    public void setPumpThreadKeepAliveMillis(long pumpThreadKeepAliveMillis) {
+        this.pumpThreadKeepAliveMillis = pumpThreadKeepAliveMillis;
+    }
+
+    public boolean isWriteCoalescingEnabled() {
+        return writeCoalescingEnabled;
+    }
+
+    /**
+     * When enabled, data read from the local sockets is held back until there is coalesceTargetBytes
+     * of it or coalesceMaxDelayMicros have passed, then written to bluetooth in one go. This trades a
+     * little latency for fewer, larger RFCOMM writes. Each connection then needs one more pump thread,
+     * which makes the writes whose delay has run out.
+     */
+    public void setWriteCoalescingEnabled(boolean writeCoalescingEnabled) {
+        this.writeCoalescingEnabled = writeCoalescingEnabled;
+    }
+
+    public int getCoalesceTargetBytes() {
+        return coalesceTargetBytes;
+    }
+
+    public void setCoalesceTargetBytes(int coalesceTargetBytes) {
+        this.coalesceTargetBytes = coalesceTargetBytes;
+    }
+
+    public long getCoalesceMaxDelayMicros() {
+        return coalesceMaxDelayMicros;
+    }
+
+    public void setCoalesceMaxDelayMicros(long coalesceMaxDelayMicros) {
+        this.coalesceMaxDelayMicros = coalesceMaxDelayMicros;
+    }
+
+    public boolean isIntermediateBufferingEnabled() {
+        return intermediateBufferingEnabled;
+    }
+
+    /**
+     * When enabled, each direction of a connection gets a buffer between its reading and writing side,
+     * so that a slow reader on one side does not immediately stall the other. The reading side pauses
+     * when the buffer fills to the high watermark and resumes once it drains to the low watermark.
+     *
+     * Connections made once intermediateBufferBudgetBytes worth of buffers are in use are not buffered.
+     */
+    public void setIntermediateBufferingEnabled(boolean intermediateBufferingEnabled) {
+        this.intermediateBufferingEnabled = intermediateBufferingEnabled;
+    }
+
+    public int getIntermediateBufferSize() {
+        return intermediateBufferSize;
+    }
+
+    public void setIntermediateBufferSize(int intermediateBufferSize) {
+        this.intermediateBufferSize = intermediateBufferSize;
+    }
+
+    public int getIntermediateBufferHighWatermark() {
+        return intermediateBufferHighWatermark;
+    }
+
+    public void setIntermediateBufferHighWatermark(int intermediateBufferHighWatermark) {
+        this.intermediateBufferHighWatermark = intermediateBufferHighWatermark;
+    }
+
+    public int getIntermediateBufferLowWatermark() {
+        return intermediateBufferLowWatermark;
+    }
+
+    public void setIntermediateBufferLowWatermark(int intermediateBufferLowWatermark) {
+        this.intermediateBufferLowWatermark = intermediateBufferLowWatermark;
+    }
+
+    public long getIntermediateBufferBudgetBytes() {
+        return intermediateBufferBudgetBytes;
+    }
+
+    public void setIntermediateBufferBudgetBytes(long intermediateBufferBudgetBytes) {
+        this.intermediateBufferBudgetBytes = intermediateBufferBudgetBytes;
+    }
+
+    public int getConnectWorkers() {
+        return connectWorkers;
+    }
+
+    /**
+     * The number of outgoing connection attempts that may be in progress at once.
+     */
+    public void setConnectWorkers(int connectWorkers) {
+        this.connectWorkers = connectWorkers;
+    }
+
+    public long getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    /**
+     * How long an outgoing connection attempt may take before it is abandoned and reported as failed.
+     */
+    public void setConnectTimeoutMillis(long connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public ConnectRetryPolicy getConnectRetryPolicy() {
+        return connectRetryPolicy;
+    }
+
+    /**
+     * How failed outgoing connection attempts are retried. By default they are not. Can be changed
+     * later with the 'setRetryPolicy' control command.
+     */
+    public void setConnectRetryPolicy(ConnectRetryPolicy connectRetryPolicy) {
+        this.connectRetryPolicy = connectRetryPolicy;
+    }
+
+    public boolean isMultiplexingEnabled() {
+        return multiplexingEnabled;
+    }
+
+    /**
+     * Whether connections to the same device share a single bluetooth link, each as its own channel.
+     * Both devices must have it enabled. Off by default.
+     */
+    public void setMultiplexingEnabled(boolean multiplexingEnabled) {
+        this.multiplexingEnabled = multiplexingEnabled;
+    }
+
+    public int getMultiplexChannelWindow() {
+        return multiplexChannelWindow;
+    }
+
+    /**
+     * How many bytes the other device may send on a channel before we have passed them on to the local
+     * socket. Each channel buffers up to this much.
+     */
+    public void setMultiplexChannelWindow(int multiplexChannelWindow) {
+        this.multiplexChannelWindow = multiplexChannelWindow;
+    }
+
+    public int getMultiplexMaxFrameSize() {
+        return multiplexMaxFrameSize;
+    }
+
+    /**
+     * The largest payload sent in one frame. Smaller frames let channels take turns on the link more often.
+     * Must not be larger than the other device's setting.
+     */
+    public void setMultiplexMaxFrameSize(int multiplexMaxFrameSize) {
+        this.multiplexMaxFrameSize = multiplexMaxFrameSize;
+    }
+
+    public long getMultiplexBufferBudgetBytes() {
+        return multiplexBufferBudgetBytes;
+    }
+
+    /**
+     * How much memory the receive buffers of all channels may take together. Each channel takes
+     * multiplexChannelWindow bytes, and channels that don't fit are refused.
+     */
+    public void setMultiplexBufferBudgetBytes(long multiplexBufferBudgetBytes) {
+        this.multiplexBufferBudgetBytes = multiplexBufferBudgetBytes;
+    }
+
+    public boolean isControlBinaryEncodingEnabled() {
+        return controlBinaryEncodingEnabled;
+    }
+
+    /**
+     * Whether the other side of the control socket is offered a length prefixed CBOR encoding instead
+     * of JSON when we connect to it. Off by default.
+     */
+    public void setControlBinaryEncodingEnabled(boolean controlBinaryEncodingEnabled) {
+        this.controlBinaryEncodingEnabled = controlBinaryEncodingEnabled;
+    }
+
+    public List<String> getAdditionalControlSocketNames() {
+        return additionalControlSocketNames;
+    }
+
+    /**
+     * Names of further control sockets in the socket folder, for other clients such as a monitoring
+     * agent. Each is connected to like the main one, and has its own queue of events. None by default.
+     */
+    public void setAdditionalControlSocketNames(List<String> additionalControlSocketNames) {
+        this.additionalControlSocketNames = additionalControlSocketNames;
+    }
+
+    public long getDiscoveryCacheTimeToLiveMillis() {
+        return discoveryCacheTimeToLiveMillis;
+    }
+
+    /**
+     * How long a device found by a scan is remembered without being seen again. Discovery requests may
+     * be answered from the remembered devices if they ask for results no older than this.
+     */
+    public void setDiscoveryCacheTimeToLiveMillis(long discoveryCacheTimeToLiveMillis) {
+        this.discoveryCacheTimeToLiveMillis = discoveryCacheTimeToLiveMillis;
+    }
+
+    public int getDiscoveryCacheMaxDevices() {
+        return discoveryCacheMaxDevices;
+    }
+
+    /**
+     * The most devices remembered. The least recently seen is forgotten to make room.
+     */
+    public void setDiscoveryCacheMaxDevices(int discoveryCacheMaxDevices) {
+        this.discoveryCacheMaxDevices = discoveryCacheMaxDevices;
+    }
+
+    public boolean isDiscoveryPausedDuringConnects() {
+        return discoveryPausedDuringConnects;
+    }
+
+    /**
+     * When enabled, discovery is held back while outgoing connection attempts are in progress, as an
+     * inquiry running alongside them makes them much slower and more likely to fail. A scan requested
+     * meanwhile starts once they are done, and a scan in progress is suspended and then resumed.
+     */
+    public void setDiscoveryPausedDuringConnects(boolean discoveryPausedDuringConnects) {
+        this.discoveryPausedDuringConnects = discoveryPausedDuringConnects;
+    }
+
+    public boolean isDiscoveryPausedDuringTransfers() {
+        return discoveryPausedDuringTransfers;
+    }
+
+    /**
+     * When enabled, discovery is also held back while any connection is open, for the sake of its
+     * throughput. Scans then only run while nothing is connected, or fail once held back for longer
+     * than the maximum deferral.
+     */
+    public void setDiscoveryPausedDuringTransfers(boolean discoveryPausedDuringTransfers) {
+        this.discoveryPausedDuringTransfers = discoveryPausedDuringTransfers;
+    }
+
+    public long getDiscoveryMaxDeferralMillis() {
+        return discoveryMaxDeferralMillis;
+    }
+
+    /**
+     * How long a scan may be held back while the radio is busy before it is given up, and the requests
+     * waiting on it told that it failed.
+     */
+    public void setDiscoveryMaxDeferralMillis(long discoveryMaxDeferralMillis) {
+        this.discoveryMaxDeferralMillis = discoveryMaxDeferralMillis;
+    }
 }
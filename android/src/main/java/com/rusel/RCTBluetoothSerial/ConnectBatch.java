@@ -0,0 +1,78 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Connects to a set of addresses, with at most a given number of attempts from the batch in progress
+ * at once, and reports every address's outcome together when the last attempt finishes.
+ */
+public class ConnectBatch implements ConnectResultListener {
+
+    public interface Listener {
+
+        void onBatchComplete(List<ConnectResult> results);
+    }
+
+    private final UnixSocketBridge bridge;
+    private final Iterator<String> remaining;
+    private final int total;
+    private final Listener listener;
+
+    private final List<ConnectResult> results = new ArrayList<>();
+
+    ConnectBatch(UnixSocketBridge bridge, List<String> remoteAddresses, Listener listener) {
+        LinkedHashSet<String> uniqueAddresses = new LinkedHashSet<>(remoteAddresses);
+
+        this.bridge = bridge;
+        this.remaining = uniqueAddresses.iterator();
+        this.total = uniqueAddresses.size();
+        this.listener = listener;
+    }
+
+    void start(int parallelism) {
+        if (total == 0) {
+            listener.onBatchComplete(results);
+            return;
+        }
+
+        for (int i = 0; i < Math.max(1, parallelism); i++) {
+            if (!startNext()) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void onConnectResult(String remoteAddress, boolean success, String reason) {
+        boolean complete;
+
+        synchronized (this) {
+            results.add(new ConnectResult(remoteAddress, success, reason));
+            complete = results.size() == total;
+        }
+
+        if (complete) {
+            listener.onBatchComplete(results);
+        } else {
+            startNext();
+        }
+    }
+
+    private boolean startNext() {
+        String address;
+
+        synchronized (this) {
+            if (!remaining.hasNext()) {
+                return false;
+            }
+
+            address = remaining.next();
+        }
+
+        bridge.connectToBluetoothAddress(address, this);
+        return true;
+    }
+}
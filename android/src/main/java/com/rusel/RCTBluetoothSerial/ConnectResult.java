@@ -0,0 +1,26 @@
+package com.rusel.RCTBluetoothSerial;
+
+public class ConnectResult {
+
+    private final String remoteAddress;
+    private final boolean success;
+    private final String reason;
+
+    public ConnectResult(String remoteAddress, boolean success, String reason) {
+        this.remoteAddress = remoteAddress;
+        this.success = success;
+        this.reason = reason;
+    }
+
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+}
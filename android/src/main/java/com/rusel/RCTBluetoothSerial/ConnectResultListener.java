@@ -0,0 +1,14 @@
+package com.rusel.RCTBluetoothSerial;
+
+/**
+ * Told the outcome of an outgoing connection attempt. Requests for an address that already has an
+ * attempt in progress share the outcome of that attempt.
+ */
+public interface ConnectResultListener {
+
+    /**
+     * @param reason why the attempt failed, or null if it succeeded.
+     */
+    void onConnectResult(String remoteAddress, boolean success, String reason);
+
+}
@@ -0,0 +1,68 @@
+package com.rusel.RCTBluetoothSerial;
+
+/**
+ * How failed outgoing connection attempts are retried. The delay before retry n (counting from 1) is
+ * initialDelayMillis * multiplier^(n - 1), capped at maxDelayMillis, then randomly moved by up to
+ * +/- jitter (a fraction of the delay) so that retries to many devices don't all land at once.
+ */
+public class ConnectRetryPolicy {
+
+    /**
+     * Failed attempts are reported straight away and never retried.
+     */
+    public static final ConnectRetryPolicy NONE = new ConnectRetryPolicy(0, 0, 0, 1, 0);
+
+    private final int maxRetries;
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final double multiplier;
+    private final double jitter;
+
+    public ConnectRetryPolicy(int maxRetries,
+                              long initialDelayMillis,
+                              long maxDelayMillis,
+                              double multiplier,
+                              double jitter) {
+        if (maxRetries < 0 || initialDelayMillis < 0 || maxDelayMillis < initialDelayMillis
+                || multiplier < 1 || jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("Invalid retry policy");
+        }
+
+        this.maxRetries = maxRetries;
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long getInitialDelayMillis() {
+        return initialDelayMillis;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * @param retry the retry number, starting from 1.
+     * @param random a value in [0, 1) used to apply the jitter.
+     */
+    long delayBeforeRetry(int retry, double random) {
+        double delay = Math.min(maxDelayMillis, initialDelayMillis * Math.pow(multiplier, retry - 1));
+        double jittered = delay * (1 + jitter * (2 * random - 1));
+
+        return Math.max(0, Math.round(jittered));
+    }
+}
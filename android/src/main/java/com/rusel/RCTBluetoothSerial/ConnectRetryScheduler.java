@@ -0,0 +1,167 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schedules retries of failed outgoing connection attempts with exponential backoff, keeping the
+ * backoff state of each address until it connects, runs out of retries or is cancelled. All retries
+ * are run from a single timer thread.
+ */
+public class ConnectRetryScheduler {
+
+    public interface RetryTarget {
+
+        void retryConnection(String remoteAddress);
+    }
+
+    private static class BackoffState {
+        int retries = 0;
+        boolean cancelled = false;
+        ScheduledFuture<?> scheduledRetry = null;
+    }
+
+    private final RetryTarget retryTarget;
+    private final Random random = new Random();
+    private final Map<String, BackoffState> backoffStates = new HashMap<>();
+    private final AtomicLong scheduledRetries = new AtomicLong();
+
+    private volatile ConnectRetryPolicy policy;
+    private ScheduledExecutorService timer = null;
+
+    public ConnectRetryScheduler(ConnectRetryPolicy policy, RetryTarget retryTarget) {
+        this.policy = policy;
+        this.retryTarget = retryTarget;
+    }
+
+    public ConnectRetryPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Applies to retries scheduled from now on. Addresses already waiting keep their scheduled retry.
+     */
+    public void setPolicy(ConnectRetryPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Called when an attempt to connect to the address has failed.
+     *
+     * @return true if a retry has been scheduled, false if the failure is final.
+     */
+    public synchronized boolean onFailure(final String remoteAddress) {
+        BackoffState state = backoffStates.get(remoteAddress);
+
+        if (state == null) {
+            state = new BackoffState();
+            backoffStates.put(remoteAddress, state);
+        }
+
+        ConnectRetryPolicy currentPolicy = policy;
+
+        if (state.cancelled || state.retries >= currentPolicy.getMaxRetries()) {
+            backoffStates.remove(remoteAddress);
+            return false;
+        }
+
+        state.retries++;
+        long delay = currentPolicy.delayBeforeRetry(state.retries, random.nextDouble());
+
+        state.scheduledRetry = getTimer().schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ConnectRetryScheduler.this) {
+                    BackoffState current = backoffStates.get(remoteAddress);
+                    if (current == null || current.cancelled) {
+                        return;
+                    }
+                    current.scheduledRetry = null;
+                }
+
+                retryTarget.retryConnection(remoteAddress);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+
+        scheduledRetries.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Called when a first attempt to connect to the address is queued. Starts its backoff state afresh,
+     * so that a cancellation made while that attempt is in progress is honoured if it fails.
+     */
+    public synchronized void attemptQueued(String remoteAddress) {
+        BackoffState previous = backoffStates.put(remoteAddress, new BackoffState());
+
+        if (previous != null && previous.scheduledRetry != null) {
+            previous.scheduledRetry.cancel(false);
+        }
+    }
+
+    /**
+     * Forgets the backoff state of an address, e.g. because it has connected.
+     */
+    public synchronized void reset(String remoteAddress) {
+        backoffStates.remove(remoteAddress);
+    }
+
+    /**
+     * Stops retrying the address.
+     *
+     * @return true if a retry was waiting to run and has been called off. If an attempt is queued or in
+     * progress instead, it is left to finish but won't be retried if it fails.
+     */
+    public synchronized boolean cancel(String remoteAddress) {
+        BackoffState state = backoffStates.get(remoteAddress);
+
+        if (state == null) {
+            return false;
+        }
+
+        state.cancelled = true;
+
+        if (state.scheduledRetry != null && state.scheduledRetry.cancel(false)) {
+            backoffStates.remove(remoteAddress);
+            return true;
+        }
+
+        return false;
+    }
+
+    public synchronized int getWaitingCount() {
+        int waiting = 0;
+        for (BackoffState state : backoffStates.values()) {
+            if (state.scheduledRetry != null) {
+                waiting++;
+            }
+        }
+        return waiting;
+    }
+
+    public long getScheduledRetryCount() {
+        return scheduledRetries.get();
+    }
+
+    private ScheduledExecutorService getTimer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "bt-connect-retry");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return timer;
+    }
+}
@@ -1,23 +1,21 @@
 package com.rusel.RCTBluetoothSerial;
 
-public class ConnectionStatusNotifier {
+/**
+ * Receives the lifecycle events of connections proxied by the UnixSocketBridge. With multiplexing,
+ * each channel of a link is a connection of its own, identified by its channel id.
+ */
+public interface ConnectionStatusNotifier {
 
-    private final RCTBluetoothSerialModule serialModule;
+    /**
+     * The channel id of a connection that has its bluetooth link to itself, and of failures that
+     * happened before a channel was opened.
+     */
+    int NO_CHANNEL = 0;
 
-    public ConnectionStatusNotifier(RCTBluetoothSerialModule serialModule) {
-        this.serialModule = serialModule;
-    }
+    void onConnectionSuccess(String remoteAddress, int channelId, boolean incoming);
 
-    public void onConnectionSuccess(String remoteAddress, boolean incoming) {
-        serialModule.onConnectionSuccess(remoteAddress, "", incoming);
-    }
+    void onConnectionFailure(String remoteAddress, int channelId, String reason, boolean incoming);
 
-    public void onConnectionFailure(String remoteAddress, String reason, boolean incoming) {
-        serialModule.onConnectionFailed(remoteAddress, reason, incoming);
-    }
-
-    public void onDisconnect(String remoteAddress, String reason) {
-        serialModule.onConnectionLost(remoteAddress, reason);
-    }
+    void onDisconnect(String remoteAddress, int channelId, String reason);
 
 }
@@ -1,12 +1,23 @@
 package com.rusel.RCTBluetoothSerial;
 
-import android.bluetooth.BluetoothDevice;
-
 import java.util.List;
 
 public interface DiscoveredBluetoothDevicesHandler {
 
-    void onDiscovered(List<BluetoothDevice> devices);
+    /**
+     * Called as soon as each device is first seen during the scan, before onDiscovered.
+     */
+    void onDeviceFound(DiscoveredDevice device);
+
+    /**
+     * Called with all the devices found once the scan has finished, each once.
+     */
+    void onDiscovered(List<DiscoveredDevice> devices);
+
+    /**
+     * Called instead of onDiscovered if the scan could not be carried out.
+     */
+    void onDiscoveryFailed(String reason);
 
     void onBluetoothDisabled();
 
@@ -0,0 +1,62 @@
+package com.rusel.RCTBluetoothSerial;
+
+import android.bluetooth.BluetoothDevice;
+
+/**
+ * A device found by a discovery scan, with what the scan reported about it.
+ */
+public class DiscoveredDevice {
+
+    public static final short UNKNOWN_RSSI = Short.MIN_VALUE;
+    public static final int UNKNOWN_DEVICE_CLASS = -1;
+
+    private final BluetoothDevice device;
+    private final short rssi;
+    private final int deviceClass;
+    private final long lastSeenMillis;
+
+    public DiscoveredDevice(BluetoothDevice device, short rssi, int deviceClass, long lastSeenMillis) {
+        this.device = device;
+        this.rssi = rssi;
+        this.deviceClass = deviceClass;
+        this.lastSeenMillis = lastSeenMillis;
+    }
+
+    public BluetoothDevice getDevice() {
+        return device;
+    }
+
+    public String getAddress() {
+        return device.getAddress();
+    }
+
+    /**
+     * In dBm, or UNKNOWN_RSSI if the scan did not report it.
+     */
+    public short getRssi() {
+        return rssi;
+    }
+
+    /**
+     * As in BluetoothClass.Device, or UNKNOWN_DEVICE_CLASS if the scan did not report it.
+     */
+    public int getDeviceClass() {
+        return deviceClass;
+    }
+
+    public long getLastSeenMillis() {
+        return lastSeenMillis;
+    }
+
+    /**
+     * Combines this with a later report of the same device. The strongest signal is kept, as a single
+     * weak reading is often just a fade, and the device class if the later report lacks it.
+     */
+    public DiscoveredDevice mergeWith(DiscoveredDevice later) {
+        return new DiscoveredDevice(
+                later.device,
+                (short) Math.max(rssi, later.rssi),
+                later.deviceClass != UNKNOWN_DEVICE_CLASS ? later.deviceClass : deviceClass,
+                later.lastSeenMillis);
+    }
+}
@@ -0,0 +1,114 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The devices seen by recent scans, so that a request for nearby devices can be answered straight
+ * away if a scan finished recently enough, rather than with a new inquiry. Devices not seen again
+ * within the time to live are forgotten, and once full the least recently seen device is dropped.
+ */
+public class DiscoveredDeviceCache {
+
+    private final long timeToLiveMillis;
+    private final int maxDevices;
+
+    /**
+     * Keyed by address, least recently seen first.
+     */
+    private final LinkedHashMap<String, DiscoveredDevice> entries = new LinkedHashMap<>();
+
+    private long lastScanFinishedMillis = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    public DiscoveredDeviceCache(long timeToLiveMillis, int maxDevices) {
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.maxDevices = maxDevices;
+    }
+
+    /**
+     * Replaces what was known about the device with the latest report of it, except for a signal
+     * strength or device class the report lacks, which are kept from before.
+     */
+    public synchronized void recordSeen(DiscoveredDevice device) {
+        // Removed first, so that it moves to the end as the most recently seen
+        DiscoveredDevice earlier = entries.remove(device.getAddress());
+
+        if (earlier != null) {
+            device = new DiscoveredDevice(
+                    device.getDevice(),
+                    device.getRssi() != DiscoveredDevice.UNKNOWN_RSSI ? device.getRssi() : earlier.getRssi(),
+                    device.getDeviceClass() != DiscoveredDevice.UNKNOWN_DEVICE_CLASS
+                            ? device.getDeviceClass()
+                            : earlier.getDeviceClass(),
+                    device.getLastSeenMillis());
+        }
+
+        entries.put(device.getAddress(), device);
+
+        if (entries.size() > maxDevices) {
+            Iterator<DiscoveredDevice> leastRecentlySeen = entries.values().iterator();
+            leastRecentlySeen.next();
+            leastRecentlySeen.remove();
+        }
+    }
+
+    public synchronized void recordScanFinished() {
+        lastScanFinishedMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the devices seen within the given time, least recently seen first, or null if no scan
+     * has finished within it. A device missing from an older scan may just not have been looked for.
+     */
+    public synchronized List<DiscoveredDevice> getDevicesSeenWithin(long maxAgeMillis) {
+        long now = System.currentTimeMillis();
+        removeExpired(now);
+
+        if (lastScanFinishedMillis == 0 || now - lastScanFinishedMillis > maxAgeMillis) {
+            misses++;
+            return null;
+        }
+
+        hits++;
+
+        List<DiscoveredDevice> devices = new ArrayList<>();
+        for (DiscoveredDevice device : entries.values()) {
+            if (now - device.getLastSeenMillis() <= maxAgeMillis) {
+                devices.add(device);
+            }
+        }
+
+        return devices;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        removeExpired(System.currentTimeMillis());
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("devices", entries.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+
+        return stats;
+    }
+
+    private void removeExpired(long now) {
+        Iterator<DiscoveredDevice> leastRecentlySeen = entries.values().iterator();
+
+        while (leastRecentlySeen.hasNext()) {
+            if (now - leastRecentlySeen.next().getLastSeenMillis() <= timeToLiveMillis) {
+                // The rest were seen more recently
+                return;
+            }
+
+            leastRecentlySeen.remove();
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package com.rusel.RCTBluetoothSerial;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothClass;
+import android.bluetooth.BluetoothDevice;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+import com.rusel.RCTBluetoothSerial.trace.TraceEvent;
+import com.rusel.RCTBluetoothSerial.trace.Tracer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs at most one discovery scan at a time. A request made while a scan is running joins it rather
+ * than restarting the inquiry: it is sent the devices found so far, then the rest as they are found,
+ * and the full result when the scan finishes, along with every other request waiting on it.
+ *
+ * The inquiry is held back while the radio scheduler reports the radio busy: a scan requested then is
+ * deferred until it is free, and a scan in progress is suspended by cancelling the inquiry, then
+ * resumed with a fresh one. Devices found before the suspension are kept. A scan held back for longer
+ * than the maximum deferral is abandoned, as the radio may stay busy for as long as a connection is open.
+ * While no inquiry of the scan's own is running, the end of an inquiry is not taken for the end of the
+ * scan: it may be another app's, or one cancelled from elsewhere.
+ *
+ * If the adapter refuses to start an inquiry, the scan is abandoned and every request waiting on it
+ * is told it failed. Only a scan whose inquiry ran to completion counts as finished for the cache.
+ * Handlers are told of the end of a scan once the coordinator's lock has been released.
+ */
+public class DiscoveryCoordinator {
+
+    private final Context context;
+    private final BluetoothAdapter bluetoothAdapter;
+    private final DiscoveredDeviceCache discoveredDeviceCache;
+    private final RadioScheduler radioScheduler;
+    private final long maxDeferralMillis;
+
+    private final List<DiscoveredBluetoothDevicesHandler> waitingHandlers = new ArrayList<>();
+
+    /**
+     * Registered for the scan in progress, or null if there is none.
+     */
+    private BroadcastReceiver scanReceiver = null;
+
+    /**
+     * Whether the adapter has been asked to inquire for the scan in progress.
+     */
+    private boolean inquiring = false;
+
+    /**
+     * Whether the scan in progress was suspended, and the adapter has not yet reported the end of the
+     * cancelled inquiry. That report must not be taken for the end of the scan.
+     */
+    private boolean awaitingCancelledInquiry = false;
+
+    /**
+     * Found by the scan in progress, keyed by address, in the order they were found.
+     */
+    private final LinkedHashMap<String, DiscoveredDevice> foundDevices = new LinkedHashMap<>();
+
+    /**
+     * Abandons the scan in progress if it is still held back by then, or null if it is inquiring.
+     */
+    private ScheduledFuture<?> deferralDeadline = null;
+    private ScheduledExecutorService timer = null;
+
+    private long scans = 0;
+    private long joinedRequests = 0;
+    private long deferredScans = 0;
+    private long suspendedScans = 0;
+    private long expiredDeferrals = 0;
+
+    public DiscoveryCoordinator(Context context,
+                                BluetoothAdapter bluetoothAdapter,
+                                DiscoveredDeviceCache discoveredDeviceCache,
+                                RadioScheduler radioScheduler,
+                                long maxDeferralMillis) {
+        this.context = context;
+        this.bluetoothAdapter = bluetoothAdapter;
+        this.discoveredDeviceCache = discoveredDeviceCache;
+        this.radioScheduler = radioScheduler;
+        this.maxDeferralMillis = maxDeferralMillis;
+
+        radioScheduler.setListener(new RadioScheduler.Listener() {
+            @Override
+            public void onBusyChanged() {
+                onRadioBusyChanged();
+            }
+        });
+    }
+
+    public void discover(DiscoveredBluetoothDevicesHandler handler) {
+        if (bluetoothAdapter == null) {
+            handler.onBluetoothNotSupported();
+            return;
+        } else if (!bluetoothAdapter.isEnabled()) {
+            handler.onBluetoothDisabled();
+            return;
+        }
+
+        List<DiscoveredBluetoothDevicesHandler> failedHandlers;
+
+        synchronized (this) {
+            waitingHandlers.add(handler);
+
+            if (scanReceiver != null) {
+                joinedRequests++;
+                Tracer.trace(Tracer.DEBUG, TraceEvent.DISCOVERY_JOINED, null, foundDevices.size());
+
+                for (DiscoveredDevice device : foundDevices.values()) {
+                    handler.onDeviceFound(device);
+                }
+
+                return;
+            }
+
+            failedHandlers = startScan();
+        }
+
+        reportFailure(failedHandlers, "Could not start discovery.");
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("scanning", scanReceiver != null);
+        stats.put("inquiring", inquiring);
+        stats.put("scans", scans);
+        stats.put("joinedRequests", joinedRequests);
+        stats.put("deferredScans", deferredScans);
+        stats.put("suspendedScans", suspendedScans);
+        stats.put("expiredDeferrals", expiredDeferrals);
+
+        return stats;
+    }
+
+    /**
+     * @return null unless the scan has been abandoned, as for startInquiry.
+     */
+    private List<DiscoveredBluetoothDevicesHandler> startScan() {
+        IntentFilter intentFilter = new IntentFilter();
+        intentFilter.addAction(BluetoothDevice.ACTION_FOUND);
+        intentFilter.addAction(BluetoothAdapter.ACTION_DISCOVERY_FINISHED);
+
+        scanReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                String action = intent.getAction();
+
+                if (BluetoothDevice.ACTION_FOUND.equals(action)) {
+                    onDeviceFound(this, toDiscoveredDevice(intent));
+                } else if (BluetoothAdapter.ACTION_DISCOVERY_FINISHED.equals(action)) {
+                    onInquiryFinished(this);
+                }
+            }
+        };
+
+        context.registerReceiver(scanReceiver, intentFilter);
+
+        scans++;
+        Tracer.trace(Tracer.INFO, TraceEvent.DISCOVERY_STARTED, null, waitingHandlers.size());
+
+        if (radioScheduler.isBusy()) {
+            deferredScans++;
+            Tracer.trace(Tracer.INFO, TraceEvent.DISCOVERY_DEFERRED, null);
+            scheduleDeferralDeadline();
+            return null;
+        }
+
+        return startInquiry();
+    }
+
+    /**
+     * Called with the lock held.
+     *
+     * @return null if the inquiry has started. Otherwise the scan has been abandoned, and these are the
+     * handlers that were waiting on it, to be told once the lock has been released.
+     */
+    private List<DiscoveredBluetoothDevicesHandler> startInquiry() {
+        inquiring = true;
+        cancelDeferralDeadline();
+
+        if (bluetoothAdapter.startDiscovery()) {
+            return null;
+        }
+
+        Tracer.trace(Tracer.WARN, TraceEvent.DISCOVERY_FINISHED, null, "Could not start discovery");
+        return endScan();
+    }
+
+    private void onRadioBusyChanged() {
+        List<DiscoveredBluetoothDevicesHandler> failedHandlers = null;
+
+        synchronized (this) {
+            if (scanReceiver == null) {
+                return;
+            }
+
+            if (radioScheduler.isBusy()) {
+                if (inquiring) {
+                    inquiring = false;
+                    awaitingCancelledInquiry = true;
+                    suspendedScans++;
+
+                    Tracer.trace(Tracer.INFO, TraceEvent.DISCOVERY_SUSPENDED, null, foundDevices.size());
+                    bluetoothAdapter.cancelDiscovery();
+                    scheduleDeferralDeadline();
+                }
+            } else if (!inquiring && !awaitingCancelledInquiry) {
+                // Otherwise resumed once the cancelled inquiry has been reported finished
+                Tracer.trace(Tracer.INFO, TraceEvent.DISCOVERY_RESUMED, null, foundDevices.size());
+                failedHandlers = startInquiry();
+            }
+        }
+
+        reportFailure(failedHandlers, "Could not start discovery.");
+    }
+
+    private void onInquiryFinished(BroadcastReceiver receiver) {
+        List<DiscoveredBluetoothDevicesHandler> failedHandlers = null;
+        boolean completed;
+
+        synchronized (this) {
+            if (receiver != scanReceiver) {
+                return;
+            }
+
+            if (awaitingCancelledInquiry) {
+                // The end of the suspended inquiry, not of the scan
+                completed = false;
+                awaitingCancelledInquiry = false;
+
+                if (!radioScheduler.isBusy()) {
+                    Tracer.trace(Tracer.INFO, TraceEvent.DISCOVERY_RESUMED, null, foundDevices.size());
+                    failedHandlers = startInquiry();
+                }
+            } else if (!inquiring) {
+                // Not an inquiry of this scan, which is still held back
+                return;
+            } else {
+                completed = true;
+            }
+        }
+
+        if (completed) {
+            onScanFinished(receiver);
+        } else {
+            reportFailure(failedHandlers, "Could not start discovery.");
+        }
+    }
+
+    private synchronized void onDeviceFound(BroadcastReceiver receiver, DiscoveredDevice device) {
+        if (receiver != scanReceiver) {
+            return;
+        }
+
+        // The same device may be reported more than once during a scan, but is only passed on once
+        DiscoveredDevice earlier = foundDevices.get(device.getAddress());
+        if (earlier != null) {
+            device = earlier.mergeWith(device);
+        }
+
+        foundDevices.put(device.getAddress(), device);
+        discoveredDeviceCache.recordSeen(device);
+
+        if (earlier == null) {
+            for (DiscoveredBluetoothDevicesHandler handler : waitingHandlers) {
+                handler.onDeviceFound(device);
+            }
+        }
+    }
+
+    private static DiscoveredDevice toDiscoveredDevice(Intent intent) {
+        BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
+        short rssi = intent.getShortExtra(BluetoothDevice.EXTRA_RSSI, DiscoveredDevice.UNKNOWN_RSSI);
+
+        BluetoothClass bluetoothClass = intent.getParcelableExtra(BluetoothDevice.EXTRA_CLASS);
+        if (bluetoothClass == null) {
+            bluetoothClass = device.getBluetoothClass();
+        }
+
+        int deviceClass = bluetoothClass != null
+                ? bluetoothClass.getDeviceClass()
+                : DiscoveredDevice.UNKNOWN_DEVICE_CLASS;
+
+        return new DiscoveredDevice(device, rssi, deviceClass, System.currentTimeMillis());
+    }
+
+    private void onScanFinished(BroadcastReceiver receiver) {
+        List<DiscoveredBluetoothDevicesHandler> handlers;
+        List<DiscoveredDevice> devices;
+
+        synchronized (this) {
+            if (receiver != scanReceiver) {
+                return;
+            }
+
+            discoveredDeviceCache.recordScanFinished();
+            devices = new ArrayList<>(foundDevices.values());
+            handlers = endScan();
+        }
+
+        Tracer.trace(Tracer.INFO, TraceEvent.DISCOVERY_FINISHED, null, devices.size());
+
+        for (DiscoveredBluetoothDevicesHandler handler : handlers) {
+            handler.onDiscovered(devices);
+        }
+    }
+
+    /**
+     * Forgets the scan in progress. Called with the lock held.
+     *
+     * @return the handlers that were waiting on it.
+     */
+    private List<DiscoveredBluetoothDevicesHandler> endScan() {
+        try {
+            context.unregisterReceiver(scanReceiver);
+        } catch (IllegalArgumentException e) {
+            // Not registered
+        }
+
+        scanReceiver = null;
+        inquiring = false;
+        awaitingCancelledInquiry = false;
+        cancelDeferralDeadline();
+
+        List<DiscoveredBluetoothDevicesHandler> handlers = new ArrayList<>(waitingHandlers);
+
+        waitingHandlers.clear();
+        foundDevices.clear();
+
+        return handlers;
+    }
+
+    /**
+     * Called with the lock held, when the scan in progress stops inquiring.
+     */
+    private void scheduleDeferralDeadline() {
+        cancelDeferralDeadline();
+
+        final BroadcastReceiver deferredReceiver = scanReceiver;
+
+        deferralDeadline = getTimer().schedule(new Runnable() {
+            @Override
+            public void run() {
+                onDeferralExpired(deferredReceiver);
+            }
+        }, maxDeferralMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelDeferralDeadline() {
+        if (deferralDeadline != null) {
+            deferralDeadline.cancel(false);
+            deferralDeadline = null;
+        }
+    }
+
+    private void onDeferralExpired(BroadcastReceiver receiver) {
+        List<DiscoveredBluetoothDevicesHandler> failedHandlers;
+
+        synchronized (this) {
+            if (receiver != scanReceiver || inquiring) {
+                return;
+            }
+
+            expiredDeferrals++;
+            Tracer.trace(Tracer.WARN, TraceEvent.DISCOVERY_FINISHED, null, "Held back for too long");
+
+            deferralDeadline = null;
+            failedHandlers = endScan();
+        }
+
+        reportFailure(failedHandlers, "Discovery was held back for too long while the radio was busy.");
+    }
+
+    /**
+     * @param handlers those of an abandoned scan, or null if there is none to report.
+     */
+    private static void reportFailure(List<DiscoveredBluetoothDevicesHandler> handlers, String reason) {
+        if (handlers == null) {
+            return;
+        }
+
+        for (DiscoveredBluetoothDevicesHandler handler : handlers) {
+            handler.onDiscoveryFailed(reason);
+        }
+    }
+
+    private ScheduledExecutorService getTimer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "bt-discovery-deferral");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return timer;
+    }
+}
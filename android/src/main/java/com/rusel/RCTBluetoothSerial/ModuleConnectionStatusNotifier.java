@@ -0,0 +1,26 @@
+package com.rusel.RCTBluetoothSerial;
+
+public class ModuleConnectionStatusNotifier implements ConnectionStatusNotifier {
+
+    private final RCTBluetoothSerialModule serialModule;
+
+    public ModuleConnectionStatusNotifier(RCTBluetoothSerialModule serialModule) {
+        this.serialModule = serialModule;
+    }
+
+    @Override
+    public void onConnectionSuccess(String remoteAddress, int channelId, boolean incoming) {
+        serialModule.onConnectionSuccess(remoteAddress, channelId, "", incoming);
+    }
+
+    @Override
+    public void onConnectionFailure(String remoteAddress, int channelId, String reason, boolean incoming) {
+        serialModule.onConnectionFailed(remoteAddress, channelId, reason, incoming);
+    }
+
+    @Override
+    public void onDisconnect(String remoteAddress, int channelId, String reason) {
+        serialModule.onConnectionLost(remoteAddress, channelId, reason);
+    }
+
+}
@@ -5,6 +5,7 @@ import java.lang.reflect.Method;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -70,6 +71,9 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule impleme
     private BluetoothAdapter mBluetoothAdapter;
     private RCTBluetoothSerialService mBluetoothService;
     private ReactApplicationContext mReactContext;
+    private final DiscoveredDeviceCache discoveredDeviceCache;
+    private final DiscoveryCoordinator discoveryCoordinator;
+    private final RadioScheduler radioScheduler;
 
     // Promises
     private Promise mEnabledPromise;
@@ -85,12 +89,24 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule impleme
 
         mReactContext = reactContext;
 
+        discoveredDeviceCache = new DiscoveredDeviceCache(
+                configuration.getDiscoveryCacheTimeToLiveMillis(),
+                configuration.getDiscoveryCacheMaxDevices());
+
         if (mBluetoothAdapter == null) {
             mBluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
         }
 
+        radioScheduler = new RadioScheduler(
+                configuration.isDiscoveryPausedDuringConnects(),
+                configuration.isDiscoveryPausedDuringTransfers());
+
+        discoveryCoordinator = new DiscoveryCoordinator(
+                mReactContext, mBluetoothAdapter, discoveredDeviceCache, radioScheduler,
+                configuration.getDiscoveryMaxDeferralMillis());
+
         if (mBluetoothService == null) {
-            mBluetoothService = new RCTBluetoothSerialService(this, configuration);
+            mBluetoothService = new RCTBluetoothSerialService(this, configuration, radioScheduler);
         }
 
         if (mBluetoothAdapter != null && mBluetoothAdapter.isEnabled()) {
@@ -225,6 +241,43 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule impleme
         mBluetoothService.connect(address);
     }
 
+    /**
+     * Connect to each of the given addresses, with at most 'parallelism' attempts in progress at once.
+     * The listener is given the outcome for every address once they have all been attempted.
+     */
+    public void connectMany(List<String> addresses, int parallelism, ConnectBatch.Listener listener) {
+        mBluetoothService.connectMany(addresses, parallelism, listener);
+    }
+
+    public void setConnectRetryPolicy(ConnectRetryPolicy policy) {
+        mBluetoothService.setConnectRetryPolicy(policy);
+    }
+
+    public ConnectRetryPolicy getConnectRetryPolicy() {
+        return mBluetoothService.getConnectRetryPolicy();
+    }
+
+    /**
+     * Stop retrying failed connection attempts to the given address.
+     *
+     * @return true if an attempt to connect to the address was pending.
+     */
+    public boolean cancelConnectRetry(String address) {
+        return mBluetoothService.cancelConnectRetry(address);
+    }
+
+    /**
+     * Traffic statistics for the connections proxied by the unix socket bridge.
+     */
+    public Map<String, Object> getBridgeStats() {
+        Map<String, Object> stats = mBluetoothService.getUnixSocketBridge().getStats();
+        stats.put("discoveryCache", discoveredDeviceCache.getStats());
+        stats.put("discovery", discoveryCoordinator.getStats());
+        stats.put("radio", radioScheduler.getStats());
+
+        return stats;
+    }
+
     /**
      * Make the device discoverable for connection and pairing by other android devices
      * for the given amount of time in seconds. The user will be shown a dialog box to
@@ -321,22 +374,29 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule impleme
 
     /**
      * Discover unpaired bluetooth devices
+     * @param maxAgeMillis if above 0, the devices found by a scan that finished within this time are
+     *                     given instead of starting a new one, if there was one.
      */
-    public void discoverNearbyDevices(DiscoveredDevicesHandler handler) {
+    public void discoverNearbyDevices(DiscoveredDevicesHandler handler, long maxAgeMillis) {
         if (D) Log.d(TAG, "Discover nearby called");
 
-        // todo: handle error?
-        registerBluetoothDeviceDiscoveryReceiver(handler);
+        if (maxAgeMillis > 0) {
+            List<DiscoveredDevice> cachedDevices = discoveredDeviceCache.getDevicesSeenWithin(maxAgeMillis);
 
-        if (mBluetoothAdapter == null ) {
-            handler.onBluetoothNotSupported();
-        } else if (!mBluetoothAdapter.isEnabled()) {
-            handler.onBluetoothDisabled();
-        }
+            if (cachedDevices != null) {
+                if (D) Log.d(TAG, "Answering with " + cachedDevices.size() + " recently discovered devices");
 
-        if (mBluetoothAdapter != null) {
-            mBluetoothAdapter.startDiscovery();
+                for (DiscoveredDevice cachedDevice : cachedDevices) {
+                    handler.onDeviceFound(cachedDevice);
+                }
+
+                handler.onDiscovered(cachedDevices);
+                return;
+            }
         }
+
+        // Joins the scan in progress if there is one
+        discoveryCoordinator.discover(handler);
     }
 
     /**
@@ -431,24 +491,24 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule impleme
      * Handle connection success
      * @param msg Additional message
      */
-    void onConnectionSuccess(String address, String msg, boolean isIncoming) {
-        this.mBluetoothService.getControlSocket().sendConnectedEvent(address, isIncoming);
+    void onConnectionSuccess(String address, int channelId, String msg, boolean isIncoming) {
+        this.mBluetoothService.getControlSocket().sendConnectedEvent(address, channelId, isIncoming);
     }
 
     /**
      * handle connection failure
      * @param msg Additional message
      */
-    void onConnectionFailed(String address, String msg, boolean isIncoming) {
-        this.mBluetoothService.getControlSocket().sendConnectionFailureEvent(address, msg, isIncoming);
+    void onConnectionFailed(String address, int channelId, String msg, boolean isIncoming) {
+        this.mBluetoothService.getControlSocket().sendConnectionFailureEvent(address, channelId, msg, isIncoming);
     }
 
     /**
      * Handle lost connection
      * @param msg Message
      */
-    void onConnectionLost (String address, String msg) {
-        this.mBluetoothService.getControlSocket().sendDisconnectionEvent(address, msg);
+    void onConnectionLost (String address, int channelId, String msg) {
+        this.mBluetoothService.getControlSocket().sendDisconnectionEvent(address, channelId, msg);
     }
 
     /**
@@ -580,43 +640,6 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule impleme
         mReactContext.registerReceiver(devicePairingReceiver, intentFilter);
     }
 
-    /**
-     * Register receiver for bluetooth device discovery
-     * @param handler
-     */
-    private void registerBluetoothDeviceDiscoveryReceiver(final DiscoveredDevicesHandler handler) {
-        IntentFilter intentFilter = new IntentFilter();
-
-        intentFilter.addAction(BluetoothDevice.ACTION_FOUND);
-        intentFilter.addAction(BluetoothAdapter.ACTION_DISCOVERY_FINISHED);
-
-        final BroadcastReceiver deviceDiscoveryReceiver = new BroadcastReceiver() {
-            private List<BluetoothDevice> devices = new ArrayList<>();
-            public void onReceive(Context context, Intent intent) {
-                String action = intent.getAction();
-                if (D) Log.d(TAG, "onReceive called");
-
-                if (BluetoothDevice.ACTION_FOUND.equals(action)) {
-                    BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
-                    devices.add(device);
-                } else if (BluetoothAdapter.ACTION_DISCOVERY_FINISHED.equals(action)) {
-                    if (D) Log.d(TAG, "Discovery finished");
-
-                    handler.onDiscovered(devices);
-
-                    try {
-                        mReactContext.unregisterReceiver(this);
-                    } catch (Exception e) {
-                        Log.e(TAG, "Unable to unregister receiver", e);
-                        onError(e);
-                    }
-                }
-            }
-        };
-
-        mReactContext.registerReceiver(deviceDiscoveryReceiver, intentFilter);
-    }
-
     /**
      * Register receiver for bluetooth state change
      */
@@ -6,6 +6,7 @@ import java.io.OutputStream;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -19,6 +20,8 @@ import android.util.Base64;
 import android.util.Log;
 
 import com.rusel.RCTBluetoothSerial.control.ControlUnixSocket;
+import com.rusel.RCTBluetoothSerial.trace.AndroidLogTraceSink;
+import com.rusel.RCTBluetoothSerial.trace.Tracer;
 
 import static com.rusel.RCTBluetoothSerial.RCTBluetoothSerialPackage.TAG;
 
@@ -54,30 +57,32 @@ class RCTBluetoothSerialService {
      * Constructor. Prepares a new RCTBluetoothSerialModule session.
      * @param module Module which handles service events
      * @param configuration
+     * @param radioScheduler told when connections are being made, so that discovery can give way
      */
-    RCTBluetoothSerialService(RCTBluetoothSerialModule module, BluetoothSerialConfiguration configuration) {
+    RCTBluetoothSerialService(RCTBluetoothSerialModule module,
+                              BluetoothSerialConfiguration configuration,
+                              RadioScheduler radioScheduler) {
         mAdapter = BluetoothAdapter.getDefaultAdapter();
         mModule = module;
 
+        // Everything traced is kept in the ring, but only the more interesting events are logged
+        Tracer.setSink(new AndroidLogTraceSink(Tracer.INFO));
+
         // Hardcode for now
         UUID uuid = UUID.fromString("b0b2e90d-0cda-4bb0-8e4b-fb165cd17d48");
 
-        String outgoingSocketPath = configuration.getOutgoingSocketPath();
-        String incomingSocketPath = configuration.getIncomingSocketPath();
-        String controlSocketPath = configuration.getControlSocketPath();
-
-        ConnectionStatusNotifier connectionStatusNotifier = new ConnectionStatusNotifier(mModule);
+        ConnectionStatusNotifier connectionStatusNotifier = new ModuleConnectionStatusNotifier(mModule);
 
         this.unixSocketBridge = new UnixSocketBridge(
-                outgoingSocketPath,
-                incomingSocketPath,
+                configuration,
                 uuid,
                 connectionStatusNotifier,
-                mAdapter
+                mAdapter,
+                radioScheduler
                 );
 
         this.controlSocket = new ControlUnixSocket(
-                controlSocketPath, mModule);
+                configuration.getControlSocketPaths(), mModule, configuration.isControlBinaryEncodingEnabled());
 
         startBridge();
         startControlSocket();
@@ -103,10 +108,30 @@ class RCTBluetoothSerialService {
         this.unixSocketBridge.connectToBluetoothAddress(address);
     }
 
+    public void connectMany(List<String> addresses, int parallelism, ConnectBatch.Listener listener) {
+        this.unixSocketBridge.connectToBluetoothAddresses(addresses, parallelism, listener);
+    }
+
+    public void setConnectRetryPolicy(ConnectRetryPolicy policy) {
+        this.unixSocketBridge.setConnectRetryPolicy(policy);
+    }
+
+    public ConnectRetryPolicy getConnectRetryPolicy() {
+        return this.unixSocketBridge.getConnectRetryPolicy();
+    }
+
+    public boolean cancelConnectRetry(String address) {
+        return this.unixSocketBridge.cancelConnectRetry(address);
+    }
+
     public ControlUnixSocket getControlSocket() {
         return controlSocket;
     }
 
+    public UnixSocketBridge getUnixSocketBridge() {
+        return unixSocketBridge;
+    }
+
     /**
      * Creates a server connection to listen for incoming connections.
      * return true if a server was not running and a new server was started, false is a server was already running.
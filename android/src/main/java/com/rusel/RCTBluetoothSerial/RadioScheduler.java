@@ -0,0 +1,117 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of what the bluetooth radio is being used for, so that discovery can give way to it. An
+ * inquiry scan takes up most of the radio's time, which makes connection attempts slow and unreliable
+ * and cuts the throughput of open connections, so the radio counts as busy while connects (and, if
+ * configured, transfers) are in progress and discovery waits until it is free again.
+ */
+public class RadioScheduler {
+
+    public interface Listener {
+
+        /**
+         * Called whenever the radio may have become busy or free. Notifications from different threads
+         * can arrive out of order, so the listener should check isBusy rather than assume either.
+         */
+        void onBusyChanged();
+    }
+
+    private final boolean pausedDuringConnects;
+    private final boolean pausedDuringTransfers;
+
+    private final Set<String> connects = new HashSet<>();
+    private final Set<String> transfers = new HashSet<>();
+
+    private long busyPeriods = 0;
+
+    private volatile Listener listener = null;
+
+    public RadioScheduler(boolean pausedDuringConnects, boolean pausedDuringTransfers) {
+        this.pausedDuringConnects = pausedDuringConnects;
+        this.pausedDuringTransfers = pausedDuringTransfers;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Called just before an outgoing connection attempt to the address.
+     */
+    public void connectStarted(String remoteAddress) {
+        update(connects, remoteAddress, true);
+    }
+
+    /**
+     * Called once the connection attempt to the address has succeeded or failed.
+     */
+    public void connectFinished(String remoteAddress) {
+        update(connects, remoteAddress, false);
+    }
+
+    /**
+     * Called when data starts being relayed over a connection to the address. Calling it again for an
+     * address already transferring has no effect.
+     */
+    public void transferStarted(String remoteAddress) {
+        update(transfers, remoteAddress, true);
+    }
+
+    /**
+     * Called when the connection to the address is closed. Calling it again has no effect.
+     */
+    public void transferFinished(String remoteAddress) {
+        update(transfers, remoteAddress, false);
+    }
+
+    /**
+     * @return true if discovery should not be running at the moment.
+     */
+    public synchronized boolean isBusy() {
+        return (pausedDuringConnects && !connects.isEmpty())
+                || (pausedDuringTransfers && !transfers.isEmpty());
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("busy", isBusy());
+        stats.put("busyPeriods", busyPeriods);
+        stats.put("connects", connects.size());
+        stats.put("transfers", transfers.size());
+
+        return stats;
+    }
+
+    private void update(Set<String> addresses, String remoteAddress, boolean add) {
+        boolean changed;
+
+        synchronized (this) {
+            boolean wasBusy = isBusy();
+
+            if (add) {
+                addresses.add(remoteAddress);
+            } else {
+                addresses.remove(remoteAddress);
+            }
+
+            changed = isBusy() != wasBusy;
+
+            if (changed && !wasBusy) {
+                busyPeriods++;
+            }
+        }
+
+        // Outside the lock, as the listener takes its own and may call back into isBusy
+        Listener currentListener = listener;
+
+        if (changed && currentListener != null) {
+            currentListener.onBusyChanged();
+        }
+    }
+}
@@ -1,91 +1,305 @@
 package com.rusel.RCTBluetoothSerial;
 
 import android.bluetooth.BluetoothAdapter;
-import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothSocket;
-import android.net.LocalSocket;
-import android.net.LocalSocketAddress;
-import android.util.Log;
 
-import org.apache.commons.io.IOUtils;
+import com.rusel.RCTBluetoothSerial.metrics.ConnectionMetrics;
+import com.rusel.RCTBluetoothSerial.metrics.ConnectionStats;
+import com.rusel.RCTBluetoothSerial.metrics.MeteredInputStream;
+import com.rusel.RCTBluetoothSerial.metrics.MeteredLocalEndpoint;
+import com.rusel.RCTBluetoothSerial.metrics.MeteredOutputStream;
+import com.rusel.RCTBluetoothSerial.mux.MultiplexedLink;
+import com.rusel.RCTBluetoothSerial.pump.BufferPool;
+import com.rusel.RCTBluetoothSerial.pump.ByteRingBuffer;
+import com.rusel.RCTBluetoothSerial.pump.CoalescingOutputStream;
+import com.rusel.RCTBluetoothSerial.pump.MemoryBudget;
+import com.rusel.RCTBluetoothSerial.pump.PumpExecutor;
+import com.rusel.RCTBluetoothSerial.pump.Relay;
+import com.rusel.RCTBluetoothSerial.pump.StreamPump;
+import com.rusel.RCTBluetoothSerial.trace.TraceEvent;
+import com.rusel.RCTBluetoothSerial.trace.Tracer;
+import com.rusel.RCTBluetoothSerial.transport.AndroidBluetoothLink;
+import com.rusel.RCTBluetoothSerial.transport.AndroidBluetoothLinkConnector;
+import com.rusel.RCTBluetoothSerial.transport.BluetoothLink;
+import com.rusel.RCTBluetoothSerial.transport.BluetoothLinkConnector;
+import com.rusel.RCTBluetoothSerial.transport.LocalEndpoint;
+import com.rusel.RCTBluetoothSerial.transport.LocalEndpointConnector;
+import com.rusel.RCTBluetoothSerial.transport.LocalSocketEndpointConnector;
 
 import java.io.Closeable;
-import java.io.FileDescriptor;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.rusel.RCTBluetoothSerial.ConnectionStatusNotifier.NO_CHANNEL;
 
 /**
  * A class for proxying incoming and outgoing bluetooth connections to another process / thread via
  * local unix sockets. This is for use cases where you have a thread / process, perhaps in another language,
  * that you want to leverage bluetooth functionality in.
+ *
+ * Both sides of the bridge are abstracted behind the transport interfaces, so the bridge can also be
+ * driven by in-memory connections (see the transport package under src/test) for testing off-device.
  */
 public class UnixSocketBridge {
 
 
-    private final String socketOutgoingPath;
-    private final String socketIncomingPath;
+    private final LocalEndpointConnector outgoingEndpointConnector;
+    private final LocalEndpointConnector incomingEndpointConnector;
+    private final BluetoothLinkConnector bluetoothLinkConnector;
     private final ConnectionStatusNotifier connectionStatusNotifier;
-    private final BluetoothAdapter bluetoothAdapter;
-    private final UUID serviceUUID;
-
-    private static final String TAG = "bluetooth_bridge";
-
-    private Map<String, BluetoothSocket> connectedDevices = new ConcurrentHashMap<>();
+    private final BufferPool bufferPool;
+    private final StreamPump streamPump;
+    private final PumpExecutor pumpExecutor;
+
+    private final boolean writeCoalescingEnabled;
+    private final int coalesceTargetBytes;
+    private final long coalesceMaxDelayMicros;
+
+    private final int connectWorkers;
+    private final long connectTimeoutMillis;
+    private ScheduledExecutorService connectDeadlineScheduler;
+
+    private final MemoryBudget intermediateBufferBudget;
+    private final MemoryBudget multiplexBufferBudget;
+    private final int intermediateBufferSize;
+    private final int intermediateBufferHighWatermark;
+    private final int intermediateBufferLowWatermark;
+    private final AtomicLong intermediateBufferPauses = new AtomicLong();
+
+    private final boolean multiplexingEnabled;
+    private final int multiplexChannelWindow;
+    private final int multiplexMaxFrameSize;
+
+    private Map<String, BluetoothLink> connectedDevices = new ConcurrentHashMap<>();
+    private Map<String, ConnectionMetrics> connectionMetrics = new ConcurrentHashMap<>();
+    private Map<String, MultiplexedLink> multiplexedLinks = new ConcurrentHashMap<>();
+
+    /**
+     * The addresses with an outgoing connection attempt queued or in progress, and who is waiting on
+     * the outcome of each.
+     */
+    private final Map<String, List<ConnectResultListener>> pendingConnects = new HashMap<>();
+    private final AtomicLong coalescedConnects = new AtomicLong();
+
+    private final ConnectRetryScheduler retryScheduler;
+    private final RadioScheduler radioScheduler;
 
     BlockingQueue<String> awaitingOutgoingConnection = new LinkedBlockingQueue<>();
 
-    public UnixSocketBridge(String socketOutgoingPath,
-                            String socketIncomingPath,
+    public UnixSocketBridge(BluetoothSerialConfiguration configuration,
                             UUID serviceUUID,
                             ConnectionStatusNotifier notifier,
-                            BluetoothAdapter bluetoothAdapter) {
-        this.socketOutgoingPath = socketOutgoingPath;
-        this.socketIncomingPath = socketIncomingPath;
-        this.serviceUUID = serviceUUID;
+                            BluetoothAdapter bluetoothAdapter,
+                            RadioScheduler radioScheduler) {
+        this(
+                new LocalSocketEndpointConnector(configuration.getOutgoingSocketPath()),
+                new LocalSocketEndpointConnector(configuration.getIncomingSocketPath()),
+                new AndroidBluetoothLinkConnector(bluetoothAdapter, serviceUUID),
+                notifier,
+                configuration,
+                radioScheduler
+        );
+    }
+
+    public UnixSocketBridge(LocalEndpointConnector outgoingEndpointConnector,
+                            LocalEndpointConnector incomingEndpointConnector,
+                            BluetoothLinkConnector bluetoothLinkConnector,
+                            ConnectionStatusNotifier notifier,
+                            BluetoothSerialConfiguration configuration) {
+        this(
+                outgoingEndpointConnector,
+                incomingEndpointConnector,
+                bluetoothLinkConnector,
+                notifier,
+                configuration,
+                new RadioScheduler(
+                        configuration.isDiscoveryPausedDuringConnects(),
+                        configuration.isDiscoveryPausedDuringTransfers())
+        );
+    }
+
+    /**
+     * @param radioScheduler told when connections are being made and used, so that discovery can give way.
+     */
+    public UnixSocketBridge(LocalEndpointConnector outgoingEndpointConnector,
+                            LocalEndpointConnector incomingEndpointConnector,
+                            BluetoothLinkConnector bluetoothLinkConnector,
+                            ConnectionStatusNotifier notifier,
+                            BluetoothSerialConfiguration configuration,
+                            RadioScheduler radioScheduler) {
+        this.outgoingEndpointConnector = outgoingEndpointConnector;
+        this.incomingEndpointConnector = incomingEndpointConnector;
+        this.bluetoothLinkConnector = bluetoothLinkConnector;
         this.connectionStatusNotifier = notifier;
-        this.bluetoothAdapter = bluetoothAdapter;
+        this.radioScheduler = radioScheduler;
+
+        this.bufferPool = new BufferPool(
+                configuration.getPumpMinBufferSize(),
+                configuration.getPumpMaxBufferSize(),
+                configuration.getBufferPoolMaxBytes()
+        );
+        this.streamPump = new StreamPump(bufferPool);
+
+        this.pumpExecutor = new PumpExecutor(
+                "bt-pump",
+                configuration.getPumpMaxThreads(),
+                configuration.getPumpQueuePolicy(),
+                configuration.getPumpQueueCapacity(),
+                configuration.getPumpThreadKeepAliveMillis()
+        );
+
+        this.writeCoalescingEnabled = configuration.isWriteCoalescingEnabled();
+        this.coalesceTargetBytes = configuration.getCoalesceTargetBytes();
+        this.coalesceMaxDelayMicros = configuration.getCoalesceMaxDelayMicros();
+
+        this.retryScheduler = new ConnectRetryScheduler(
+                configuration.getConnectRetryPolicy(),
+                new ConnectRetryScheduler.RetryTarget() {
+                    @Override
+                    public void retryConnection(String remoteAddress) {
+                        // The address is still pending, so it skips the duplicate check in connectToBluetoothAddress
+                        Tracer.trace(Tracer.DEBUG, TraceEvent.CONNECT_RETRY, remoteAddress);
+                        awaitingOutgoingConnection.add(remoteAddress);
+                    }
+                }
+        );
+
+        this.connectWorkers = configuration.getConnectWorkers();
+        this.connectTimeoutMillis = configuration.getConnectTimeoutMillis();
+
+        this.intermediateBufferBudget = configuration.isIntermediateBufferingEnabled()
+                ? new MemoryBudget(configuration.getIntermediateBufferBudgetBytes())
+                : null;
+        this.intermediateBufferSize = configuration.getIntermediateBufferSize();
+        this.intermediateBufferHighWatermark = configuration.getIntermediateBufferHighWatermark();
+        this.intermediateBufferLowWatermark = configuration.getIntermediateBufferLowWatermark();
+
+        this.multiplexingEnabled = configuration.isMultiplexingEnabled();
+        this.multiplexChannelWindow = configuration.getMultiplexChannelWindow();
+        this.multiplexMaxFrameSize = configuration.getMultiplexMaxFrameSize();
+        this.multiplexBufferBudget = multiplexingEnabled
+                ? new MemoryBudget(configuration.getMultiplexBufferBudgetBytes())
+                : null;
+    }
+
+    public PumpExecutor getPumpExecutor() {
+        return pumpExecutor;
+    }
+
+    /**
+     * @return a snapshot of the traffic on each open connection, and of the pump pool and buffer pool.
+     */
+    public Map<String, Object> getStats() {
+        List<ConnectionStats> connections = new ArrayList<>();
+        for (ConnectionMetrics metrics : connectionMetrics.values()) {
+            connections.add(metrics.snapshot());
+        }
+
+        Map<String, Object> pumps = new HashMap<>();
+        pumps.put("maxThreads", pumpExecutor.getMaxThreads());
+        pumps.put("threads", pumpExecutor.getThreadCount());
+        pumps.put("activeThreads", pumpExecutor.getActiveThreadCount());
+        pumps.put("largestThreads", pumpExecutor.getLargestThreadCount());
+        pumps.put("queueDepth", pumpExecutor.getQueueDepth());
+        pumps.put("rejectedTasks", pumpExecutor.getRejectedTaskCount());
+
+        Map<String, Object> buffers = new HashMap<>();
+        buffers.put("pooledBytes", bufferPool.getPooledBytes());
+        buffers.put("allocations", bufferPool.getAllocationCount());
+        buffers.put("reuses", bufferPool.getReuseCount());
+
+        Map<String, Object> connects = new HashMap<>();
+        synchronized (pendingConnects) {
+            connects.put("pending", pendingConnects.size());
+        }
+        connects.put("coalesced", coalescedConnects.get());
+        connects.put("waitingToRetry", retryScheduler.getWaitingCount());
+        connects.put("retries", retryScheduler.getScheduledRetryCount());
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("connections", connections);
+        stats.put("connects", connects);
+        stats.put("pumps", pumps);
+        stats.put("bufferPool", buffers);
+
+        if (intermediateBufferBudget != null) {
+            Map<String, Object> intermediateBuffers = new HashMap<>();
+            intermediateBuffers.put("budgetBytes", intermediateBufferBudget.getTotalBytes());
+            intermediateBuffers.put("reservedBytes", intermediateBufferBudget.getReservedBytes());
+            intermediateBuffers.put("budgetRefusals", intermediateBufferBudget.getRefusalCount());
+            intermediateBuffers.put("pauses", intermediateBufferPauses.get());
+
+            stats.put("intermediateBuffers", intermediateBuffers);
+        }
+
+        if (multiplexingEnabled) {
+            Map<String, Object> channels = new HashMap<>();
+            for (MultiplexedLink link : multiplexedLinks.values()) {
+                channels.put(link.getRemoteAddress(), link.getChannelCount());
+            }
+
+            stats.put("multiplexedChannels", channels);
+
+            Map<String, Object> channelBuffers = new HashMap<>();
+            channelBuffers.put("budgetBytes", multiplexBufferBudget.getTotalBytes());
+            channelBuffers.put("reservedBytes", multiplexBufferBudget.getReservedBytes());
+            channelBuffers.put("budgetRefusals", multiplexBufferBudget.getRefusalCount());
+
+            stats.put("multiplexBuffers", channelBuffers);
+        }
+
+        return stats;
     }
 
     public void createIncomingServerConnection(final BluetoothSocket bluetoothSocket) {
+        createIncomingServerConnection(new AndroidBluetoothLink(bluetoothSocket));
+    }
 
-        LocalSocket localSocket = new LocalSocket();
-        LocalSocketAddress localSocketAddress = new LocalSocketAddress(
-                this.socketIncomingPath,
-                LocalSocketAddress.Namespace.FILESYSTEM
-        );
+    public void createIncomingServerConnection(final BluetoothLink bluetoothLink) {
+
+        if (multiplexingEnabled) {
+            acceptMultiplexedLink(bluetoothLink);
+            return;
+        }
 
         try {
-            localSocket.connect(localSocketAddress);
+            LocalEndpoint localEndpoint = incomingEndpointConnector.connect();
 
-            String remoteAddress = bluetoothSocket.getRemoteDevice().getAddress();
+            String remoteAddress = bluetoothLink.getRemoteAddress();
             if (connectedDevices.containsKey(remoteAddress)) {
-                Log.d(TAG, "Stopping incoming connection from " + remoteAddress + " as we're already connected.");
-                connectionStatusNotifier.onConnectionFailure(remoteAddress, "Already connected.", true);
+                Tracer.trace(Tracer.INFO, TraceEvent.ALREADY_CONNECTED, remoteAddress, "incoming");
+                connectionStatusNotifier.onConnectionFailure(remoteAddress, NO_CHANNEL, "Already connected.", true);
 
-                close(localSocket);
+                close(localEndpoint);
             } else {
-                Runnable reader = readFromBluetoothAndSendToSocket(localSocket, bluetoothSocket);
-                Runnable writer = readFromSocketAndSendToBluetooth(localSocket, bluetoothSocket);
-
-                connectionStatusNotifier.onConnectionSuccess(remoteAddress, true);
-                connectedDevices.put(remoteAddress, bluetoothSocket);
-
-                Thread thread = new Thread(reader);
-                Thread thread2 = new Thread(writer);
-
-                thread.start();
-                thread2.start();
+                startBridging(remoteAddress, localEndpoint, bluetoothLink, true, null);
             }
 
         } catch (IOException e) {
-            Log.d(TAG, "IO err on connection to socket for incoming connection: " + e.getMessage());
+            Tracer.trace(Tracer.WARN, TraceEvent.LOCAL_CONNECT_FAILED, bluetoothLink.getRemoteAddress(), e.getMessage());
 
             connectionStatusNotifier.onConnectionFailure(
-                    bluetoothSocket.getRemoteDevice().getAddress(),
+                    bluetoothLink.getRemoteAddress(),
+                    NO_CHANNEL,
                     e.getMessage(),
                     true
             );
@@ -94,159 +308,571 @@ public class UnixSocketBridge {
     }
 
     public void connectToBluetoothAddress(String bluetoothAddress) {
-        Log.d(TAG, "adding to queue of awaiting connections: " + bluetoothAddress);
+        connectToBluetoothAddress(bluetoothAddress, null);
+    }
+
+    /**
+     * Queues a connection attempt, unless one to the same address is already queued or in progress,
+     * in which case the request joins that attempt rather than starting another one.
+     *
+     * @param listener told the outcome of the attempt, or null.
+     */
+    public void connectToBluetoothAddress(String bluetoothAddress, ConnectResultListener listener) {
+        synchronized (pendingConnects) {
+            List<ConnectResultListener> listeners = pendingConnects.get(bluetoothAddress);
+
+            if (listeners != null) {
+                Tracer.trace(Tracer.DEBUG, TraceEvent.CONNECT_JOINED, bluetoothAddress);
+                coalescedConnects.incrementAndGet();
+
+                if (listener != null) {
+                    listeners.add(listener);
+                }
+                return;
+            }
+
+            listeners = new ArrayList<>();
+            if (listener != null) {
+                listeners.add(listener);
+            }
+
+            pendingConnects.put(bluetoothAddress, listeners);
+            retryScheduler.attemptQueued(bluetoothAddress);
+        }
+
+        Tracer.trace(Tracer.DEBUG, TraceEvent.CONNECT_QUEUED, bluetoothAddress);
         awaitingOutgoingConnection.add(bluetoothAddress);
     }
 
+    /**
+     * Connects to each of the given addresses, with at most parallelism attempts from this batch in
+     * progress at once.
+     */
+    public void connectToBluetoothAddresses(List<String> bluetoothAddresses,
+                                            int parallelism,
+                                            ConnectBatch.Listener listener) {
+        new ConnectBatch(this, bluetoothAddresses, listener).start(parallelism);
+    }
 
-    public void listenForOutgoingConnections() {
+    public void setConnectRetryPolicy(ConnectRetryPolicy policy) {
+        retryScheduler.setPolicy(policy);
+    }
 
-        Log.d(TAG, "Outgoing connections thread. Sock path: " + this.socketOutgoingPath);
+    public ConnectRetryPolicy getConnectRetryPolicy() {
+        return retryScheduler.getPolicy();
+    }
 
-        Thread thread = new Thread(new Runnable() {
-            @Override
-            public void run() {
+    /**
+     * Stops retrying connections to the address. If a retry was waiting to run, the connection
+     * attempt is reported as failed straight away.
+     *
+     * @return true if an attempt to connect to the address was queued, in progress or waiting to retry.
+     */
+    public boolean cancelConnectRetry(String bluetoothAddress) {
+        boolean pending;
+
+        synchronized (pendingConnects) {
+            pending = pendingConnects.containsKey(bluetoothAddress);
+        }
+
+        if (retryScheduler.cancel(bluetoothAddress)) {
+            reportOutgoingFailure(bluetoothAddress, "Connection attempt cancelled.");
+        }
 
-                while (true) {
-                    try {
-                        String address = awaitingOutgoingConnection.take();
-                        Log.d(TAG, "Dequeue awaiting connection: " + address);
+        return pending;
+    }
+
+    private List<ConnectResultListener> removePendingConnect(String address) {
+        synchronized (pendingConnects) {
+            return pendingConnects.remove(address);
+        }
+    }
+
+    private void notifyConnectResult(List<ConnectResultListener> listeners,
+                                     String address,
+                                     boolean success,
+                                     String reason) {
+        if (listeners != null) {
+            for (ConnectResultListener listener : listeners) {
+                listener.onConnectResult(address, success, reason);
+            }
+        }
+    }
 
-                        Log.d(TAG, "Opening unix socket connection to proxy the bluetooth connection.");
+    private void reportOutgoingFailure(String address, String reason) {
+        retryScheduler.reset(address);
 
-                        LocalSocket localSocket = new LocalSocket();
-                        LocalSocketAddress localSocketAddress = new LocalSocketAddress(
-                                socketOutgoingPath, LocalSocketAddress.Namespace.FILESYSTEM
-                        );
+        // No longer pending by the time the failure is reported, so that a new request in reaction to
+        // it starts a fresh attempt
+        List<ConnectResultListener> listeners = removePendingConnect(address);
 
+        connectionStatusNotifier.onConnectionFailure(address, NO_CHANNEL, reason, false);
+        notifyConnectResult(listeners, address, false, reason);
+    }
+
+    /**
+     * Starts the workers that make the queued outgoing connections. Each worker makes one connection
+     * attempt at a time, so a slow or unreachable device only holds up one worker.
+     */
+    public void listenForOutgoingConnections() {
+
+        Tracer.trace(Tracer.INFO, TraceEvent.CONNECT_WORKERS_STARTED, null, connectWorkers);
+
+        connectDeadlineScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "bt-connect-deadline");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        for (int i = 1; i <= connectWorkers; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+
+                    while (true) {
                         try {
-                            localSocket.connect(localSocketAddress);
-                        } catch (IOException e) {
-                            Log.d(TAG, "Could not connect to unix socket to proxy bluetooth connection");
-                            e.printStackTrace();
-                            connectionStatusNotifier.onConnectionFailure(address, e.getMessage(), false);
+                            String address = awaitingOutgoingConnection.take();
+                            connectOutgoing(address);
+                        } catch (InterruptedException e) {
+                            Tracer.trace(Tracer.INFO, TraceEvent.CONNECT_WORKER_STOPPED,
+                                    Thread.currentThread().getName());
                             return;
                         }
+                    }
 
-                        Log.d(TAG, "Attempting bluetooth connection to " + address);
+                }
+            }, "bt-outgoing-connections-" + i);
 
-                        if (connectedDevices.containsKey(address)) {
-                            Log.d(TAG, "Stopping incoming connection from " + address + " as we're already connected.");
+            thread.start();
+        }
+    }
 
-                            close(localSocket);
-                            connectionStatusNotifier.onConnectionFailure(address, "Already connected.", false);
-                            return;
-                        }
+    private void connectOutgoing(final String address) {
 
-                        BluetoothDevice remoteDevice = bluetoothAdapter.getRemoteDevice(address);
+        LocalEndpoint localEndpoint;
 
-                        try {
-                            BluetoothSocket bluetoothSocket =
-                                    remoteDevice.createRfcommSocketToServiceRecord(serviceUUID);
+        try {
+            localEndpoint = outgoingEndpointConnector.connect();
+        } catch (IOException e) {
+            Tracer.trace(Tracer.WARN, TraceEvent.LOCAL_CONNECT_FAILED, address, e.getMessage());
+            reportOutgoingFailure(address, e.getMessage());
+            return;
+        }
+
+        Tracer.trace(Tracer.DEBUG, TraceEvent.CONNECT_STARTED, address);
 
-                            bluetoothSocket.connect();
+        MultiplexedLink multiplexedLink = multiplexedLinks.get(address);
 
-                            Log.d(TAG, "Connection successful to " + address);
+        if (multiplexedLink != null) {
+            retryScheduler.reset(address);
+            List<ConnectResultListener> listeners = removePendingConnect(address);
+            String failure = openMultiplexedChannel(multiplexedLink, localEndpoint, connectionMetrics.get(address));
+            notifyConnectResult(listeners, address, failure == null, failure);
+            return;
+        }
 
-                            connectedDevices.put(address, bluetoothSocket);
-                            connectionStatusNotifier.onConnectionSuccess(address, false);
+        if (connectedDevices.containsKey(address)) {
+            Tracer.trace(Tracer.INFO, TraceEvent.ALREADY_CONNECTED, address, "outgoing");
 
-                            Runnable reader = readFromSocketAndSendToBluetooth(localSocket, bluetoothSocket);
-                            Runnable writer = readFromBluetoothAndSendToSocket(localSocket, bluetoothSocket);
-                            
-                            Thread readerThread = new Thread(reader);
-                            Thread writerThread = new Thread(writer);
+            close(localEndpoint);
+            reportOutgoingFailure(address, "Already connected.");
+            return;
+        }
 
-                            readerThread.start();
-                            writerThread.start();
+        final AtomicBoolean timedOut = new AtomicBoolean(false);
+        ScheduledFuture<?> deadline = null;
 
-                            Log.d(TAG, "Started reader and writer threads");
-                        } catch (Exception ex) {
-                            Log.d(TAG, "Exception while connecting to " + address + ": " + ex.getMessage());
-                            connectionStatusNotifier.onConnectionFailure(address, ex.getMessage(), false);
-                            close(localSocket);
-                        }
+        try {
+            final BluetoothLink bluetoothLink = bluetoothLinkConnector.createLink(address);
+
+            // Closing the link is the only way to abort a connection attempt that is taking too long
+            deadline = connectDeadlineScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    timedOut.set(true);
+                    close(bluetoothLink);
+                }
+            }, connectTimeoutMillis, TimeUnit.MILLISECONDS);
 
+            // Discovery gives way while the attempt is made
+            radioScheduler.connectStarted(address);
 
+            try {
+                bluetoothLink.connect();
+            } finally {
+                radioScheduler.connectFinished(address);
+            }
 
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
+            if (!deadline.cancel(false)) {
+                throw new IOException("Connection attempt timed out.");
+            }
+
+            Tracer.trace(Tracer.INFO, TraceEvent.CONNECT_SUCCEEDED, address);
+
+            retryScheduler.reset(address);
+
+            // Registered before it stops being pending, so that a request for the address in between
+            // either joins this attempt or finds the connection, rather than dialling a second link. No
+            // longer pending by the time the connection is reported, so that a further request in
+            // reaction to it is not mistaken for a duplicate (with multiplexing it opens another channel)
+            final AtomicReference<List<ConnectResultListener>> listeners = new AtomicReference<>();
+            Runnable onRegistered = new Runnable() {
+                @Override
+                public void run() {
+                    listeners.set(removePendingConnect(address));
                 }
+            };
 
+            String failure = multiplexingEnabled
+                    ? startMultiplexing(address, localEndpoint, bluetoothLink, false, onRegistered)
+                    : startBridging(address, localEndpoint, bluetoothLink, false, onRegistered);
+            notifyConnectResult(listeners.get(), address, failure == null, failure);
+
+        } catch (Exception ex) {
+            if (deadline != null) {
+                deadline.cancel(false);
             }
-        });
 
-        thread.start();
+            String reason = timedOut.get() ? "Connection attempt timed out." : ex.getMessage();
+
+            Tracer.trace(Tracer.INFO, TraceEvent.CONNECT_FAILED, address, reason);
+            close(localEndpoint);
+
+            // Requests for the address keep joining this attempt while a retry is waiting to run
+            if (!retryScheduler.onFailure(address)) {
+                reportOutgoingFailure(address, reason);
+            }
+        }
     }
 
     public void closeAllOpenConnections() {
         for (String address: connectedDevices.keySet()) {
-            BluetoothSocket bluetoothSocket = connectedDevices.get(address);
-            close(bluetoothSocket);
+            BluetoothLink bluetoothLink = connectedDevices.get(address);
+            close(bluetoothLink);
         }
     }
 
 
-    private Runnable readFromSocketAndSendToBluetooth(final LocalSocket localSocket,
-                                                      final BluetoothSocket bluetoothSocket)
-    {
+    /**
+     * Registers the connection and starts pumping data in both directions. If the pump pool has no
+     * room for the connection, it is closed again and reported as disconnected.
+     *
+     * @param onRegistered run once the connection is registered, before it is reported, or null.
+     * @return null if the connection was started, otherwise the reason it was closed again.
+     */
+    private String startBridging(final String remoteAddress,
+                               final LocalEndpoint localEndpoint,
+                               final BluetoothLink bluetoothLink,
+                               boolean isIncoming,
+                               Runnable onRegistered) {
+
+        ConnectionMetrics metrics = new ConnectionMetrics(remoteAddress, isIncoming);
+
+        connectedDevices.put(remoteAddress, bluetoothLink);
+        connectionMetrics.put(remoteAddress, metrics);
+        radioScheduler.transferStarted(remoteAddress);
+
+        if (onRegistered != null) {
+            onRegistered.run();
+        }
+
+        connectionStatusNotifier.onConnectionSuccess(remoteAddress, NO_CHANNEL, isIncoming);
 
-        return new Runnable() {
+        Closeable connection = new Closeable() {
             @Override
-            public void run() {
-                copyStream(localSocket, bluetoothSocket, true);
+            public void close() {
+                UnixSocketBridge.this.close(bluetoothLink);
+                UnixSocketBridge.this.close(localEndpoint);
             }
         };
 
-    }
+        Relay bluetoothToSocket = null;
+        Relay socketToBluetooth = null;
 
-    private Runnable readFromBluetoothAndSendToSocket(final LocalSocket localSocket, final BluetoothSocket bluetoothSocket) {
+        try {
+            bluetoothToSocket = createRelay(
+                    remoteAddress,
+                    new MeteredInputStream(bluetoothLink.getInputStream(), metrics.getBluetoothReads()),
+                    new MeteredOutputStream(localEndpoint.getOutputStream(), metrics.getLocalWrites()),
+                    connection,
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            connectedDevices.remove(remoteAddress);
+                            connectionMetrics.remove(remoteAddress);
+                            radioScheduler.transferFinished(remoteAddress);
+
+                            connectionStatusNotifier.onDisconnect(remoteAddress, NO_CHANNEL, "Connection lost.");
+                        }
+                    }
+            );
 
-        return new Runnable() {
-            @Override
-            public void run() {
-                copyStream(localSocket, bluetoothSocket, false);
+            OutputStream bluetoothOutputStream =
+                    new MeteredOutputStream(bluetoothLink.getOutputStream(), metrics.getBluetoothWrites());
+
+            final CoalescingOutputStream coalescingOutputStream = writeCoalescingEnabled
+                    ? new CoalescingOutputStream(bluetoothOutputStream, coalesceTargetBytes, coalesceMaxDelayMicros)
+                    : null;
+
+            socketToBluetooth = createRelay(
+                    remoteAddress,
+                    new MeteredInputStream(localEndpoint.getInputStream(), metrics.getLocalReads()),
+                    coalescingOutputStream != null ? coalescingOutputStream : bluetoothOutputStream,
+                    connection,
+                    coalescingOutputStream == null ? null : new Runnable() {
+                        @Override
+                        public void run() {
+                            // Nothing writes to it any more, so this only stops its deadline flushes
+                            UnixSocketBridge.this.close(coalescingOutputStream);
+                        }
+                    }
+            );
 
-                String remoteAddress = bluetoothSocket.getRemoteDevice().getAddress();
-                connectedDevices.remove(remoteAddress);
+            List<Runnable> tasks = new ArrayList<>();
+            Collections.addAll(tasks, bluetoothToSocket.createTasks());
+            Collections.addAll(tasks, socketToBluetooth.createTasks());
 
-                connectionStatusNotifier.onDisconnect(remoteAddress, "Connection lost.");
+            if (coalescingOutputStream != null) {
+                // Each connection makes its own deadline flushes, so a stalled device only holds up its own
+                tasks.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        coalescingOutputStream.runDeadlineFlushes();
+                    }
+                });
             }
-        };
 
+            pumpExecutor.execute(tasks.toArray(new Runnable[tasks.size()]));
+
+            Tracer.trace(Tracer.DEBUG, TraceEvent.BRIDGE_STARTED, remoteAddress);
+            return null;
+        } catch (IOException | RejectedExecutionException e) {
+            Tracer.trace(Tracer.WARN, TraceEvent.BRIDGE_FAILED, remoteAddress, e.getMessage());
+
+            if (bluetoothToSocket != null) {
+                releaseIntermediateBuffer(bluetoothToSocket.getBuffer());
+            }
+
+            if (socketToBluetooth != null) {
+                releaseIntermediateBuffer(socketToBluetooth.getBuffer());
+            }
+
+            connectedDevices.remove(remoteAddress);
+            connectionMetrics.remove(remoteAddress);
+            radioScheduler.transferFinished(remoteAddress);
+            close(connection);
+
+            String reason = e instanceof RejectedExecutionException ? "Too many open connections." : e.getMessage();
+            connectionStatusNotifier.onDisconnect(remoteAddress, NO_CHANNEL, reason);
+            return reason;
+        }
     }
 
-    private void copyStream(LocalSocket localSocket, BluetoothSocket bluetoothSocket, boolean socketToBluetooth) {
+    private void acceptMultiplexedLink(BluetoothLink bluetoothLink) {
+        String remoteAddress = bluetoothLink.getRemoteAddress();
+
+        if (connectedDevices.containsKey(remoteAddress)) {
+            Tracer.trace(Tracer.INFO, TraceEvent.ALREADY_CONNECTED, remoteAddress, "incoming");
+            close(bluetoothLink);
+            connectionStatusNotifier.onConnectionFailure(remoteAddress, NO_CHANNEL, "Already connected.", true);
+            return;
+        }
 
-        FileDescriptor socketFd = localSocket.getFileDescriptor();
+        startMultiplexing(remoteAddress, null, bluetoothLink, true, null);
+    }
 
-        Log.d(TAG, "Local socket connection fd: " + socketFd.toString());
+    /**
+     * Registers the link and starts reading frames from it. Each channel on the link is reported as a
+     * connection of its own, so nothing is reported for the link itself.
+     *
+     * @param localEndpoint the endpoint for the first channel if we dialled, or null if we accepted the
+     *                      link, in which case the other side opens the channels.
+     * @param onRegistered run once the link is registered, or has failed before it could be, before
+     *                     anything is reported. May be null.
+     * @return null if the link was started, otherwise the reason it was closed again.
+     */
+    private String startMultiplexing(final String remoteAddress,
+                                     LocalEndpoint localEndpoint,
+                                     final BluetoothLink bluetoothLink,
+                                     boolean isIncoming,
+                                     Runnable onRegistered) {
+
+        final ConnectionMetrics metrics = new ConnectionMetrics(remoteAddress, isIncoming);
+        MultiplexedLink multiplexedLink;
+        boolean registered = false;
 
         try {
-            // TODO: measure throughput / investigate whether intermediate buffering or more concurrency
-            // could improve this. I'm curious...
-            if (socketToBluetooth) {
-                IOUtils.copyLarge(localSocket.getInputStream(), bluetoothSocket.getOutputStream());
-            } else {
-                IOUtils.copyLarge(bluetoothSocket.getInputStream(), localSocket.getOutputStream());
+            multiplexedLink = new MultiplexedLink(
+                    remoteAddress,
+                    bluetoothLink,
+                    new MeteredInputStream(bluetoothLink.getInputStream(), metrics.getBluetoothReads()),
+                    new MeteredOutputStream(bluetoothLink.getOutputStream(), metrics.getBluetoothWrites()),
+                    !isIncoming,
+                    multiplexChannelWindow,
+                    multiplexMaxFrameSize,
+                    multiplexBufferBudget,
+                    pumpExecutor,
+                    new MultiplexedLink.Listener() {
+                        @Override
+                        public LocalEndpoint onChannelRequested(MultiplexedLink link, int channelId) {
+                            try {
+                                return metered(incomingEndpointConnector.connect(), metrics);
+                            } catch (IOException e) {
+                                Tracer.trace(Tracer.WARN, TraceEvent.LOCAL_CONNECT_FAILED, remoteAddress, e.getMessage());
+                                connectionStatusNotifier.onConnectionFailure(
+                                        remoteAddress, channelId, e.getMessage(), true);
+                                return null;
+                            }
+                        }
+
+                        @Override
+                        public void onChannelOpened(MultiplexedLink link, int channelId, boolean remotelyOpened) {
+                            connectionStatusNotifier.onConnectionSuccess(remoteAddress, channelId, remotelyOpened);
+                        }
+
+                        @Override
+                        public void onChannelClosed(MultiplexedLink link, int channelId) {
+                            connectionStatusNotifier.onDisconnect(remoteAddress, channelId, "Connection lost.");
+                        }
+
+                        @Override
+                        public void onLinkClosed(MultiplexedLink link, IOException failure) {
+                            Tracer.trace(Tracer.DEBUG, TraceEvent.BRIDGE_CLOSED, remoteAddress,
+                                    failure == null ? null : failure.getMessage());
+
+                            multiplexedLinks.remove(remoteAddress);
+                            connectedDevices.remove(remoteAddress);
+                            connectionMetrics.remove(remoteAddress);
+                            radioScheduler.transferFinished(remoteAddress);
+                        }
+                    }
+            );
+
+            connectedDevices.put(remoteAddress, bluetoothLink);
+            connectionMetrics.put(remoteAddress, metrics);
+            multiplexedLinks.put(remoteAddress, multiplexedLink);
+            radioScheduler.transferStarted(remoteAddress);
+
+            registered = true;
+            if (onRegistered != null) {
+                onRegistered.run();
+            }
+
+            multiplexedLink.start();
+        } catch (IOException | RejectedExecutionException e) {
+            Tracer.trace(Tracer.WARN, TraceEvent.BRIDGE_FAILED, remoteAddress, e.getMessage());
+
+            if (!registered && onRegistered != null) {
+                onRegistered.run();
             }
 
+            multiplexedLinks.remove(remoteAddress);
+            connectedDevices.remove(remoteAddress);
+            connectionMetrics.remove(remoteAddress);
+            radioScheduler.transferFinished(remoteAddress);
+            close(bluetoothLink);
+
+            if (localEndpoint != null) {
+                close(localEndpoint);
+            }
+
+            String reason = e instanceof RejectedExecutionException ? "Too many open connections." : e.getMessage();
+            connectionStatusNotifier.onConnectionFailure(remoteAddress, NO_CHANNEL, reason, isIncoming);
+            return reason;
+        }
+
+        return localEndpoint == null ? null : openMultiplexedChannel(multiplexedLink, localEndpoint, metrics);
+    }
+
+    /**
+     * Opens a channel on a link we already have, rather than a new bluetooth connection. Failures are
+     * reported like a failed connection attempt, except for lack of room for the channel's pumps, which
+     * is reported as the channel opening and closing again as with an ordinary connection.
+     *
+     * @param metrics the link's metrics, which the channel's local traffic is added to, or null if the
+     *                link has been closed since it was looked up.
+     * @return null if the channel was opened, otherwise the reason it could not be.
+     */
+    private String openMultiplexedChannel(MultiplexedLink multiplexedLink,
+                                          LocalEndpoint localEndpoint,
+                                          ConnectionMetrics metrics) {
+        try {
+            int channelId = multiplexedLink.openChannel(metered(localEndpoint, metrics));
+            Tracer.trace(Tracer.DEBUG, TraceEvent.CHANNEL_OPENED, multiplexedLink.getRemoteAddress(), channelId);
+            return null;
         } catch (IOException e) {
-            Log.d(TAG, "IO err " + e.getMessage());
-            Log.d(TAG, "Socket fd: " + socketFd.toString());
-        } finally {
-            close(bluetoothSocket);
-            close(localSocket);
+            Tracer.trace(Tracer.WARN, TraceEvent.CHANNEL_OPEN_FAILED, multiplexedLink.getRemoteAddress(), e.getMessage());
+            close(localEndpoint);
+            connectionStatusNotifier.onConnectionFailure(
+                    multiplexedLink.getRemoteAddress(), NO_CHANNEL, e.getMessage(), false);
+            return e.getMessage();
+        } catch (RejectedExecutionException e) {
+            Tracer.trace(Tracer.WARN, TraceEvent.CHANNEL_OPEN_FAILED, multiplexedLink.getRemoteAddress(),
+                    "Too many open connections.");
+            return "Too many open connections.";
         }
+    }
 
+    /**
+     * @param onEnded run once the relay has stopped and the connection has been closed, or null.
+     */
+    private Relay createRelay(final String remoteAddress,
+                              InputStream source,
+                              OutputStream sink,
+                              Closeable connection,
+                              final Runnable onEnded) {
+        final ByteRingBuffer buffer = reserveIntermediateBuffer();
+
+        return new Relay(streamPump, source, sink, buffer, connection, new Relay.Listener() {
+            @Override
+            public void onEnded(IOException failure) {
+                Tracer.trace(Tracer.DEBUG, TraceEvent.RELAY_ENDED, remoteAddress,
+                        failure == null ? null : failure.getMessage());
+
+                releaseIntermediateBuffer(buffer);
+
+                if (onEnded != null) {
+                    onEnded.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * @return a buffer to place between the two sides of a relay, or null if intermediate buffering is
+     * disabled or the memory budget for it is used up, in which case the relay copies directly.
+     */
+    private ByteRingBuffer reserveIntermediateBuffer() {
+        if (intermediateBufferBudget == null || !intermediateBufferBudget.tryReserve(intermediateBufferSize)) {
+            return null;
+        }
+
+        return new ByteRingBuffer(
+                intermediateBufferSize,
+                intermediateBufferHighWatermark,
+                intermediateBufferLowWatermark,
+                intermediateBufferPauses
+        );
+    }
+
+    private static LocalEndpoint metered(LocalEndpoint localEndpoint, ConnectionMetrics metrics) {
+        return metrics != null ? new MeteredLocalEndpoint(localEndpoint, metrics) : localEndpoint;
+    }
+
+    private void releaseIntermediateBuffer(ByteRingBuffer buffer) {
+        if (buffer != null) {
+            intermediateBufferBudget.release(buffer.getCapacity());
+        }
     }
 
     private void close(Closeable closeable) {
         try {
             closeable.close();
         } catch (IOException e) {
-            e.printStackTrace();
+            Tracer.trace(Tracer.WARN, TraceEvent.CLOSE_FAILED, null, e.getMessage());
         }
     }
 }
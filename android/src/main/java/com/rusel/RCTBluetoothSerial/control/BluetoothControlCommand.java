@@ -1,5 +1,7 @@
 package com.rusel.RCTBluetoothSerial.control;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.HashMap;
 import java.util.Map;
 
@@ -11,6 +13,12 @@ public class BluetoothControlCommand {
     private String command;
     private Map<String, Object> arguments;
 
+    /**
+     * Echoed from the command this is a response to, if it had one. Left out of events.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Object requestId;
+
     public BluetoothControlCommand() {
 
     }
@@ -20,6 +28,11 @@ public class BluetoothControlCommand {
         this.arguments = arguments;
     }
 
+    public BluetoothControlCommand(String command, Map<String, Object> arguments, Object requestId) {
+        this(command, arguments);
+        this.requestId = requestId;
+    }
+
     public String getCommand() {
         return command;
     }
@@ -28,14 +41,7 @@ public class BluetoothControlCommand {
         return arguments;
     }
 
-    public String getArgumentAsString(String key) {
-        return String.valueOf(arguments.get(key));
-    }
-
-    public int getArgumentAsInt(String key) {
-        String argumentAsString = getArgumentAsString(key);
-
-        // todo: handle exception
-        return Integer.parseInt(argumentAsString);
+    public Object getRequestId() {
+        return requestId;
     }
 }
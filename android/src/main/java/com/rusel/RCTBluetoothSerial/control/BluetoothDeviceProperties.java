@@ -1,13 +1,33 @@
 package com.rusel.RCTBluetoothSerial.control;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 public class BluetoothDeviceProperties {
 
     private final String remoteAddress;
     private final String displayName;
 
+    /**
+     * Signal strength in dBm when the device was discovered. Left out if unknown.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final Integer rssi;
+
+    /**
+     * As in android.bluetooth.BluetoothClass.Device. Left out if unknown.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final Integer deviceClass;
+
     public BluetoothDeviceProperties(String remoteAddress, String displayName) {
+        this(remoteAddress, displayName, null, null);
+    }
+
+    public BluetoothDeviceProperties(String remoteAddress, String displayName, Integer rssi, Integer deviceClass) {
         this.remoteAddress = remoteAddress;
         this.displayName = displayName;
+        this.rssi = rssi;
+        this.deviceClass = deviceClass;
     }
 
     public String getRemoteAddress() {
@@ -17,4 +37,12 @@ public class BluetoothDeviceProperties {
     public String getDisplayName() {
         return displayName;
     }
+
+    public Integer getRssi() {
+        return rssi;
+    }
+
+    public Integer getDeviceClass() {
+        return deviceClass;
+    }
 }
@@ -0,0 +1,105 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * CBOR messages, each preceded by its length as a 4 byte big endian integer. Cheaper to encode and
+ * decode than JSON, and the framing does not depend on what is in the messages.
+ */
+public class CborControlCodec implements ControlCodec {
+
+    public static final String NAME = "cbor";
+
+    private static final int WRITE_BUFFER_SIZE = 8192;
+
+    private final ObjectMapper objectMapper = new ObjectMapper(new CBORFactory());
+    private final ObjectWriter messageWriter;
+
+    private final int maxMessageSize;
+
+    /**
+     * @param maxMessageSize the largest command accepted from the other side, in bytes.
+     */
+    public CborControlCodec(int maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+
+        messageWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public ControlMessageReader createReader(InputStream inputStream) throws IOException {
+        final DataInputStream dataInputStream = new DataInputStream(inputStream);
+
+        return new ControlMessageReader() {
+
+            // Grown to the largest message read so far
+            private byte[] message = new byte[0];
+
+            @Override
+            public JsonParser next() throws IOException {
+                int length = dataInputStream.readInt();
+                if (length < 0 || length > maxMessageSize) {
+                    throw new IOException("Control message too large: " + length);
+                }
+
+                if (message.length < length) {
+                    message = new byte[length];
+                }
+
+                dataInputStream.readFully(message, 0, length);
+
+                return objectMapper.getFactory().createParser(message, 0, length);
+            }
+        };
+    }
+
+    @Override
+    public ControlMessageWriter createWriter(OutputStream outputStream) throws IOException {
+        final OutputStream bufferedOutputStream = new BufferedOutputStream(outputStream, WRITE_BUFFER_SIZE);
+
+        // Each message is encoded here first, as its length has to be written before it
+        final ByteArrayOutputStream encoded = new ByteArrayOutputStream(WRITE_BUFFER_SIZE);
+        final JsonGenerator generator = objectMapper.getFactory().createGenerator(encoded);
+        final byte[] lengthPrefix = new byte[4];
+
+        return new ControlMessageWriter() {
+            @Override
+            public void write(BluetoothControlCommand message) throws IOException {
+                encoded.reset();
+                messageWriter.writeValue(generator, message);
+                generator.flush();
+
+                int length = encoded.size();
+                lengthPrefix[0] = (byte) (length >>> 24);
+                lengthPrefix[1] = (byte) (length >>> 16);
+                lengthPrefix[2] = (byte) (length >>> 8);
+                lengthPrefix[3] = (byte) length;
+
+                bufferedOutputStream.write(lengthPrefix);
+                encoded.writeTo(bufferedOutputStream);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                bufferedOutputStream.flush();
+            }
+        };
+    }
+}
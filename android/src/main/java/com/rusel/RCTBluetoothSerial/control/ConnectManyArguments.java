@@ -0,0 +1,21 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import java.util.List;
+
+public class ConnectManyArguments {
+
+    private List<String> remoteAddresses;
+
+    /**
+     * Optional, defaults to connecting to all the addresses at once.
+     */
+    private Integer parallelism;
+
+    public List<String> getRemoteAddresses() {
+        return remoteAddresses;
+    }
+
+    public Integer getParallelism() {
+        return parallelism;
+    }
+}
@@ -0,0 +1,25 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import com.rusel.RCTBluetoothSerial.ConnectBatch;
+import com.rusel.RCTBluetoothSerial.ConnectResult;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ConnectManyHandler implements ConnectBatch.Listener {
+
+    private final ControlResponder responder;
+
+    public ConnectManyHandler(ControlResponder responder) {
+        this.responder = responder;
+    }
+
+    @Override
+    public void onBatchComplete(List<ConnectResult> results) {
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("results", results);
+
+        responder.respond("connectManyResult", arguments);
+    }
+}
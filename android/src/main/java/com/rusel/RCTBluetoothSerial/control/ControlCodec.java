@@ -0,0 +1,28 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * How commands and responses are encoded and framed on the control socket.
+ */
+public interface ControlCodec {
+
+    /**
+     * The name the encoding is negotiated by.
+     */
+    String getName();
+
+    /**
+     * Creates a reader for commands from the given stream, to be kept for as long as the connection
+     * uses this encoding.
+     */
+    ControlMessageReader createReader(InputStream inputStream) throws IOException;
+
+    /**
+     * Creates a writer for messages to the given stream, to be kept for as long as the connection
+     * and used by one thread at a time.
+     */
+    ControlMessageWriter createWriter(OutputStream outputStream) throws IOException;
+}
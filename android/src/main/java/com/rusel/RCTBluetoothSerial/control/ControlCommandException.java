@@ -0,0 +1,22 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+/**
+ * A control command could not be carried out, because it is unknown or its arguments are not valid.
+ * The message is sent back over the control socket.
+ */
+public class ControlCommandException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public ControlCommandException(String message) {
+        super(message);
+    }
+
+    public static <T> T required(T argument, String name) throws ControlCommandException {
+        if (argument == null) {
+            throw new ControlCommandException("Missing argument: " + name);
+        }
+
+        return argument;
+    }
+}
@@ -0,0 +1,14 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+/**
+ * Carries out one control command.
+ *
+ * @param <A> the type the command's arguments are deserialized into.
+ */
+public interface ControlCommandHandler<A> {
+
+    /**
+     * @param responder for sending any responses to the command, now or later.
+     */
+    void handle(A arguments, ControlResponder responder) throws ControlCommandException;
+}
@@ -0,0 +1,138 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Looks up the handler for each control command by name, and deserializes the command's arguments
+ * into the type the handler expects.
+ */
+public class ControlCommandRegistry {
+
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, Registration<?>> registrations = new HashMap<>();
+
+    public ControlCommandRegistry(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public <A> void register(String command, Class<A> argumentsType, ControlCommandHandler<A> handler) {
+        registrations.put(command, new Registration<>(argumentsType, handler));
+    }
+
+    /**
+     * Decodes the command's arguments from the parser, which is positioned on their first token. The
+     * parser is left on their last token, even if they do not fit the command's arguments type.
+     *
+     * @throws ControlCommandException if the command is unknown, or its arguments do not fit its
+     * arguments type.
+     */
+    public Object readArguments(String command, JsonParser parser) throws IOException, ControlCommandException {
+        Registration<?> registration = getRegistration(command);
+
+        if (registration == null) {
+            parser.skipChildren();
+            throw unknownCommand(command);
+        }
+
+        // The command the arguments belong to. On an object or array the parser is already inside it.
+        JsonStreamContext enclosingContext = parser.currentToken().isStructStart()
+                ? parser.getParsingContext().getParent()
+                : parser.getParsingContext();
+
+        try {
+            return registration.argumentsReader.readValue(parser);
+        } catch (JsonMappingException e) {
+            // Skip whatever is left of the arguments, so the next command can still be read
+            while (parser.getParsingContext() != enclosingContext) {
+                parser.nextToken();
+            }
+
+            throw invalidArguments(e);
+        }
+    }
+
+    /**
+     * Decodes the command's arguments from a tree, for when they were read before the command's name.
+     */
+    public Object convertArguments(String command, JsonNode arguments) throws ControlCommandException {
+        Registration<?> registration = getRegistration(command);
+
+        if (registration == null) {
+            throw unknownCommand(command);
+        }
+
+        try {
+            return registration.argumentsReader.treeToValue(arguments, registration.argumentsType);
+        } catch (JsonProcessingException e) {
+            throw invalidArguments(e);
+        }
+    }
+
+    /**
+     * @throws ControlCommandException if the command is unknown, or its arguments were not valid.
+     */
+    public void dispatch(ControlRequest request, ControlResponder responder) throws ControlCommandException {
+        Registration<?> registration = getRegistration(request.getCommand());
+
+        if (registration == null) {
+            throw unknownCommand(request.getCommand());
+        } else if (request.getInvalidArguments() != null) {
+            throw request.getInvalidArguments();
+        }
+
+        registration.dispatch(request.getArguments(), responder);
+    }
+
+    private Registration<?> getRegistration(String command) {
+        return command == null ? null : registrations.get(command);
+    }
+
+    private static ControlCommandException unknownCommand(String command) {
+        return new ControlCommandException("Unknown command: " + command);
+    }
+
+    private static ControlCommandException invalidArguments(JsonProcessingException e) {
+        return new ControlCommandException("Invalid arguments: " + e.getOriginalMessage());
+    }
+
+    private class Registration<A> {
+
+        private final Class<A> argumentsType;
+        private final ObjectReader argumentsReader;
+        private final ControlCommandHandler<A> handler;
+
+        Registration(Class<A> argumentsType, ControlCommandHandler<A> handler) {
+            this.argumentsType = argumentsType;
+            this.argumentsReader = objectMapper.readerFor(argumentsType);
+            this.handler = handler;
+        }
+
+        /**
+         * @param arguments the decoded arguments, or null if the command had none.
+         */
+        void dispatch(Object arguments, ControlResponder responder) throws ControlCommandException {
+            A typedArguments;
+
+            try {
+                typedArguments = arguments != null
+                        ? argumentsType.cast(arguments)
+                        : objectMapper.treeToValue(objectMapper.createObjectNode(), argumentsType);
+            } catch (JsonProcessingException e) {
+                throw invalidArguments(e);
+            }
+
+            handler.handle(typedArguments, responder);
+        }
+    }
+}
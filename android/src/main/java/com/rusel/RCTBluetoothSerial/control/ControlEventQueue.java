@@ -0,0 +1,229 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The messages waiting to be written to the control socket. It outlives each connection, so events
+ * raised while the other side is away are delivered once it reconnects.
+ *
+ * Responses to commands are written before lifecycle events, and a lifecycle event still waiting
+ * is replaced by the next one for the same connection (device and channel) that supersedes it, so
+ * peers coming and going can't grow the queue. A failure that doesn't supersede the waiting state,
+ * such as a duplicate connection refused while connected, waits behind it in a slot of its own until
+ * the connection's next state.
+ *
+ * The queue is bounded all the same: when full, the oldest event is dropped to make room, or the
+ * oldest response if there are no events. The other side is told how many were dropped with an
+ * 'eventsDropped' message ahead of the next batch, so it knows to ask for the current state.
+ */
+public class ControlEventQueue {
+
+    private static final String FAILURE_SLOT = "/failure";
+
+    private final int capacity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    private final ArrayDeque<BluetoothControlCommand> responses = new ArrayDeque<>();
+
+    /**
+     * Keyed by connection, in the order each connection first had an event queued. A failure that
+     * waits behind the connection's state is keyed by the connection's key plus FAILURE_SLOT.
+     */
+    private LinkedHashMap<String, LifecycleEvent> events = new LinkedHashMap<>();
+
+    private long coalescedCount = 0;
+    private long droppedCount = 0;
+
+    /**
+     * Dropped since the other side was last told.
+     */
+    private long unreportedDropCount = 0;
+
+    public ControlEventQueue(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Queue a response to a command.
+     */
+    public void add(BluetoothControlCommand response) {
+        lock.lock();
+        try {
+            responses.addLast(response);
+            makeRoom();
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void addEvent(LifecycleEvent event) {
+        lock.lock();
+        try {
+            coalescedCount += coalesce(events, event);
+            makeRoom();
+
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for a message, then adds up to maxMessages to the batch, responses first.
+     */
+    public void takeBatch(List<BluetoothControlCommand> batch, int maxMessages) throws InterruptedException {
+        lock.lock();
+        try {
+            while (responses.isEmpty() && events.isEmpty()) {
+                notEmpty.await();
+            }
+
+            if (unreportedDropCount > 0) {
+                batch.add(new DropReport(unreportedDropCount));
+                unreportedDropCount = 0;
+            }
+
+            while (batch.size() < maxMessages && !responses.isEmpty()) {
+                batch.add(responses.pollFirst());
+            }
+
+            Iterator<LifecycleEvent> queuedEvents = events.values().iterator();
+            while (batch.size() < maxMessages && queuedEvents.hasNext()) {
+                batch.add(queuedEvents.next());
+                queuedEvents.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a batch that could not be written to the front of the queue, to be written on the next
+     * connection. Events in it are dropped if a newer one for the same connection that supersedes
+     * them has been queued since.
+     */
+    public void pushBack(List<BluetoothControlCommand> batch) {
+        lock.lock();
+        try {
+            LinkedHashMap<String, LifecycleEvent> requeuedEvents = new LinkedHashMap<>();
+
+            ListIterator<BluetoothControlCommand> messages = batch.listIterator(batch.size());
+            while (messages.hasPrevious()) {
+                BluetoothControlCommand message = messages.previous();
+
+                if (message instanceof DropReport) {
+                    // Told again along with anything dropped since
+                    unreportedDropCount += ((DropReport) message).dropCount;
+                } else if (!(message instanceof LifecycleEvent)) {
+                    responses.addFirst(message);
+                }
+            }
+
+            // Queued again as if they had never been taken, so the events queued since apply on top
+            for (BluetoothControlCommand message : batch) {
+                if (message instanceof LifecycleEvent) {
+                    coalesce(requeuedEvents, (LifecycleEvent) message);
+                }
+            }
+
+            for (LifecycleEvent event : events.values()) {
+                coalesce(requeuedEvents, event);
+            }
+
+            events = requeuedEvents;
+
+            makeRoom();
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return responses.size() + events.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+
+        lock.lock();
+        try {
+            stats.put("queued", responses.size() + events.size());
+            stats.put("capacity", capacity);
+            stats.put("coalesced", coalescedCount);
+            stats.put("dropped", droppedCount);
+        } finally {
+            lock.unlock();
+        }
+
+        return stats;
+    }
+
+    /**
+     * @return how many waiting events the new one has made out of date.
+     */
+    private static int coalesce(LinkedHashMap<String, LifecycleEvent> events, LifecycleEvent event) {
+        String key = event.getConnectionKey();
+        LifecycleEvent pending = events.get(key);
+
+        if (pending != null && !event.supersedes(pending)) {
+            return events.put(key + FAILURE_SLOT, event) != null ? 1 : 0;
+        }
+
+        int replaced = events.put(key, event) != null ? 1 : 0;
+
+        if (!event.isFailure() && events.remove(key + FAILURE_SLOT) != null) {
+            // The connection has moved on since the failure
+            replaced++;
+        }
+
+        return replaced;
+    }
+
+    private void makeRoom() {
+        while (responses.size() + events.size() > capacity) {
+            if (!events.isEmpty()) {
+                Iterator<LifecycleEvent> oldest = events.values().iterator();
+                oldest.next();
+                oldest.remove();
+            } else {
+                responses.pollFirst();
+            }
+
+            droppedCount++;
+            unreportedDropCount++;
+        }
+    }
+
+    private static class DropReport extends BluetoothControlCommand {
+
+        private final long dropCount;
+
+        DropReport(long dropCount) {
+            super("eventsDropped", argumentsFor(dropCount));
+            this.dropCount = dropCount;
+        }
+
+        private static Map<String, Object> argumentsFor(long dropCount) {
+            Map<String, Object> arguments = new HashMap<>();
+            arguments.put("count", dropCount);
+            return arguments;
+        }
+    }
+}
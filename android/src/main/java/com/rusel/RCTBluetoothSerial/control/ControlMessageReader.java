@@ -0,0 +1,18 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+
+/**
+ * Reads commands in a codec's encoding from one connection, as tokens rather than whole objects, so
+ * each command's arguments can be decoded straight into the type its handler expects.
+ */
+public interface ControlMessageReader {
+
+    /**
+     * Blocks until the next command can be read, and returns a parser positioned just before it. The
+     * parser may be the same one each time, and is only valid until next is called again.
+     */
+    JsonParser next() throws IOException;
+}
@@ -0,0 +1,14 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import java.io.IOException;
+
+/**
+ * Writes messages in a codec's encoding to one connection. Messages are buffered until flushed, so
+ * each flush costs one write to the socket as long as the messages fit in the buffer.
+ */
+public interface ControlMessageWriter {
+
+    void write(BluetoothControlCommand message) throws IOException;
+
+    void flush() throws IOException;
+}
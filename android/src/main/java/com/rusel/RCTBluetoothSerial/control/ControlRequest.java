@@ -0,0 +1,49 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+/**
+ * A command received over the control socket, with its arguments already decoded into the type its
+ * handler expects.
+ */
+public class ControlRequest {
+
+    private final String command;
+
+    /**
+     * Null if the command had none, or they were not valid.
+     */
+    private final Object arguments;
+
+    /**
+     * Why the arguments could not be decoded, if they couldn't. Reported when the command is carried out.
+     */
+    private final ControlCommandException invalidArguments;
+
+    /**
+     * Optional, any JSON value. Echoed in the responses to the command.
+     */
+    private final Object requestId;
+
+    public ControlRequest(String command, Object arguments, ControlCommandException invalidArguments,
+                          Object requestId) {
+        this.command = command;
+        this.arguments = arguments;
+        this.invalidArguments = invalidArguments;
+        this.requestId = requestId;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public Object getArguments() {
+        return arguments;
+    }
+
+    public ControlCommandException getInvalidArguments() {
+        return invalidArguments;
+    }
+
+    public Object getRequestId() {
+        return requestId;
+    }
+}
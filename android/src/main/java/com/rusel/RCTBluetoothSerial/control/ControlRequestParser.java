@@ -0,0 +1,77 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Reads a command from a token stream. Clients send the command name first, so once it has been read
+ * the arguments are decoded directly into the type the command's handler expects, without building a
+ * tree of them first. If the arguments come before the name they are kept as a tree until it is known.
+ */
+class ControlRequestParser {
+
+    private final ObjectMapper objectMapper;
+    private final ControlCommandRegistry commandRegistry;
+
+    ControlRequestParser(ObjectMapper objectMapper, ControlCommandRegistry commandRegistry) {
+        this.objectMapper = objectMapper;
+        this.commandRegistry = commandRegistry;
+    }
+
+    /**
+     * @throws EOFException if the other side has closed the stream.
+     * @throws IOException if the stream is not a sequence of commands, so can't be read any further.
+     */
+    ControlRequest parse(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+
+        if (token == null) {
+            throw new EOFException("Control socket closed");
+        } else if (token != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected a command object, not " + token);
+        }
+
+        String command = null;
+        Object requestId = null;
+        Object arguments = null;
+        JsonNode argumentsTree = null;
+        ControlCommandException invalidArguments = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+
+            if ("command".equals(field)) {
+                command = parser.getValueAsString();
+            } else if ("requestId".equals(field)) {
+                requestId = objectMapper.readValue(parser, Object.class);
+            } else if ("arguments".equals(field) && command == null) {
+                argumentsTree = objectMapper.readTree(parser);
+            } else if ("arguments".equals(field)) {
+                try {
+                    arguments = commandRegistry.readArguments(command, parser);
+                } catch (ControlCommandException e) {
+                    invalidArguments = e;
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if (argumentsTree != null) {
+            try {
+                arguments = commandRegistry.convertArguments(command, argumentsTree);
+            } catch (ControlCommandException e) {
+                invalidArguments = e;
+            }
+        }
+
+        return new ControlRequest(command, arguments, invalidArguments, requestId);
+    }
+}
@@ -0,0 +1,38 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import java.util.Map;
+
+/**
+ * Sends the responses to one command. If the command carried a request id, each response echoes it,
+ * so the other side can have several commands in flight at once and tell the answers apart.
+ */
+public class ControlResponder {
+
+    private final ControlSession session;
+    private final Object requestId;
+
+    /**
+     * @param session the session the command came from, which the responses go back to.
+     * @param requestId the id the command carried, or null.
+     */
+    public ControlResponder(ControlSession session, Object requestId) {
+        this.session = session;
+        this.requestId = requestId;
+    }
+
+    ControlSession getSession() {
+        return session;
+    }
+
+    public Object getRequestId() {
+        return requestId;
+    }
+
+    public void respond(String command, Map<String, Object> arguments) {
+        respond(new BluetoothControlCommand(command, arguments, requestId));
+    }
+
+    void respond(BluetoothControlCommand response) {
+        session.getQueue().add(response);
+    }
+}
@@ -0,0 +1,396 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import com.rusel.RCTBluetoothSerial.trace.TraceEvent;
+import com.rusel.RCTBluetoothSerial.trace.Tracer;
+import com.rusel.RCTBluetoothSerial.transport.LocalEndpoint;
+import com.rusel.RCTBluetoothSerial.transport.LocalEndpointConnector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The connection to one control socket, re-established whenever it is lost. Each session has its own
+ * queue, so a client that is slow to read only holds up its own events, and only gets the events it
+ * has subscribed to. Responses go back to the session the command came from.
+ */
+public class ControlSession {
+
+    /**
+     * The most responses written to the socket with one flush.
+     */
+    private final static int MAX_RESPONSE_BATCH = 64;
+
+    private final static long INITIAL_RECONNECT_DELAY_MILLIS = 100;
+    private final static long MAX_RECONNECT_DELAY_MILLIS = 5000;
+
+    private final String controlSocketPath;
+    private final LocalEndpointConnector connector;
+
+    private final JsonControlCodec jsonCodec;
+    private final CborControlCodec cborCodec;
+
+    private final ControlCommandRegistry commandRegistry;
+    private final ControlRequestParser requestParser;
+
+    /**
+     * The commands to be written to the output stream in a thread safe way.
+     */
+    private final ControlEventQueue commandResponseQueue;
+
+    /**
+     * The encoding commands are read in. Only changed by the reader thread.
+     */
+    private ControlCodec requestCodec;
+
+    /**
+     * The names of the events the other side wants, or null for all of them.
+     */
+    private volatile Set<String> subscribedEvents = null;
+
+    private volatile boolean connected = false;
+
+    private Thread thread = null;
+
+    /**
+     * The connection being served, or null.
+     */
+    private volatile LocalEndpoint currentEndpoint = null;
+
+    /**
+     * @param connector connects to the control socket at controlSocketPath.
+     * @param cborCodec offered to the other side when we connect, if not null.
+     */
+    ControlSession(String controlSocketPath,
+                   LocalEndpointConnector connector,
+                   JsonControlCodec jsonCodec,
+                   CborControlCodec cborCodec,
+                   ControlCommandRegistry commandRegistry,
+                   ControlRequestParser requestParser,
+                   int maxQueuedMessages) {
+        this.controlSocketPath = controlSocketPath;
+        this.connector = connector;
+        this.jsonCodec = jsonCodec;
+        this.cborCodec = cborCodec;
+        this.commandRegistry = commandRegistry;
+        this.requestParser = requestParser;
+        this.commandResponseQueue = new ControlEventQueue(maxQueuedMessages);
+        this.requestCodec = jsonCodec;
+    }
+
+    /**
+     * Start in a new thread. The connection is re-established whenever it is lost, until stopped.
+     */
+    synchronized void start() {
+        thread = new Thread(controlSocketThread(), "control-session-" + controlSocketPath);
+        thread.start();
+    }
+
+    /**
+     * Closes the connection and stops re-establishing it. Events still queued are kept.
+     */
+    synchronized void stop() throws InterruptedException {
+        if (thread == null) {
+            return;
+        }
+
+        thread.interrupt();
+
+        LocalEndpoint endpoint = currentEndpoint;
+        if (endpoint != null) {
+            closeQuietly(endpoint);
+        }
+
+        thread.join();
+        thread = null;
+    }
+
+    public String getControlSocketPath() {
+        return controlSocketPath;
+    }
+
+    /**
+     * Queues the event if the other side has subscribed to it.
+     */
+    void addEvent(LifecycleEvent event) {
+        Set<String> subscribed = subscribedEvents;
+
+        if (subscribed == null || subscribed.contains(event.getCommand())) {
+            commandResponseQueue.addEvent(event);
+        }
+    }
+
+    ControlEventQueue getQueue() {
+        return commandResponseQueue;
+    }
+
+    /**
+     * Switches the encoding commands are read in from the next one. Called from a command handler.
+     */
+    void setRequestCodec(ControlCodec codec) {
+        this.requestCodec = codec;
+    }
+
+    /**
+     * Only events with these names are sent from now on, or all of them if null. Events already
+     * queued are still sent.
+     */
+    void setSubscribedEvents(Set<String> subscribedEvents) {
+        this.subscribedEvents = subscribedEvents;
+    }
+
+    Set<String> getSubscribedEvents() {
+        return subscribedEvents;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = commandResponseQueue.getStats();
+        stats.put("connected", connected);
+
+        return stats;
+    }
+
+    private Runnable controlSocketThread() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                long reconnectDelay = INITIAL_RECONNECT_DELAY_MILLIS;
+
+                try {
+                    while (true) {
+                        LocalEndpoint endpoint = establishConnection();
+
+                        if (endpoint == null) {
+                            // The other side may just not be listening yet, so try again soon at first
+                            Thread.sleep(reconnectDelay);
+                            reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY_MILLIS);
+                            continue;
+                        }
+
+                        reconnectDelay = INITIAL_RECONNECT_DELAY_MILLIS;
+                        serveConnection(endpoint);
+                    }
+                } catch (InterruptedException e) {
+                    Tracer.trace(Tracer.INFO, TraceEvent.CONTROL_DISCONNECTED, controlSocketPath, "Stopped");
+                }
+            }
+        };
+    }
+
+    /**
+     * Reads commands until the connection fails, then stops the writer. Anything it had not written
+     * is left in the queue for the next connection.
+     */
+    private void serveConnection(LocalEndpoint endpoint) throws InterruptedException {
+        // Each connection starts out in JSON and with all events, whatever the last one asked for
+        requestCodec = jsonCodec;
+        subscribedEvents = null;
+        connected = true;
+        currentEndpoint = endpoint;
+
+        Thread responseWriter = new Thread(responseWriterThread(endpoint), "control-writer-" + controlSocketPath);
+        responseWriter.start();
+
+        try {
+            handleCommands(endpoint);
+        } finally {
+            connected = false;
+            currentEndpoint = null;
+            closeQuietly(endpoint);
+
+            responseWriter.interrupt();
+            responseWriter.join();
+        }
+
+        Tracer.trace(Tracer.INFO, TraceEvent.CONTROL_DISCONNECTED, controlSocketPath,
+                commandResponseQueue.size());
+    }
+
+    private Runnable responseWriterThread(final LocalEndpoint endpoint) {
+
+        return new Runnable() {
+            @Override
+            public void run() {
+                ControlMessageWriter writer;
+
+                try {
+                    // The socket's stream and the writer are kept for as long as the connection
+                    OutputStream outputStream = endpoint.getOutputStream();
+                    writer = jsonCodec.createWriter(outputStream);
+
+                    if (cborCodec != null) {
+                        writer.write(createHello());
+                        writer.flush();
+                    }
+                } catch (IOException e) {
+                    Tracer.trace(Tracer.WARN, TraceEvent.CONTROL_WRITE_FAILED, controlSocketPath, e.getMessage());
+                    closeQuietly(endpoint);
+                    return;
+                }
+
+                List<BluetoothControlCommand> batch = new ArrayList<>(MAX_RESPONSE_BATCH);
+
+                boolean error = false;
+                while (!error) {
+                    try {
+                        // Whatever else is already queued goes out with the same flush, so a burst of
+                        // events costs one write. A batch larger than the writer's buffer is passed on
+                        // to the socket as the buffer fills.
+                        commandResponseQueue.takeBatch(batch, MAX_RESPONSE_BATCH);
+
+                        for (BluetoothControlCommand commandResponse : batch) {
+                            writer.write(commandResponse);
+
+                            if (commandResponse instanceof EncodingChange) {
+                                writer.flush();
+
+                                ControlCodec codec = ((EncodingChange) commandResponse).getCodec();
+                                writer = codec.createWriter(endpoint.getOutputStream());
+
+                                Tracer.trace(Tracer.INFO, TraceEvent.CONTROL_ENCODING_CHANGED, controlSocketPath,
+                                        codec.getName());
+                            }
+                        }
+
+                        writer.flush();
+
+                        if (Tracer.COMPILED_LEVEL <= Tracer.VERBOSE) {
+                            Tracer.trace(Tracer.VERBOSE, TraceEvent.CONTROL_RESPONSES_WRITTEN, controlSocketPath,
+                                    batch.size());
+                        }
+
+                        batch.clear();
+                    } catch (InterruptedException e) {
+                        // The reader has lost the connection
+                        error = true;
+                    } catch (IOException e) {
+                        Tracer.trace(Tracer.WARN, TraceEvent.CONTROL_WRITE_FAILED, controlSocketPath, e.getMessage());
+
+                        // Some of the batch may have got through, but we can't tell how much, so it is
+                        // all sent again. The encoding it switched to belonged to this connection.
+                        removeEncodingChanges(batch);
+                        commandResponseQueue.pushBack(batch);
+                        batch.clear();
+
+                        // Wakes the reader, which then starts over with a new connection
+                        closeQuietly(endpoint);
+                        error = true;
+                    }
+                }
+            }
+        };
+    }
+
+    private void handleCommands(LocalEndpoint endpoint) {
+        try {
+            handleCommands(endpoint.getInputStream());
+        } catch (IOException e) {
+            Tracer.trace(Tracer.WARN, TraceEvent.CONTROL_READ_FAILED, controlSocketPath, e.getMessage());
+        }
+    }
+
+    /**
+     * Carries out the commands read from the stream until it fails or ends. Responses are queued.
+     */
+    void handleCommands(InputStream inputStream) {
+        try {
+            ControlCodec readerCodec = requestCodec;
+            ControlMessageReader reader = readerCodec.createReader(inputStream);
+
+            while (true) {
+                if (requestCodec != readerCodec) {
+                    readerCodec = requestCodec;
+                    reader = readerCodec.createReader(inputStream);
+                }
+
+                // We continue reading new command objects while the thread is open
+                ControlRequest request = requestParser.parse(reader.next());
+
+                doCommand(request);
+            }
+
+        } catch (IOException e) {
+            Tracer.trace(Tracer.WARN, TraceEvent.CONTROL_READ_FAILED, controlSocketPath, e.getMessage());
+        }
+    }
+
+    private void doCommand(ControlRequest request) {
+
+        String commandName = request.getCommand();
+
+        Tracer.trace(Tracer.DEBUG, TraceEvent.CONTROL_COMMAND, commandName);
+
+        ControlResponder responder = new ControlResponder(this, request.getRequestId());
+
+        try {
+            commandRegistry.dispatch(request, responder);
+        } catch (ControlCommandException e) {
+            Tracer.trace(Tracer.INFO, TraceEvent.CONTROL_COMMAND_FAILED, commandName, e.getMessage());
+            respondWithError(responder, commandName, e.getMessage());
+        } catch (RuntimeException e) {
+            // A bug in a handler fails the command, not the session
+            Tracer.trace(Tracer.WARN, TraceEvent.CONTROL_COMMAND_FAILED, commandName, e.toString());
+            respondWithError(responder, commandName, "Internal error: " + e);
+        }
+    }
+
+    private static void respondWithError(ControlResponder responder, String commandName, String reason) {
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("command", commandName);
+        arguments.put("reason", reason);
+
+        responder.respond("error", arguments);
+    }
+
+    /**
+     * Lists the encodings the other side may switch to with the 'useEncoding' command. Old clients
+     * ignore it, and carry on with JSON.
+     */
+    private BluetoothControlCommand createHello() {
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("encodings", Arrays.asList(jsonCodec.getName(), cborCodec.getName()));
+
+        return new BluetoothControlCommand("hello", arguments);
+    }
+
+    private static void removeEncodingChanges(List<BluetoothControlCommand> batch) {
+        Iterator<BluetoothControlCommand> messages = batch.iterator();
+
+        while (messages.hasNext()) {
+            if (messages.next() instanceof EncodingChange) {
+                messages.remove();
+            }
+        }
+    }
+
+    private static void closeQuietly(LocalEndpoint endpoint) {
+        try {
+            endpoint.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    /**
+     * @return the connected socket, or null if the other side is not there.
+     */
+    private LocalEndpoint establishConnection() {
+        Tracer.trace(Tracer.DEBUG, TraceEvent.CONTROL_CONNECTING, controlSocketPath);
+
+        try {
+            LocalEndpoint endpoint = connector.connect();
+            Tracer.trace(Tracer.INFO, TraceEvent.CONTROL_CONNECTED, controlSocketPath);
+            return endpoint;
+        } catch (IOException e) {
+            Tracer.trace(Tracer.DEBUG, TraceEvent.CONTROL_CONNECT_FAILED, controlSocketPath, e.getMessage());
+            return null;
+        }
+    }
+}
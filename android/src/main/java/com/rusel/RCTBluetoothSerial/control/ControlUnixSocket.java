@@ -1,254 +1,364 @@
 package com.rusel.RCTBluetoothSerial.control;
 
-import android.net.LocalSocket;
-import android.net.LocalSocketAddress;
-import android.util.Log;
-
 import com.facebook.react.bridge.Promise;
-import com.fasterxml.jackson.core.JsonGenerationException;
 import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rusel.RCTBluetoothSerial.ConnectRetryPolicy;
 import com.rusel.RCTBluetoothSerial.RCTBluetoothSerialModule;
+import com.rusel.RCTBluetoothSerial.trace.Tracer;
+import com.rusel.RCTBluetoothSerial.transport.LocalEndpointConnector;
+import com.rusel.RCTBluetoothSerial.transport.LocalSocketEndpointConnector;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Set;
 
-public class ControlUnixSocket {
+import static com.rusel.RCTBluetoothSerial.control.ControlCommandException.required;
 
-    private final String controlSocketPath;
+public class ControlUnixSocket {
 
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final RCTBluetoothSerialModule bluetoothSerialModule;
+    private final ControlCommandRegistry commandRegistry;
+    private final ControlRequestParser requestParser;
 
-    private final static String TAG = "bt_control_socket";
+    private final JsonControlCodec jsonCodec;
+    private final CborControlCodec cborCodec;
+
+    private final static int MAX_BINARY_COMMAND_SIZE = 1024 * 1024;
 
     /**
-     * The commands to be written to the output stream in a thread safe way.
+     * The most messages kept for each client while it is slow or away.
      */
-    private final BlockingQueue<BluetoothControlCommand> commandResponseQueue = new LinkedBlockingQueue();
+    private final static int MAX_QUEUED_MESSAGES = 1024;
+
+    private final List<ControlSession> sessions = new ArrayList<>();
 
     public ControlUnixSocket(String unixSocketFilepath, RCTBluetoothSerialModule bluetoothSerialModule) {
-        this.controlSocketPath = unixSocketFilepath;
+        this(unixSocketFilepath, bluetoothSerialModule, false);
+    }
+
+    public ControlUnixSocket(String unixSocketFilepath,
+                             RCTBluetoothSerialModule bluetoothSerialModule,
+                             boolean offerBinaryEncoding) {
+        this(Collections.singletonList(unixSocketFilepath), bluetoothSerialModule, offerBinaryEncoding);
+    }
+
+    /**
+     * @param unixSocketFilepaths the sockets of each client. Every client is sent the lifecycle events
+     *                            it subscribes to, and may send commands.
+     * @param offerBinaryEncoding whether to offer the other side a CBOR encoding when we connect. The
+     *                            messages are JSON unless it asks for CBOR with the 'useEncoding' command.
+     */
+    public ControlUnixSocket(List<String> unixSocketFilepaths,
+                             RCTBluetoothSerialModule bluetoothSerialModule,
+                             boolean offerBinaryEncoding) {
+        this(connectorsFor(unixSocketFilepaths), bluetoothSerialModule, offerBinaryEncoding);
+    }
+
+    /**
+     * @param connectors to each client's socket, keyed by its path.
+     */
+    ControlUnixSocket(Map<String, LocalEndpointConnector> connectors,
+                      RCTBluetoothSerialModule bluetoothSerialModule,
+                      boolean offerBinaryEncoding) {
         this.bluetoothSerialModule = bluetoothSerialModule;
 
         // Don't close the mapper as we will be reading and writing multiple incoming and outgoing
         // JSON objects
         objectMapper.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
+
+        // Arguments this version doesn't know about are ignored rather than failing the command
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+        this.jsonCodec = new JsonControlCodec(objectMapper);
+        this.cborCodec = offerBinaryEncoding ? new CborControlCodec(MAX_BINARY_COMMAND_SIZE) : null;
+
+        this.commandRegistry = new ControlCommandRegistry(objectMapper);
+        this.requestParser = new ControlRequestParser(objectMapper, commandRegistry);
+        registerCommands();
+
+        for (Map.Entry<String, LocalEndpointConnector> connector : connectors.entrySet()) {
+            sessions.add(new ControlSession(connector.getKey(), connector.getValue(),
+                    jsonCodec, cborCodec, commandRegistry, requestParser, MAX_QUEUED_MESSAGES));
+        }
+    }
+
+    private static Map<String, LocalEndpointConnector> connectorsFor(List<String> unixSocketFilepaths) {
+        Map<String, LocalEndpointConnector> connectors = new LinkedHashMap<>();
+
+        for (String unixSocketFilepath : unixSocketFilepaths) {
+            connectors.put(unixSocketFilepath, new LocalSocketEndpointConnector(unixSocketFilepath));
+        }
+
+        return connectors;
     }
 
     /**
-     * Start in a new thread.
+     * Start each session in a new thread.
      */
     public void start() {
-        // TODO: handle IO errors? Restart the thread?
+        for (ControlSession session : sessions) {
+            session.start();
+        }
+    }
 
-        Thread thread = new Thread(controlSocketThread());
-        thread.start();
+    List<ControlSession> getSessions() {
+        return sessions;
     }
 
-    public void sendConnectedEvent(String remoteAddress, boolean isIncoming) {
+    public void sendConnectedEvent(String remoteAddress, int channelId, boolean isIncoming) {
         HashMap<String, Object> params = new HashMap<>();
         params.put("remoteAddress", remoteAddress);
+        params.put("channel", channelId);
         params.put("isIncoming", isIncoming);
 
-        BluetoothControlCommand command = new BluetoothControlCommand("connected", params);
-
-        commandResponseQueue.add(command);
+        sendEvent(new LifecycleEvent(LifecycleEvent.CONNECTED, remoteAddress, channelId, params));
     }
 
-    public void sendConnectionFailureEvent(String remoteAddress, String reason, boolean isIncoming) {
-        sendLifeCycleEvent("connectionFailure", remoteAddress, reason, isIncoming);
+    public void sendConnectionFailureEvent(String remoteAddress, int channelId, String reason, boolean isIncoming) {
+        sendLifeCycleEvent(LifecycleEvent.CONNECTION_FAILURE, remoteAddress, channelId, reason, isIncoming);
     }
 
-    public void sendDisconnectionEvent(String remoteAddress, String reason) {
-        sendLifeCycleEvent("disconnected", remoteAddress, null, null);
+    public void sendDisconnectionEvent(String remoteAddress, int channelId, String reason) {
+        sendLifeCycleEvent(LifecycleEvent.DISCONNECTED, remoteAddress, channelId, null, null);
     }
 
-    private void sendLifeCycleEvent(String state, String remoteAddress, String reason, Boolean isIncoming) {
+    private void sendLifeCycleEvent(String state, String remoteAddress, int channelId, String reason,
+                                    Boolean isIncoming) {
         HashMap<String, Object> params = new HashMap<>();
         params.put("remoteAddress", remoteAddress);
+        params.put("channel", channelId);
         params.put("reason", reason);
         params.put("isIncoming", isIncoming);
 
-        BluetoothControlCommand command = new BluetoothControlCommand(state, params);
-
-        commandResponseQueue.add(command);
+        sendEvent(new LifecycleEvent(state, remoteAddress, channelId, params));
     }
 
-    private Runnable controlSocketThread() {
-        return new Runnable() {
-            @Override
-            public void run() {
-                LocalSocket localSocket = establishConnection(10);
-
-                Thread responseWriter =  new Thread(responseWriterThread(localSocket));
-                responseWriter.start();
-
-                handleCommands(localSocket);
-            }
-        };
+    private void sendEvent(LifecycleEvent event) {
+        for (ControlSession session : sessions) {
+            session.addEvent(event);
+        }
     }
 
-    private Runnable responseWriterThread(final LocalSocket localSocket) {
+    private void registerCommands() {
 
-        return new Runnable() {
+        // The reply is the last message in the old encoding. The other side should wait for it
+        // before sending commands in the new encoding.
+        commandRegistry.register("useEncoding", EncodingArguments.class,
+                new ControlCommandHandler<EncodingArguments>() {
             @Override
-            public void run() {
-                boolean error = false;
-                while (!error) {
-                    try {
-                        OutputStream outputStream = localSocket.getOutputStream();
-                        BluetoothControlCommand commandResponse = commandResponseQueue.take();
-
-                        Log.d(TAG, "Sending response" + commandResponse.getCommand());
-                        Log.d(TAG, "Response arguments: " + commandResponse.getArguments());
-
-                        Log.d(TAG, "Attempting to write command to control socket.");
-                        byte[] bytes = objectMapper.writeValueAsBytes(commandResponse);
-                        outputStream.write(bytes);
-
-                        Log.d(TAG, "Attempting to write double line to control socket.");
-                        // For convenience on the other side of the socket using pull-json-doubleline
-                        String doubleNewLine = "\n\n";
-                        outputStream.write(doubleNewLine.getBytes());
-
-                        Log.d(TAG, "Successfully sent response");
-                    } catch (InterruptedException e) {
-                        Log.d(TAG, "interrupted exception while writing: " + e.getMessage());
-
-                        e.printStackTrace();
-                        error = true;
-                    } catch (JsonGenerationException e) {
-                        Log.d(TAG, "json generation exception while writing: " + e.getMessage());
-
-                        e.printStackTrace();
-                        error = true;
-                    } catch (JsonMappingException e) {
-                        Log.d(TAG, "json mapping exception while writing: " + e.getMessage());
-
-                        e.printStackTrace();
-                        error = true;
-                    } catch (IOException e) {
-                        e.printStackTrace();
-
-                        Log.d(TAG, "IO exception while writing: " + e.getMessage());
-                        error = true;
-                    }
+            public void handle(EncodingArguments arguments, ControlResponder responder) throws ControlCommandException {
+                String encoding = required(arguments.getEncoding(), "encoding");
+
+                ControlCodec codec;
+                if (encoding.equals(jsonCodec.getName())) {
+                    codec = jsonCodec;
+                } else if (cborCodec != null && encoding.equals(cborCodec.getName())) {
+                    codec = cborCodec;
+                } else {
+                    throw new ControlCommandException("Unsupported encoding: " + encoding);
                 }
-            }
-        };
-    }
 
-    private void handleCommands(LocalSocket socket) {
-        try {
-            InputStream inputStream = socket.getInputStream();
+                responder.getSession().setRequestCodec(codec);
+                responder.respond(new EncodingChange(codec, responder.getRequestId()));
+            }
+        });
 
-            while (true) {
-                // Each command is sent as a JSON payload, so we continue reading new command
-                // objects while the thread is open
-                // TODO: more fine grained / well typed deserialization ?
+        // Lasts until the connection is lost. Responses to the session's own commands are always sent.
+        commandRegistry.register("subscribe", SubscribeArguments.class,
+                new ControlCommandHandler<SubscribeArguments>() {
+            @Override
+            public void handle(SubscribeArguments arguments, ControlResponder responder) {
+                Set<String> events = arguments.getEvents() != null
+                        ? Collections.unmodifiableSet(new HashSet<>(arguments.getEvents()))
+                        : null;
 
-                BluetoothControlCommand bluetoothControlCommand =
-                        objectMapper.readValue(inputStream, BluetoothControlCommand.class);
+                responder.getSession().setSubscribedEvents(events);
 
-                Log.d(TAG, "Socket is connected? " + socket.isConnected());
+                Map<String, Object> response = new HashMap<>();
+                response.put("events", events);
 
-                doCommand(bluetoothControlCommand);
+                responder.respond("subscribed", response);
             }
+        });
 
-        } catch (IOException e) {
+        commandRegistry.register("connect", RemoteAddressArguments.class,
+                new ControlCommandHandler<RemoteAddressArguments>() {
+            @Override
+            public void handle(RemoteAddressArguments arguments, ControlResponder responder) throws ControlCommandException {
+                String remoteAddress = required(arguments.getRemoteAddress(), "remoteAddress");
 
-            // TODO: reconnect?
+                bluetoothSerialModule.connect(remoteAddress);
 
-            e.printStackTrace();
-        }
+                Map<String, Object> response = new HashMap<>();
+                response.put("remoteAddress", remoteAddress);
 
+                responder.respond("connectQueued", response);
+            }
+        });
 
-    }
+        commandRegistry.register("connectMany", ConnectManyArguments.class,
+                new ControlCommandHandler<ConnectManyArguments>() {
+            @Override
+            public void handle(ConnectManyArguments arguments, ControlResponder responder) throws ControlCommandException {
+                List<String> remoteAddresses = required(arguments.getRemoteAddresses(), "remoteAddresses");
 
-    private void doCommand(BluetoothControlCommand bluetoothControlCommand) {
+                if (remoteAddresses.contains(null)) {
+                    throw new ControlCommandException("Invalid argument: remoteAddresses must not contain null");
+                }
 
-        String commandName = bluetoothControlCommand.getCommand();
+                int parallelism = arguments.getParallelism() != null
+                        ? arguments.getParallelism()
+                        : remoteAddresses.size();
 
-        Log.d(TAG, "Performing command: " + commandName);
-        Log.d(TAG, "Command arguments" + bluetoothControlCommand.getArguments() );
+                ConnectManyHandler connectManyHandler = new ConnectManyHandler(responder);
+                bluetoothSerialModule.connectMany(remoteAddresses, parallelism, connectManyHandler);
+            }
+        });
 
+        commandRegistry.register("discoverDevices", DiscoverDevicesArguments.class,
+                new ControlCommandHandler<DiscoverDevicesArguments>() {
+            @Override
+            public void handle(DiscoverDevicesArguments arguments, ControlResponder responder) {
+                boolean stream = arguments.getStream() != null && arguments.getStream();
+                boolean sortBySignalStrength = arguments.getSortBySignalStrength() != null
+                        && arguments.getSortBySignalStrength();
+
+                long maxAgeMillis = arguments.getMaxAgeSeconds() != null
+                        ? arguments.getMaxAgeSeconds() * 1000L
+                        : 0;
+
+                DiscoveredDevicesHandler devicesHandler = new DiscoveredDevicesHandler(
+                        responder, stream, sortBySignalStrength);
+                bluetoothSerialModule.discoverNearbyDevices(devicesHandler, maxAgeMillis);
+            }
+        });
 
-        if (commandName.equals("connect")) {
-            String remoteAddress = bluetoothControlCommand.getArgumentAsString("remoteAddress");
+        commandRegistry.register("makeDiscoverable", MakeDiscoverableArguments.class,
+                new ControlCommandHandler<MakeDiscoverableArguments>() {
+            @Override
+            public void handle(MakeDiscoverableArguments arguments, ControlResponder responder) throws ControlCommandException {
+                int timeDiscoverable = required(arguments.getForTime(), "forTime");
 
-            Log.d(TAG, "Connecting to remote address: " + remoteAddress);
-            bluetoothSerialModule.connect(remoteAddress);
-        }
-        else if (commandName.equals("discoverDevices")) {
-            Log.d(TAG, "Discovering nearby devices");
+                MakeDeviceDiscoverableHandler responseHandler
+                        = new MakeDeviceDiscoverableHandler(responder);
 
-            DiscoveredDevicesHandler devicesHandler = new DiscoveredDevicesHandler(commandResponseQueue);
-            bluetoothSerialModule.discoverNearbyDevices(devicesHandler);
-        } else if (commandName.equals("makeDiscoverable")) {
+                bluetoothSerialModule.makeDeviceDiscoverable(timeDiscoverable, responseHandler);
+            }
+        });
 
-            int timeDiscoverable = bluetoothControlCommand.getArgumentAsInt("forTime");
+        commandRegistry.register("isEnabled", NoArguments.class,
+                new ControlCommandHandler<NoArguments>() {
+            @Override
+            public void handle(NoArguments arguments, ControlResponder responder) {
+                boolean bluetoothIsEnabled = bluetoothSerialModule.isEnabled();
 
-            MakeDeviceDiscoverableHandler responseHandler
-                    = new MakeDeviceDiscoverableHandler(commandResponseQueue);
+                Map<String, Object> response = new HashMap<>();
+                response.put("enabled", bluetoothIsEnabled);
 
-            bluetoothSerialModule.makeDeviceDiscoverable(timeDiscoverable, responseHandler);
-        } else if (commandName.equals("isEnabled")) {
-            Log.d(TAG, "Checking if bluetooth is enabled");
+                responder.respond("isEnabled", response);
+            }
+        });
 
-            boolean bluetoothIsEnabled = bluetoothSerialModule.isEnabled();
+        commandRegistry.register("setRetryPolicy", RetryPolicyArguments.class,
+                new ControlCommandHandler<RetryPolicyArguments>() {
+            @Override
+            public void handle(RetryPolicyArguments arguments, ControlResponder responder) throws ControlCommandException {
+                ConnectRetryPolicy current = bluetoothSerialModule.getConnectRetryPolicy();
+                ConnectRetryPolicy policy;
+
+                try {
+                    policy = new ConnectRetryPolicy(
+                            arguments.getMaxRetries() != null
+                                    ? arguments.getMaxRetries() : current.getMaxRetries(),
+                            arguments.getInitialDelayMillis() != null
+                                    ? arguments.getInitialDelayMillis() : current.getInitialDelayMillis(),
+                            arguments.getMaxDelayMillis() != null
+                                    ? arguments.getMaxDelayMillis() : current.getMaxDelayMillis(),
+                            arguments.getMultiplier() != null
+                                    ? arguments.getMultiplier() : current.getMultiplier(),
+                            arguments.getJitter() != null
+                                    ? arguments.getJitter() : current.getJitter()
+                    );
+                } catch (IllegalArgumentException e) {
+                    throw new ControlCommandException("Invalid retry policy: delays and maxRetries must not be"
+                            + " negative, maxDelayMillis must be at least initialDelayMillis, multiplier at least 1"
+                            + " and jitter between 0 and 1");
+                }
 
-            Map<String, Object> arguments = new HashMap<>();
-            arguments.put("enabled", bluetoothIsEnabled);
+                bluetoothSerialModule.setConnectRetryPolicy(policy);
 
-            BluetoothControlCommand command = new BluetoothControlCommand("isEnabled", arguments);
+                Map<String, Object> response = new HashMap<>();
+                response.put("maxRetries", policy.getMaxRetries());
+                response.put("initialDelayMillis", policy.getInitialDelayMillis());
+                response.put("maxDelayMillis", policy.getMaxDelayMillis());
+                response.put("multiplier", policy.getMultiplier());
+                response.put("jitter", policy.getJitter());
 
-            commandResponseQueue.add(command);
-        }
+                responder.respond("retryPolicy", response);
+            }
+        });
 
-    }
+        commandRegistry.register("cancelConnect", RemoteAddressArguments.class,
+                new ControlCommandHandler<RemoteAddressArguments>() {
+            @Override
+            public void handle(RemoteAddressArguments arguments, ControlResponder responder) throws ControlCommandException {
+                String remoteAddress = required(arguments.getRemoteAddress(), "remoteAddress");
 
+                boolean pending = bluetoothSerialModule.cancelConnectRetry(remoteAddress);
 
-    private LocalSocket establishConnection(int retries) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("remoteAddress", remoteAddress);
+                response.put("cancelled", pending);
 
-        if (retries < 0) {
+                responder.respond("connectCancelled", response);
+            }
+        });
 
-            return null;
-        }
+        commandRegistry.register("stats", NoArguments.class,
+                new ControlCommandHandler<NoArguments>() {
+            @Override
+            public void handle(NoArguments arguments, ControlResponder responder) {
+                Map<String, Object> stats = bluetoothSerialModule.getBridgeStats();
 
-        Log.d(TAG, "connecting to control socket");
+                Map<String, Object> sessionStats = new HashMap<>();
+                for (ControlSession session : sessions) {
+                    sessionStats.put(session.getControlSocketPath(), session.getStats());
+                }
+                stats.put("controlSessions", sessionStats);
 
-        LocalSocketAddress localSocketAddress = new LocalSocketAddress(this.controlSocketPath,
-                LocalSocketAddress.Namespace.FILESYSTEM);
+                responder.respond("stats", stats);
+            }
+        });
 
-        LocalSocket localSocket = new LocalSocket();
+        commandRegistry.register("trace", TraceArguments.class,
+                new ControlCommandHandler<TraceArguments>() {
+            @Override
+            public void handle(TraceArguments arguments, ControlResponder responder) throws ControlCommandException {
+                if (arguments.getLevel() != null) {
+                    int level = Tracer.levelOf(arguments.getLevel());
 
-        try {
-            localSocket.connect(localSocketAddress);
-            Log.d(TAG, "Established connection to control socket.");
-        } catch (IOException e) {
-            e.printStackTrace();
+                    if (level == -1) {
+                        throw new ControlCommandException("Unknown trace level: " + arguments.getLevel());
+                    }
 
-            Log.d(TAG, "Error establishing connection to control socket: " + e.getMessage() + " retries remaining: " + retries);
+                    Tracer.setLevel(level);
+                }
 
-            try {
-                // Retry after 10 seconds
-                Thread.sleep(10000);
+                Map<String, Object> response = new HashMap<>();
+                response.put("level", Tracer.levelName(Tracer.getLevel()));
+                response.put("events", Tracer.snapshot());
 
-                return establishConnection(retries -1);
-            } catch (InterruptedException e1) {
-                e1.printStackTrace();
+                responder.respond("trace", response);
             }
-
-        }
-
-        return localSocket;
+        });
     }
 
 
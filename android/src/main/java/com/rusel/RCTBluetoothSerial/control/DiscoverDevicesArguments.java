@@ -0,0 +1,33 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+public class DiscoverDevicesArguments {
+
+    /**
+     * Optional. If true, each device is sent in a 'deviceFound' response as soon as it is seen, and
+     * the scan ends with 'discoveryDone'. Otherwise all of them are sent in one 'discovered' response.
+     */
+    private Boolean stream;
+
+    /**
+     * Optional. If given, the devices found by a scan that finished within this many seconds may be
+     * sent instead of starting a new scan.
+     */
+    private Integer maxAgeSeconds;
+
+    /**
+     * Optional. If true, the 'discovered' devices are sorted by signal strength, strongest first.
+     */
+    private Boolean sortBySignalStrength;
+
+    public Boolean getStream() {
+        return stream;
+    }
+
+    public Integer getMaxAgeSeconds() {
+        return maxAgeSeconds;
+    }
+
+    public Boolean getSortBySignalStrength() {
+        return sortBySignalStrength;
+    }
+}
@@ -1,40 +1,99 @@
 package com.rusel.RCTBluetoothSerial.control;
 
-import android.bluetooth.BluetoothDevice;
-
 import com.rusel.RCTBluetoothSerial.DiscoveredBluetoothDevicesHandler;
+import com.rusel.RCTBluetoothSerial.DiscoveredDevice;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
 
 public class DiscoveredDevicesHandler implements DiscoveredBluetoothDevicesHandler {
 
-    private final BlockingQueue<BluetoothControlCommand> commandResponseBuffer;
+    /**
+     * Strongest signal first. Devices the scan gave no signal strength for come last.
+     */
+    private static final Comparator<DiscoveredDevice> BY_SIGNAL_STRENGTH = new Comparator<DiscoveredDevice>() {
+        @Override
+        public int compare(DiscoveredDevice first, DiscoveredDevice second) {
+            return second.getRssi() - first.getRssi();
+        }
+    };
+
+    private final ControlResponder responder;
+
+    /**
+     * Whether each device is sent as it is found, followed by 'discoveryDone' once the scan has
+     * finished, rather than all of them in one 'discovered' response at the end.
+     */
+    private final boolean streaming;
+
+    /**
+     * Whether the 'discovered' devices are sorted by signal strength rather than in the order found.
+     */
+    private final boolean sortBySignalStrength;
+
+    public DiscoveredDevicesHandler(ControlResponder responder) {
+        this(responder, false, false);
+    }
+
+    public DiscoveredDevicesHandler(ControlResponder responder, boolean streaming, boolean sortBySignalStrength) {
+        this.responder = responder;
+        this.streaming = streaming;
+        this.sortBySignalStrength = sortBySignalStrength;
+    }
+
+    @Override
+    public void onDeviceFound(DiscoveredDevice device) {
+        if (!streaming) {
+            return;
+        }
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("device", getDeviceProperties(device));
 
-    public DiscoveredDevicesHandler(BlockingQueue<BluetoothControlCommand> commandResponseBuffer) {
-        this.commandResponseBuffer = commandResponseBuffer;
+        responder.respond("deviceFound", properties);
     }
 
-    public void onDiscovered(List<BluetoothDevice> devices) {
+    @Override
+    public void onDiscovered(List<DiscoveredDevice> devices) {
+        if (streaming) {
+            Map<String, Object> properties = new HashMap<>();
+            properties.put("count", devices.size());
+
+            responder.respond("discoveryDone", properties);
+            return;
+        }
+
+        if (sortBySignalStrength) {
+            devices = new ArrayList<>(devices);
+            Collections.sort(devices, BY_SIGNAL_STRENGTH);
+        }
 
         Map<String, Object> properties = new HashMap<>();
 
         List<BluetoothDeviceProperties> deviceProperties = new ArrayList<>();
 
-        for (BluetoothDevice bluetoothDevice: devices) {
-            BluetoothDeviceProperties deviceProps = getDeviceProperties(bluetoothDevice);
+        for (DiscoveredDevice discoveredDevice : devices) {
+            BluetoothDeviceProperties deviceProps = getDeviceProperties(discoveredDevice);
             deviceProperties.add(deviceProps);
         }
 
         properties.put("devices", deviceProperties);
 
-        BluetoothControlCommand bluetoothControlCommand =
-                new BluetoothControlCommand("discovered", properties);
+        responder.respond("discovered", properties);
+    }
+
+    @Override
+    public void onDiscoveryFailed(String reason) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", true);
+        error.put("errorCode", "discoveryFailed");
+        error.put("description", reason);
 
-        commandResponseBuffer.add(bluetoothControlCommand);
+        responder.respond(getFinalResponseName(), error);
     }
 
     @Override
@@ -44,9 +103,7 @@ public class DiscoveredDevicesHandler implements DiscoveredBluetoothDevicesHandl
         error.put("errorCode", "bluetoothDisabled");
         error.put("description", "Bluetooth is not enabled");
 
-        BluetoothControlCommand errorCommand = new BluetoothControlCommand("discovered", error);
-
-        commandResponseBuffer.add(errorCommand);
+        responder.respond(getFinalResponseName(), error);
     }
 
     @Override
@@ -56,21 +113,31 @@ public class DiscoveredDevicesHandler implements DiscoveredBluetoothDevicesHandl
         error.put("errorCode", "notSupported");
         error.put("description", "Bluetooth is not supported on this device.");
 
-        BluetoothControlCommand errorCommand = new BluetoothControlCommand("discovered", error);
+        responder.respond(getFinalResponseName(), error);
+    }
 
-        commandResponseBuffer.add(errorCommand);
+    private String getFinalResponseName() {
+        return streaming ? "discoveryDone" : "discovered";
     }
 
-    public BluetoothDeviceProperties getDeviceProperties(BluetoothDevice device) {
+    public BluetoothDeviceProperties getDeviceProperties(DiscoveredDevice discoveredDevice) {
 
         // Unlikely, but since we're using pull-json-doubleline on the other end, a bluetooth device
         // name with new lines in it could make things crash
 
-        String deviceName = device.getName() == null ? "" : device.getName();
+        String deviceName = discoveredDevice.getDevice().getName() == null ? "" : discoveredDevice.getDevice().getName();
 
         String name = deviceName.replace("\n", "");
 
-        return new BluetoothDeviceProperties(device.getAddress(), name);
+        Integer rssi = discoveredDevice.getRssi() != DiscoveredDevice.UNKNOWN_RSSI
+                ? Integer.valueOf(discoveredDevice.getRssi())
+                : null;
+
+        Integer deviceClass = discoveredDevice.getDeviceClass() != DiscoveredDevice.UNKNOWN_DEVICE_CLASS
+                ? Integer.valueOf(discoveredDevice.getDeviceClass())
+                : null;
+
+        return new BluetoothDeviceProperties(discoveredDevice.getAddress(), name, rssi, deviceClass);
     }
 
 
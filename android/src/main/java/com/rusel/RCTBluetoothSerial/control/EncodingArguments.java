@@ -0,0 +1,10 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+public class EncodingArguments {
+
+    private String encoding;
+
+    public String getEncoding() {
+        return encoding;
+    }
+}
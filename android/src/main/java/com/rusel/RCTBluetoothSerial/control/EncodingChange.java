@@ -0,0 +1,28 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tells the other side that everything after this message is in the given encoding. The writer
+ * sends it in the encoding in use until then, and switches once it has been sent.
+ */
+class EncodingChange extends BluetoothControlCommand {
+
+    private final ControlCodec codec;
+
+    EncodingChange(ControlCodec codec, Object requestId) {
+        super("encoding", argumentsFor(codec), requestId);
+        this.codec = codec;
+    }
+
+    ControlCodec getCodec() {
+        return codec;
+    }
+
+    private static Map<String, Object> argumentsFor(ControlCodec codec) {
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("encoding", codec.getName());
+        return arguments;
+    }
+}
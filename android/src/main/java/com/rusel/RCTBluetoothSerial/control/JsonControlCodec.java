@@ -0,0 +1,79 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * JSON objects, each followed by a blank line. This is what the other side gets unless it asks for
+ * something else.
+ */
+public class JsonControlCodec implements ControlCodec {
+
+    public static final String NAME = "json";
+
+    // For convenience on the other side of the socket using pull-json-doubleline
+    private static final SerializableString DOUBLE_NEW_LINE = new SerializedString("\n\n");
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Leaves flushing to the message writer, so a message and its delimiter go out together.
+     */
+    private final ObjectWriter messageWriter;
+
+    public JsonControlCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.messageWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public ControlMessageReader createReader(InputStream inputStream) throws IOException {
+        // One parser for the whole connection, as it reads ahead into its buffer and a new one
+        // would lose whatever of the next command had been read already
+        final JsonParser parser = objectMapper.getFactory().createParser(inputStream);
+
+        return new ControlMessageReader() {
+            @Override
+            public JsonParser next() {
+                return parser;
+            }
+        };
+    }
+
+    @Override
+    public ControlMessageWriter createWriter(OutputStream outputStream) throws IOException {
+        // The generator's own buffer collects each message and its delimiter until flushed
+        final JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        // We write our own delimiter after each message rather than the default space before the next
+        generator.setRootValueSeparator(null);
+
+        return new ControlMessageWriter() {
+            @Override
+            public void write(BluetoothControlCommand message) throws IOException {
+                messageWriter.writeValue(generator, message);
+                generator.writeRaw(DOUBLE_NEW_LINE);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                generator.flush();
+            }
+        };
+    }
+}
@@ -0,0 +1,52 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import java.util.Map;
+
+/**
+ * A change in the state of a connection to a remote device. Only the latest state of each connection
+ * is worth delivering, so the queue replaces one still waiting to be written with the next. With
+ * multiplexing a device has a connection per channel, so each channel's events are kept apart.
+ */
+class LifecycleEvent extends BluetoothControlCommand {
+
+    static final String CONNECTED = "connected";
+    static final String CONNECTION_FAILURE = "connectionFailure";
+    static final String DISCONNECTED = "disconnected";
+
+    private final String remoteAddress;
+    private final int channelId;
+
+    LifecycleEvent(String state, String remoteAddress, int channelId, Map<String, Object> arguments) {
+        super(state, arguments);
+        this.remoteAddress = remoteAddress;
+        this.channelId = channelId;
+    }
+
+    String getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    int getChannelId() {
+        return channelId;
+    }
+
+    /**
+     * Events with the same key are about the same connection.
+     */
+    String getConnectionKey() {
+        return remoteAddress + "#" + channelId;
+    }
+
+    boolean isFailure() {
+        return CONNECTION_FAILURE.equals(getCommand());
+    }
+
+    /**
+     * Whether this event makes the given one, about the same connection, out of date. A new state
+     * always does. A failure only replaces a failure or a disconnect: while connected, a failure is
+     * about another attempt (one refused as a duplicate, say) and doesn't end the connection.
+     */
+    boolean supersedes(LifecycleEvent pending) {
+        return !isFailure() || !CONNECTED.equals(pending.getCommand());
+    }
+}
@@ -2,16 +2,15 @@ package com.rusel.RCTBluetoothSerial.control;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
 
 public class MakeDeviceDiscoverableHandler {
 
-    private final BlockingQueue<BluetoothControlCommand> commandResponseQueue;
+    private final ControlResponder responder;
 
     private static final String DISCOVERABLE = "discoverable";
 
-    public MakeDeviceDiscoverableHandler(BlockingQueue<BluetoothControlCommand> commandResponseQueue) {
-        this.commandResponseQueue = commandResponseQueue;
+    public MakeDeviceDiscoverableHandler(ControlResponder responder) {
+        this.responder = responder;
     }
 
     public void handleSuccess(long untilEstimate) {
@@ -19,8 +18,7 @@ public class MakeDeviceDiscoverableHandler {
         arguments.put("error", false);
         arguments.put("discoverableUntil", untilEstimate);
 
-        BluetoothControlCommand command = new BluetoothControlCommand(DISCOVERABLE, arguments);
-        commandResponseQueue.add(command);
+        responder.respond(DISCOVERABLE, arguments);
     }
 
     /**
@@ -34,8 +32,7 @@ public class MakeDeviceDiscoverableHandler {
         error.put("errorCode", "appNotVisible");
         error.put("description", "Bluetooth is not enabled");
 
-        BluetoothControlCommand command = new BluetoothControlCommand(DISCOVERABLE, error);
-        commandResponseQueue.add(command);
+        responder.respond(DISCOVERABLE, error);
     }
 
     public void handleUserDidNotAllow() {
@@ -45,8 +42,7 @@ public class MakeDeviceDiscoverableHandler {
         error.put("errorCode", "userDidNotAllow");
         error.put("description", "Bluetooth is not enabled");
 
-        BluetoothControlCommand command = new BluetoothControlCommand(DISCOVERABLE, error);
-        commandResponseQueue.add(command);
+        responder.respond(DISCOVERABLE, error);
     }
 
     public void handleAlreadyInProgress() {
@@ -55,8 +51,7 @@ public class MakeDeviceDiscoverableHandler {
         error.put("errorCode", "alreadyAttempting");
         error.put("description", "Already attempting to make device discoverable");
 
-        BluetoothControlCommand command = new BluetoothControlCommand(DISCOVERABLE, error);
-        commandResponseQueue.add(command);
+        responder.respond(DISCOVERABLE, error);
     }
 
 
@@ -0,0 +1,13 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+public class MakeDiscoverableArguments {
+
+    /**
+     * In seconds.
+     */
+    private Integer forTime;
+
+    public Integer getForTime() {
+        return forTime;
+    }
+}
@@ -0,0 +1,7 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+/**
+ * The arguments type of commands that take none.
+ */
+public class NoArguments {
+}
@@ -0,0 +1,13 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+/**
+ * Arguments of the commands that act on a single remote device.
+ */
+public class RemoteAddressArguments {
+
+    private String remoteAddress;
+
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+}
@@ -0,0 +1,33 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+/**
+ * Each setting is optional. Those left out keep their current value.
+ */
+public class RetryPolicyArguments {
+
+    private Integer maxRetries;
+    private Long initialDelayMillis;
+    private Long maxDelayMillis;
+    private Double multiplier;
+    private Double jitter;
+
+    public Integer getMaxRetries() {
+        return maxRetries;
+    }
+
+    public Long getInitialDelayMillis() {
+        return initialDelayMillis;
+    }
+
+    public Long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    public Double getMultiplier() {
+        return multiplier;
+    }
+
+    public Double getJitter() {
+        return jitter;
+    }
+}
@@ -0,0 +1,15 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import java.util.List;
+
+public class SubscribeArguments {
+
+    /**
+     * Optional. The names of the events to be sent, such as 'connected'. All of them if not given.
+     */
+    private List<String> events;
+
+    public List<String> getEvents() {
+        return events;
+    }
+}
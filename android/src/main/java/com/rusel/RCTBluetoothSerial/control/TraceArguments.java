@@ -0,0 +1,13 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+public class TraceArguments {
+
+    /**
+     * Optional. If given, the lowest level traced from now on: verbose, debug, info, warn or error.
+     */
+    private String level;
+
+    public String getLevel() {
+        return level;
+    }
+}
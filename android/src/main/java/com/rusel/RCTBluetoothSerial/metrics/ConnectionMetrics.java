@@ -0,0 +1,68 @@
+package com.rusel.RCTBluetoothSerial.metrics;
+
+/**
+ * Traffic counters for a single bridged connection. Updated by the pumps without locking, and read
+ * at any time with snapshot(). For a multiplexed link, the local side is the total over its channels.
+ */
+public class ConnectionMetrics {
+
+    private final String remoteAddress;
+    private final boolean incoming;
+    private final long connectedAtMillis;
+
+    // Local socket -> bluetooth
+    private final StreamMetrics localReads = new StreamMetrics();
+    private final StreamMetrics bluetoothWrites = new StreamMetrics();
+
+    // Bluetooth -> local socket
+    private final StreamMetrics bluetoothReads = new StreamMetrics();
+    private final StreamMetrics localWrites = new StreamMetrics();
+
+    public ConnectionMetrics(String remoteAddress, boolean incoming) {
+        this.remoteAddress = remoteAddress;
+        this.incoming = incoming;
+        this.connectedAtMillis = System.currentTimeMillis();
+    }
+
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    public StreamMetrics getLocalReads() {
+        return localReads;
+    }
+
+    public StreamMetrics getBluetoothWrites() {
+        return bluetoothWrites;
+    }
+
+    public StreamMetrics getBluetoothReads() {
+        return bluetoothReads;
+    }
+
+    public StreamMetrics getLocalWrites() {
+        return localWrites;
+    }
+
+    public ConnectionStats snapshot() {
+        return new ConnectionStats(
+                remoteAddress,
+                incoming,
+                System.currentTimeMillis() - connectedAtMillis,
+                bluetoothWrites.getBytes(),
+                bluetoothReads.getBytes(),
+                localReads.getCalls(),
+                bluetoothWrites.getCalls(),
+                bluetoothReads.getCalls(),
+                localWrites.getCalls(),
+                localReads.getBlockedNanos() / 1000000,
+                bluetoothWrites.getBlockedNanos() / 1000000,
+                bluetoothReads.getBlockedNanos() / 1000000,
+                localWrites.getBlockedNanos() / 1000000,
+                localReads.getFailures(),
+                bluetoothWrites.getFailures(),
+                bluetoothReads.getFailures(),
+                localWrites.getFailures()
+        );
+    }
+}
@@ -0,0 +1,133 @@
+package com.rusel.RCTBluetoothSerial.metrics;
+
+/**
+ * A point in time copy of a connection's metrics, as reported over the control socket.
+ */
+public class ConnectionStats {
+
+    private final String remoteAddress;
+    private final boolean incoming;
+    private final long ageMillis;
+
+    private final long bytesToBluetooth;
+    private final long bytesFromBluetooth;
+
+    private final long localReads;
+    private final long bluetoothWrites;
+    private final long bluetoothReads;
+    private final long localWrites;
+
+    private final long localReadBlockedMillis;
+    private final long bluetoothWriteBlockedMillis;
+    private final long bluetoothReadBlockedMillis;
+    private final long localWriteBlockedMillis;
+
+    private final long localReadFailures;
+    private final long bluetoothWriteFailures;
+    private final long bluetoothReadFailures;
+    private final long localWriteFailures;
+
+    public ConnectionStats(String remoteAddress,
+                           boolean incoming,
+                           long ageMillis,
+                           long bytesToBluetooth,
+                           long bytesFromBluetooth,
+                           long localReads,
+                           long bluetoothWrites,
+                           long bluetoothReads,
+                           long localWrites,
+                           long localReadBlockedMillis,
+                           long bluetoothWriteBlockedMillis,
+                           long bluetoothReadBlockedMillis,
+                           long localWriteBlockedMillis,
+                           long localReadFailures,
+                           long bluetoothWriteFailures,
+                           long bluetoothReadFailures,
+                           long localWriteFailures) {
+        this.remoteAddress = remoteAddress;
+        this.incoming = incoming;
+        this.ageMillis = ageMillis;
+        this.bytesToBluetooth = bytesToBluetooth;
+        this.bytesFromBluetooth = bytesFromBluetooth;
+        this.localReads = localReads;
+        this.bluetoothWrites = bluetoothWrites;
+        this.bluetoothReads = bluetoothReads;
+        this.localWrites = localWrites;
+        this.localReadBlockedMillis = localReadBlockedMillis;
+        this.bluetoothWriteBlockedMillis = bluetoothWriteBlockedMillis;
+        this.bluetoothReadBlockedMillis = bluetoothReadBlockedMillis;
+        this.localWriteBlockedMillis = localWriteBlockedMillis;
+        this.localReadFailures = localReadFailures;
+        this.bluetoothWriteFailures = bluetoothWriteFailures;
+        this.bluetoothReadFailures = bluetoothReadFailures;
+        this.localWriteFailures = localWriteFailures;
+    }
+
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    public boolean isIncoming() {
+        return incoming;
+    }
+
+    public long getAgeMillis() {
+        return ageMillis;
+    }
+
+    public long getBytesToBluetooth() {
+        return bytesToBluetooth;
+    }
+
+    public long getBytesFromBluetooth() {
+        return bytesFromBluetooth;
+    }
+
+    public long getLocalReads() {
+        return localReads;
+    }
+
+    public long getBluetoothWrites() {
+        return bluetoothWrites;
+    }
+
+    public long getBluetoothReads() {
+        return bluetoothReads;
+    }
+
+    public long getLocalWrites() {
+        return localWrites;
+    }
+
+    public long getLocalReadBlockedMillis() {
+        return localReadBlockedMillis;
+    }
+
+    public long getBluetoothWriteBlockedMillis() {
+        return bluetoothWriteBlockedMillis;
+    }
+
+    public long getBluetoothReadBlockedMillis() {
+        return bluetoothReadBlockedMillis;
+    }
+
+    public long getLocalWriteBlockedMillis() {
+        return localWriteBlockedMillis;
+    }
+
+    public long getLocalReadFailures() {
+        return localReadFailures;
+    }
+
+    public long getBluetoothWriteFailures() {
+        return bluetoothWriteFailures;
+    }
+
+    public long getBluetoothReadFailures() {
+        return bluetoothReadFailures;
+    }
+
+    public long getLocalWriteFailures() {
+        return localWriteFailures;
+    }
+}
@@ -0,0 +1,41 @@
+package com.rusel.RCTBluetoothSerial.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class MeteredInputStream extends FilterInputStream {
+
+    private final StreamMetrics metrics;
+
+    public MeteredInputStream(InputStream inputStream, StreamMetrics metrics) {
+        super(inputStream);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = System.nanoTime();
+        try {
+            int value = in.read();
+            metrics.record(value == -1 ? 0 : 1, System.nanoTime() - start);
+            return value;
+        } catch (IOException e) {
+            metrics.recordFailure(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        long start = System.nanoTime();
+        try {
+            int read = in.read(bytes, offset, length);
+            metrics.record(read, System.nanoTime() - start);
+            return read;
+        } catch (IOException e) {
+            metrics.recordFailure(System.nanoTime() - start);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.rusel.RCTBluetoothSerial.metrics;
+
+import com.rusel.RCTBluetoothSerial.transport.LocalEndpoint;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Meters the local side of a connection whose streams are read and written by someone else, such as
+ * a multiplexed channel.
+ */
+public class MeteredLocalEndpoint implements LocalEndpoint {
+
+    private final LocalEndpoint localEndpoint;
+    private final ConnectionMetrics metrics;
+
+    public MeteredLocalEndpoint(LocalEndpoint localEndpoint, ConnectionMetrics metrics) {
+        this.localEndpoint = localEndpoint;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return new MeteredInputStream(localEndpoint.getInputStream(), metrics.getLocalReads());
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return new MeteredOutputStream(localEndpoint.getOutputStream(), metrics.getLocalWrites());
+    }
+
+    @Override
+    public void close() throws IOException {
+        localEndpoint.close();
+    }
+}
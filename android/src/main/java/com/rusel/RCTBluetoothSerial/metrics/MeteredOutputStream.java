@@ -0,0 +1,39 @@
+package com.rusel.RCTBluetoothSerial.metrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class MeteredOutputStream extends FilterOutputStream {
+
+    private final StreamMetrics metrics;
+
+    public MeteredOutputStream(OutputStream outputStream, StreamMetrics metrics) {
+        super(outputStream);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        long start = System.nanoTime();
+        try {
+            out.write(b);
+            metrics.record(1, System.nanoTime() - start);
+        } catch (IOException e) {
+            metrics.recordFailure(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        long start = System.nanoTime();
+        try {
+            out.write(bytes, offset, length);
+            metrics.record(length, System.nanoTime() - start);
+        } catch (IOException e) {
+            metrics.recordFailure(System.nanoTime() - start);
+            throw e;
+        }
+    }
+}
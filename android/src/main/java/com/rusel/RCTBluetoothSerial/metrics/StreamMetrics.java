@@ -0,0 +1,51 @@
+package com.rusel.RCTBluetoothSerial.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for one side of one direction of a connection, e.g. the reads from bluetooth.
+ */
+public class StreamMetrics {
+
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong blockedNanos = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    void record(long byteCount, long nanos) {
+        calls.incrementAndGet();
+        blockedNanos.addAndGet(nanos);
+
+        if (byteCount > 0) {
+            bytes.addAndGet(byteCount);
+        }
+    }
+
+    /**
+     * A call that threw still counts, as does the time it spent blocked before failing.
+     */
+    void recordFailure(long nanos) {
+        calls.incrementAndGet();
+        blockedNanos.addAndGet(nanos);
+        failures.incrementAndGet();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * @return the total time spent inside read / write calls, i.e. waiting on the other side.
+     */
+    public long getBlockedNanos() {
+        return blockedNanos.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+}
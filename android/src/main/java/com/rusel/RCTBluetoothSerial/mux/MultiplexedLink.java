@@ -0,0 +1,411 @@
+package com.rusel.RCTBluetoothSerial.mux;
+
+import com.rusel.RCTBluetoothSerial.pump.MemoryBudget;
+import com.rusel.RCTBluetoothSerial.pump.PumpExecutor;
+import com.rusel.RCTBluetoothSerial.trace.TraceEvent;
+import com.rusel.RCTBluetoothSerial.trace.Tracer;
+import com.rusel.RCTBluetoothSerial.transport.LocalEndpoint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Carries many logical channels over a single bluetooth link. Each channel is attached to its own
+ * local endpoint, so every channel looks like an ordinary bridged connection to the local process.
+ *
+ * Everything sent over the link is a frame with a 9 byte header: the frame type (1 byte), the channel
+ * id (4 bytes) and a value (4 bytes), all big endian.
+ *
+ * <ul>
+ * <li>OPEN: opens a channel. The value is the opener's receive window in bytes.</li>
+ * <li>DATA: the value is the length of the payload that follows the header.</li>
+ * <li>CREDIT: allows the other side to send the value's worth of further bytes on the channel.</li>
+ * <li>CLOSE: the sender has stopped using the channel.</li>
+ * </ul>
+ *
+ * A side never sends more DATA on a channel than the other side has granted it credit for: the
+ * receive window when the channel is opened, plus every CREDIT since. Since the receiver has room to
+ * buffer a whole window per channel, reading a frame off the link never has to wait for a slow local
+ * endpoint, so a busy or stalled channel cannot hold up the others. Frames are written under a fair
+ * lock so channels with data to send take turns on the link.
+ *
+ * Each channel's receive buffer is reserved from a memory budget shared by all links, and a channel
+ * that doesn't fit is refused. The local endpoint of a channel opened by the other side is connected
+ * on a pump thread rather than the link's reader; until it is, the channel's data waits in its buffer.
+ *
+ * The side that dialled the link numbers its channels with odd ids, the side that accepted it with
+ * even ids, so both sides can open channels without clashing. An OPEN with one of the receiver's own
+ * ids is a protocol error, as is DATA beyond the granted credit, a negative window or credit, or credit
+ * that would take the total granted past 2^31 - 1 bytes, and closes the link.
+ */
+public class MultiplexedLink {
+
+    public interface Listener {
+
+        /**
+         * The other side has opened a channel. Called on a pump thread, so it may block.
+         *
+         * @return the local endpoint to attach the channel to, or null to refuse the channel.
+         */
+        LocalEndpoint onChannelRequested(MultiplexedLink link, int channelId);
+
+        void onChannelOpened(MultiplexedLink link, int channelId, boolean remotelyOpened);
+
+        void onChannelClosed(MultiplexedLink link, int channelId);
+
+        /**
+         * The link has gone away and all its channels have been closed.
+         */
+        void onLinkClosed(MultiplexedLink link, IOException failure);
+    }
+
+    static final byte OPEN = 1;
+    static final byte DATA = 2;
+    static final byte CREDIT = 3;
+    static final byte CLOSE = 4;
+
+    private static final int HEADER_SIZE = 9;
+
+    private final String remoteAddress;
+    private final Closeable bluetoothLink;
+    private final DataInputStream inputStream;
+    private final OutputStream outputStream;
+    private final int receiveWindow;
+    private final int maxFrameSize;
+    private final boolean dialled;
+    private final MemoryBudget bufferBudget;
+    private final PumpExecutor pumpExecutor;
+    private final Listener listener;
+
+    private final Map<Integer, MuxChannel> channels = new ConcurrentHashMap<>();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private final ReentrantLock writeLock = new ReentrantLock(true);
+    private final byte[] writeHeader = new byte[HEADER_SIZE];
+
+    private int nextChannelId;
+
+    /**
+     * @param dialled whether this side made the connection, which decides how channels are numbered.
+     * @param bufferBudget what each channel's receive window is reserved from.
+     */
+    public MultiplexedLink(String remoteAddress,
+                           Closeable bluetoothLink,
+                           InputStream linkInputStream,
+                           OutputStream linkOutputStream,
+                           boolean dialled,
+                           int receiveWindow,
+                           int maxFrameSize,
+                           MemoryBudget bufferBudget,
+                           PumpExecutor pumpExecutor,
+                           Listener listener) {
+        this.remoteAddress = remoteAddress;
+        this.bluetoothLink = bluetoothLink;
+        this.inputStream = new DataInputStream(new BufferedInputStream(linkInputStream, HEADER_SIZE + maxFrameSize));
+        this.outputStream = new BufferedOutputStream(linkOutputStream, HEADER_SIZE + maxFrameSize);
+        this.receiveWindow = receiveWindow;
+        this.maxFrameSize = maxFrameSize;
+        this.dialled = dialled;
+        this.bufferBudget = bufferBudget;
+        this.pumpExecutor = pumpExecutor;
+        this.listener = listener;
+        this.nextChannelId = dialled ? 1 : 2;
+    }
+
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    public int getChannelCount() {
+        return channels.size();
+    }
+
+    int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    /**
+     * Starts reading frames from the link.
+     *
+     * @throws RejectedExecutionException if the pump executor has no room for the reader.
+     */
+    public void start() {
+        pumpExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                readFrames();
+            }
+        });
+    }
+
+    /**
+     * Opens a new channel to the other side, attached to the given local endpoint.
+     *
+     * @return the id of the channel.
+     * @throws IOException if the channel could not be opened, e.g. because the buffer budget is used up.
+     * @throws RejectedExecutionException if the pump executor has no room for the channel, in which
+     * case it has been reported as opened and closed again.
+     */
+    public int openChannel(LocalEndpoint localEndpoint) throws IOException {
+        if (!bufferBudget.tryReserve(receiveWindow)) {
+            throw new IOException("Too many open channels.");
+        }
+
+        int channelId;
+
+        synchronized (this) {
+            channelId = nextChannelId;
+            nextChannelId += 2;
+        }
+
+        // The other side grants us credit with its first CREDIT frame once it has set the channel up
+        MuxChannel channel = new MuxChannel(this, channelId, localEndpoint, receiveWindow, 0);
+        channels.put(channelId, channel);
+
+        try {
+            writeFrame(OPEN, channelId, receiveWindow, null, 0, 0);
+        } catch (IOException e) {
+            channels.remove(channelId);
+            channel.close();
+            bufferBudget.release(receiveWindow);
+            throw e;
+        }
+
+        // Reported before the pumps start, so that it always comes before the channel is reported closed
+        listener.onChannelOpened(this, channelId, false);
+        startChannel(channel);
+        return channelId;
+    }
+
+    /**
+     * Closes every channel and the bluetooth link.
+     */
+    public void close() {
+        shutdown(null);
+    }
+
+    void sendData(int channelId, byte[] bytes, int offset, int length) throws IOException {
+        writeFrame(DATA, channelId, length, bytes, offset, length);
+    }
+
+    void sendCredit(int channelId, int credit) throws IOException {
+        writeFrame(CREDIT, channelId, credit, null, 0, 0);
+    }
+
+    /**
+     * Forgets the channel, closes its local endpoint and releases its buffer. Does nothing if the
+     * channel is already closed. A channel whose local endpoint was never connected isn't reported.
+     *
+     * @param notifyRemote whether to tell the other side with a CLOSE frame.
+     */
+    void closeChannel(int channelId, boolean notifyRemote) {
+        MuxChannel channel = channels.remove(channelId);
+
+        if (channel == null) {
+            return;
+        }
+
+        channel.close();
+        bufferBudget.release(receiveWindow);
+
+        if (notifyRemote && !closed.get()) {
+            try {
+                writeFrame(CLOSE, channelId, 0, null, 0, 0);
+            } catch (IOException e) {
+                shutdown(e);
+            }
+        }
+
+        if (channel.isAttached()) {
+            listener.onChannelClosed(this, channelId);
+        }
+    }
+
+    private void writeFrame(byte type, int channelId, int value, byte[] payload, int offset, int length)
+            throws IOException {
+        writeLock.lock();
+
+        try {
+            writeHeader[0] = type;
+            writeInt(writeHeader, 1, channelId);
+            writeInt(writeHeader, 5, value);
+
+            outputStream.write(writeHeader, 0, HEADER_SIZE);
+
+            if (length > 0) {
+                outputStream.write(payload, offset, length);
+            }
+
+            outputStream.flush();
+        } catch (IOException e) {
+            shutdown(e);
+            throw e;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void readFrames() {
+        byte[] payload = new byte[maxFrameSize];
+        IOException failure = null;
+
+        try {
+            while (true) {
+                byte type = inputStream.readByte();
+                int channelId = inputStream.readInt();
+                int value = inputStream.readInt();
+
+                switch (type) {
+                    case OPEN:
+                        onOpen(channelId, value);
+                        break;
+
+                    case DATA:
+                        if (value < 0 || value > maxFrameSize) {
+                            throw new IOException("Frame too large: " + value);
+                        }
+
+                        inputStream.readFully(payload, 0, value);
+
+                        MuxChannel receiver = channels.get(channelId);
+                        if (receiver != null) {
+                            receiver.deliver(payload, 0, value);
+                        }
+                        break;
+
+                    case CREDIT:
+                        MuxChannel sender = channels.get(channelId);
+                        if (sender != null) {
+                            sender.addSendCredit(value);
+                        }
+                        break;
+
+                    case CLOSE:
+                        MuxChannel closing = channels.get(channelId);
+                        if (closing != null) {
+                            // Deliver what has already arrived before closing the local endpoint
+                            closing.finishReceiving();
+                        }
+                        break;
+
+                    default:
+                        throw new IOException("Unknown frame type: " + type);
+                }
+            }
+        } catch (EOFException e) {
+            // The link was closed
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            shutdown(failure);
+        }
+    }
+
+    private void onOpen(int channelId, int remoteWindow) throws IOException {
+        if (remoteWindow < 0) {
+            throw new IOException("Channel " + channelId + " opened with invalid window: " + remoteWindow);
+        }
+
+        if ((channelId % 2 != 0) == dialled) {
+            throw new IOException("Channel opened with one of our ids: " + channelId);
+        }
+
+        if (channels.containsKey(channelId)) {
+            throw new IOException("Channel already open: " + channelId);
+        }
+
+        if (!bufferBudget.tryReserve(receiveWindow)) {
+            Tracer.trace(Tracer.WARN, TraceEvent.CHANNEL_OPEN_FAILED, remoteAddress, "Too many open channels.", channelId);
+            writeFrame(CLOSE, channelId, 0, null, 0, 0);
+            return;
+        }
+
+        final MuxChannel channel = new MuxChannel(this, channelId, null, receiveWindow, remoteWindow);
+        channels.put(channelId, channel);
+
+        // The other side may send straight away, its data waits in the channel's buffer until it is attached
+        writeFrame(CREDIT, channelId, receiveWindow, null, 0, 0);
+
+        try {
+            pumpExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    attachChannel(channel);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            closeChannel(channelId, true);
+        }
+    }
+
+    private void attachChannel(MuxChannel channel) {
+        int channelId = channel.getChannelId();
+        LocalEndpoint localEndpoint = listener.onChannelRequested(this, channelId);
+
+        if (localEndpoint == null) {
+            closeChannel(channelId, true);
+            return;
+        }
+
+        if (!channel.attach(localEndpoint)) {
+            // Closed while we were connecting
+            return;
+        }
+
+        listener.onChannelOpened(this, channelId, true);
+
+        try {
+            startChannel(channel);
+        } catch (RejectedExecutionException e) {
+            // Already closed again, and the other side told
+        }
+    }
+
+    private void startChannel(MuxChannel channel) {
+        try {
+            pumpExecutor.execute(channel.createTasks());
+        } catch (RejectedExecutionException e) {
+            closeChannel(channel.getChannelId(), true);
+            throw e;
+        }
+    }
+
+    private void shutdown(IOException failure) {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            bluetoothLink.close();
+        } catch (IOException e) {
+            Tracer.trace(Tracer.WARN, TraceEvent.CLOSE_FAILED, remoteAddress, e.getMessage());
+        }
+
+        List<Integer> openChannels = new ArrayList<>(channels.keySet());
+        for (Integer channelId : openChannels) {
+            closeChannel(channelId, false);
+        }
+
+        listener.onLinkClosed(this, failure);
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+}
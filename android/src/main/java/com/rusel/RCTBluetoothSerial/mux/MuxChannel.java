@@ -0,0 +1,268 @@
+package com.rusel.RCTBluetoothSerial.mux;
+
+import com.rusel.RCTBluetoothSerial.pump.ByteRingBuffer;
+import com.rusel.RCTBluetoothSerial.trace.TraceEvent;
+import com.rusel.RCTBluetoothSerial.trace.Tracer;
+import com.rusel.RCTBluetoothSerial.transport.LocalEndpoint;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One logical channel of a MultiplexedLink. Data read from the local endpoint is sent as DATA frames
+ * as far as the send credit allows. Data received from the link is buffered (up to the receive window)
+ * and written to the local endpoint by a separate task, which grants credit back as it goes.
+ *
+ * A channel opened by the other side is created without a local endpoint, which is attached once it
+ * has been connected. Data received in the meantime waits in the buffer.
+ */
+class MuxChannel {
+
+    private final MultiplexedLink link;
+    private final int channelId;
+    private final int receiveWindow;
+
+    private final ByteRingBuffer received;
+
+    /**
+     * Bytes the other side may still send us. Together with what is buffered this never exceeds the window.
+     */
+    private int receiveCredit;
+
+    private int sendCredit;
+
+    /**
+     * Taken from the send credit for the read in progress from the local endpoint, and given back if
+     * less is read.
+     */
+    private int sendCreditInUse = 0;
+    private boolean closed = false;
+
+    /**
+     * Set before the channel's tasks are started, which is what makes it visible to them.
+     */
+    private LocalEndpoint localEndpoint;
+
+    /**
+     * @param localEndpoint the endpoint to attach the channel to, or null to attach one later.
+     */
+    MuxChannel(MultiplexedLink link, int channelId, LocalEndpoint localEndpoint, int receiveWindow, int sendCredit) {
+        this.link = link;
+        this.channelId = channelId;
+        this.localEndpoint = localEndpoint;
+        this.receiveWindow = receiveWindow;
+        this.receiveCredit = receiveWindow;
+        this.sendCredit = sendCredit;
+
+        // The credit scheme guarantees there is always room, so the watermarks never pause the link reader
+        this.received = new ByteRingBuffer(receiveWindow, receiveWindow, receiveWindow - 1, new AtomicLong());
+    }
+
+    int getChannelId() {
+        return channelId;
+    }
+
+    synchronized boolean isAttached() {
+        return localEndpoint != null;
+    }
+
+    /**
+     * @return false if the channel has been closed in the meantime, in which case the endpoint is closed too.
+     */
+    boolean attach(LocalEndpoint localEndpoint) {
+        synchronized (this) {
+            if (!closed) {
+                this.localEndpoint = localEndpoint;
+                return true;
+            }
+        }
+
+        closeEndpoint(localEndpoint);
+        return false;
+    }
+
+    Runnable[] createTasks() {
+        return new Runnable[] {
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        sendFromLocalEndpoint();
+                    }
+                },
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        deliverToLocalEndpoint();
+                    }
+                }
+        };
+    }
+
+    /**
+     * Called by the link's reader with the payload of a DATA frame. Never blocks. Data for a channel
+     * that has been closed on our side is dropped.
+     *
+     * @throws IOException if the other side has sent more than its credit.
+     */
+    void deliver(byte[] bytes, int offset, int length) throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            if (length > receiveCredit) {
+                throw new IOException("Channel " + channelId + " sent " + length + " bytes with only "
+                        + receiveCredit + " credit.");
+            }
+
+            receiveCredit -= length;
+        }
+
+        try {
+            received.getOutputStream().write(bytes, offset, length);
+        } catch (IOException e) {
+            // Closed since the check above, or the other side sent DATA after its CLOSE
+        }
+    }
+
+    /**
+     * Called by the link's reader when the other side has closed the channel.
+     */
+    void finishReceiving() {
+        received.closeWrite();
+    }
+
+    /**
+     * Called by the link's reader with the value of a CREDIT frame.
+     *
+     * @throws IOException if the credit is negative, or would take the total granted past what an int
+     * can hold.
+     */
+    synchronized void addSendCredit(int credit) throws IOException {
+        if (credit < 0 || credit > Integer.MAX_VALUE - sendCredit - sendCreditInUse) {
+            throw new IOException("Channel " + channelId + " granted invalid credit: " + credit);
+        }
+
+        sendCredit += credit;
+        notifyAll();
+    }
+
+    private synchronized void returnSendCredit(int taken, int used) {
+        sendCreditInUse = 0;
+        sendCredit += taken - used;
+    }
+
+    void close() {
+        LocalEndpoint attached;
+
+        synchronized (this) {
+            closed = true;
+            attached = localEndpoint;
+            notifyAll();
+        }
+
+        received.abort();
+
+        if (attached != null) {
+            closeEndpoint(attached);
+        }
+    }
+
+    private void closeEndpoint(LocalEndpoint endpoint) {
+        try {
+            endpoint.close();
+        } catch (IOException e) {
+            Tracer.trace(Tracer.WARN, TraceEvent.CLOSE_FAILED, link.getRemoteAddress(), e.getMessage(), channelId);
+        }
+    }
+
+    private synchronized int takeSendCredit(int wanted) throws IOException {
+        try {
+            while (sendCredit == 0 && !closed) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+
+        if (closed) {
+            throw new IOException("Channel closed.");
+        }
+
+        int taken = Math.min(wanted, sendCredit);
+        sendCredit -= taken;
+        sendCreditInUse = taken;
+        return taken;
+    }
+
+    private void sendFromLocalEndpoint() {
+        byte[] buffer = new byte[link.getMaxFrameSize()];
+
+        try {
+            InputStream inputStream = localEndpoint.getInputStream();
+
+            while (true) {
+                int allowed = takeSendCredit(buffer.length);
+                int read = inputStream.read(buffer, 0, allowed);
+
+                if (read == -1) {
+                    break;
+                }
+
+                returnSendCredit(allowed, read);
+
+                link.sendData(channelId, buffer, 0, read);
+            }
+        } catch (IOException e) {
+            // The channel or the link has been closed
+        } finally {
+            link.closeChannel(channelId, true);
+        }
+    }
+
+    private void deliverToLocalEndpoint() {
+        byte[] buffer = new byte[link.getMaxFrameSize()];
+        int creditThreshold = Math.max(1, receiveWindow / 4);
+        int ungranted = 0;
+
+        try {
+            InputStream inputStream = received.getInputStream();
+            OutputStream outputStream = localEndpoint.getOutputStream();
+
+            while (true) {
+                int read = inputStream.read(buffer, 0, buffer.length);
+
+                if (read == -1) {
+                    break;
+                }
+
+                outputStream.write(buffer, 0, read);
+                ungranted += read;
+
+                // Granting in batches saves frames. Holding back at most a quarter of the window means the
+                // other side always has credit left while our buffer is empty, so it never waits on us.
+                if (ungranted >= creditThreshold) {
+                    grantCredit(ungranted);
+                    ungranted = 0;
+                }
+            }
+        } catch (IOException e) {
+            // The channel or the link has been closed
+        } finally {
+            link.closeChannel(channelId, true);
+        }
+    }
+
+    private void grantCredit(int credit) throws IOException {
+        // Account for the credit before the other side can act on it
+        synchronized (this) {
+            receiveCredit += credit;
+        }
+
+        link.sendCredit(channelId, credit);
+    }
+}
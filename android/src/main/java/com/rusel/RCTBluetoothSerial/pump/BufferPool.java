@@ -0,0 +1,117 @@
+package com.rusel.RCTBluetoothSerial.pump;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of byte buffers shared by all the stream pumps in a bridge. Buffers come in power of two
+ * size classes between the minimum and maximum buffer size so that idle connections only hold on to
+ * small buffers while busy ones can move up to large ones.
+ *
+ * The memory retained by the pool is bounded: every size class gets an equal share of the
+ * maxPooledBytes budget, and buffers released to a full size class are left to the garbage collector.
+ */
+public class BufferPool {
+
+    private final int minBufferSize;
+    private final int maxBufferSize;
+    private final List<BlockingQueue<byte[]>> freeBuffers;
+
+    private final AtomicLong allocations = new AtomicLong();
+    private final AtomicLong reuses = new AtomicLong();
+
+    public BufferPool(int minBufferSize, int maxBufferSize, long maxPooledBytes) {
+        if (minBufferSize <= 0 || maxBufferSize < minBufferSize) {
+            throw new IllegalArgumentException(
+                    "Invalid buffer sizes: min " + minBufferSize + ", max " + maxBufferSize);
+        }
+
+        this.minBufferSize = roundUpToPowerOfTwo(minBufferSize);
+        this.maxBufferSize = Math.max(this.minBufferSize, roundUpToPowerOfTwo(maxBufferSize));
+
+        int sizeClasses = sizeClassOf(this.maxBufferSize) + 1;
+        long bytesPerClass = maxPooledBytes / sizeClasses;
+
+        this.freeBuffers = new ArrayList<>(sizeClasses);
+        for (int i = 0; i < sizeClasses; i++) {
+            int buffersInClass = (int) Math.max(1, bytesPerClass / sizeOfClass(i));
+            freeBuffers.add(new ArrayBlockingQueue<byte[]>(buffersInClass));
+        }
+    }
+
+    public int getMinBufferSize() {
+        return minBufferSize;
+    }
+
+    public int getMaxBufferSize() {
+        return maxBufferSize;
+    }
+
+    /**
+     * @param size the requested size, rounded up to the nearest size class and clamped to the
+     *             pool's minimum and maximum buffer sizes.
+     */
+    public byte[] acquire(int size) {
+        int sizeClass = sizeClassOf(clamp(size));
+        byte[] buffer = freeBuffers.get(sizeClass).poll();
+
+        if (buffer == null) {
+            allocations.incrementAndGet();
+            buffer = new byte[sizeOfClass(sizeClass)];
+        } else {
+            reuses.incrementAndGet();
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer previously handed out by acquire. The caller must not use it afterwards.
+     */
+    public void release(byte[] buffer) {
+        int length = buffer.length;
+
+        if (length < minBufferSize || length > maxBufferSize || Integer.bitCount(length) != 1) {
+            return;
+        }
+
+        freeBuffers.get(sizeClassOf(length)).offer(buffer);
+    }
+
+    public long getAllocationCount() {
+        return allocations.get();
+    }
+
+    public long getReuseCount() {
+        return reuses.get();
+    }
+
+    public long getPooledBytes() {
+        long total = 0;
+        for (int i = 0; i < freeBuffers.size(); i++) {
+            total += (long) freeBuffers.get(i).size() * sizeOfClass(i);
+        }
+        return total;
+    }
+
+    private int clamp(int size) {
+        return Math.max(minBufferSize, Math.min(maxBufferSize, size));
+    }
+
+    private int sizeClassOf(int size) {
+        int rounded = roundUpToPowerOfTwo(size);
+        return Integer.numberOfTrailingZeros(rounded) - Integer.numberOfTrailingZeros(minBufferSize);
+    }
+
+    private int sizeOfClass(int sizeClass) {
+        return minBufferSize << sizeClass;
+    }
+
+    private static int roundUpToPowerOfTwo(int value) {
+        int highest = Integer.highestOneBit(value);
+        return highest == value ? value : highest << 1;
+    }
+}
@@ -0,0 +1,189 @@
+package com.rusel.RCTBluetoothSerial.pump;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded buffer between a producer and a consumer thread, with hysteresis: once the amount of
+ * buffered data reaches the high watermark the producer is paused, and it stays paused until the
+ * consumer has drained the buffer down to the low watermark. This absorbs bursts on either side
+ * without the producer waking up for every few bytes of free space.
+ */
+public class ByteRingBuffer {
+
+    private final byte[] buffer;
+    private final int highWatermark;
+    private final int lowWatermark;
+    private final AtomicLong pauseCounter;
+
+    private int readPosition = 0;
+    private int available = 0;
+
+    private boolean paused = false;
+    private boolean writeClosed = false;
+    private boolean aborted = false;
+
+    private final InputStream inputStream = new RingInputStream();
+    private final OutputStream outputStream = new RingOutputStream();
+
+    /**
+     * @param pauseCounter incremented every time the producer is paused. May be shared between buffers.
+     */
+    public ByteRingBuffer(int capacity, int highWatermark, int lowWatermark, AtomicLong pauseCounter) {
+        if (highWatermark > capacity || lowWatermark >= highWatermark || lowWatermark < 0) {
+            throw new IllegalArgumentException("Invalid watermarks: low " + lowWatermark
+                    + ", high " + highWatermark + ", capacity " + capacity);
+        }
+
+        this.buffer = new byte[capacity];
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        this.pauseCounter = pauseCounter;
+    }
+
+    public int getCapacity() {
+        return buffer.length;
+    }
+
+    /**
+     * The consumer's end. Returns end of stream once the producer has closed its end and the buffer is empty.
+     */
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    /**
+     * The producer's end. Closing it signals the end of the stream to the consumer.
+     */
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    public synchronized void closeWrite() {
+        writeClosed = true;
+        notifyAll();
+    }
+
+    /**
+     * Discards the buffered data and makes both ends fail.
+     */
+    public synchronized void abort() {
+        aborted = true;
+        available = 0;
+        notifyAll();
+    }
+
+    private synchronized int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        while (available == 0) {
+            if (aborted) {
+                throw new IOException("Buffer aborted.");
+            }
+
+            if (writeClosed) {
+                return -1;
+            }
+
+            awaitChange();
+        }
+
+        int count = Math.min(length, available);
+        int firstPart = Math.min(count, buffer.length - readPosition);
+
+        System.arraycopy(buffer, readPosition, bytes, offset, firstPart);
+        System.arraycopy(buffer, 0, bytes, offset + firstPart, count - firstPart);
+
+        readPosition = (readPosition + count) % buffer.length;
+        available -= count;
+
+        if (paused && available <= lowWatermark) {
+            paused = false;
+            notifyAll();
+        }
+
+        return count;
+    }
+
+    private synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (aborted || writeClosed) {
+                throw new IOException("Buffer closed.");
+            }
+
+            if (paused || available == buffer.length) {
+                awaitChange();
+                continue;
+            }
+
+            int writePosition = (readPosition + available) % buffer.length;
+            int count = Math.min(length, buffer.length - available);
+            int firstPart = Math.min(count, buffer.length - writePosition);
+
+            System.arraycopy(bytes, offset, buffer, writePosition, firstPart);
+            System.arraycopy(bytes, offset + firstPart, buffer, 0, count - firstPart);
+
+            boolean wasEmpty = available == 0;
+
+            available += count;
+            offset += count;
+            length -= count;
+
+            if (available >= highWatermark) {
+                paused = true;
+                pauseCounter.incrementAndGet();
+            }
+
+            if (wasEmpty) {
+                notifyAll();
+            }
+        }
+    }
+
+    private void awaitChange() throws InterruptedIOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+    }
+
+    private class RingInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = ByteRingBuffer.this.read(single, 0, 1);
+            return read == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            return ByteRingBuffer.this.read(bytes, offset, length);
+        }
+    }
+
+    private class RingOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            ByteRingBuffer.this.write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            ByteRingBuffer.this.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() {
+            closeWrite();
+        }
+    }
+}
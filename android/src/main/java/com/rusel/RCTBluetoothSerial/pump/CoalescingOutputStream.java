@@ -0,0 +1,142 @@
+package com.rusel.RCTBluetoothSerial.pump;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gathers small writes into larger ones. Bytes are held back until either targetBytes have
+ * accumulated or maxDelayMicros have passed since the first held back byte, whichever comes first.
+ * Writes at least as large as the target while nothing is held back go straight through.
+ *
+ * Deadline flushes are made by whichever thread runs runDeadlineFlushes, which should be one of the
+ * connection's own (the bridge runs it as one of the connection's pump tasks), so that a stalled sink
+ * only holds up its own connection. If a deadline flush fails, the exception is rethrown by the next
+ * write or flush.
+ */
+public class CoalescingOutputStream extends OutputStream {
+
+    private final OutputStream outputStream;
+    private final long maxDelayNanos;
+
+    private final byte[] buffer;
+    private int count = 0;
+
+    /**
+     * When the held back bytes are due to be flushed, as System.nanoTime().
+     */
+    private long flushDeadlineNanos = 0;
+
+    private boolean closed = false;
+    private IOException deferredFailure = null;
+
+    public CoalescingOutputStream(OutputStream outputStream, int targetBytes, long maxDelayMicros) {
+        this.outputStream = outputStream;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        this.buffer = new byte[targetBytes];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+        throwDeferredFailure();
+
+        if (count == 0 && length >= buffer.length) {
+            outputStream.write(bytes, offset, length);
+            return;
+        }
+
+        boolean wasEmpty = count == 0;
+
+        while (length > 0) {
+            int copied = Math.min(length, buffer.length - count);
+            System.arraycopy(bytes, offset, buffer, count, copied);
+
+            count += copied;
+            offset += copied;
+            length -= copied;
+
+            if (count == buffer.length) {
+                flushBuffer();
+                wasEmpty = true;
+            }
+        }
+
+        if (wasEmpty && count > 0) {
+            flushDeadlineNanos = System.nanoTime() + maxDelayNanos;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        throwDeferredFailure();
+        flushBuffer();
+        outputStream.flush();
+    }
+
+    /**
+     * Also stops runDeadlineFlushes.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        notifyAll();
+
+        try {
+            flushBuffer();
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    /**
+     * Flushes the held back bytes whenever their deadline passes, until the stream is closed or a
+     * flush fails. The stream's lock is held while flushing, which only holds up writers to this stream.
+     */
+    public synchronized void runDeadlineFlushes() {
+        try {
+            while (!closed && deferredFailure == null) {
+                if (count == 0) {
+                    wait();
+                    continue;
+                }
+
+                long remainingNanos = flushDeadlineNanos - System.nanoTime();
+
+                if (remainingNanos > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+                    continue;
+                }
+
+                try {
+                    flushBuffer();
+                } catch (IOException e) {
+                    deferredFailure = e;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            // Reset first so that a failed write doesn't get retried with the same bytes
+            int length = count;
+            count = 0;
+
+            outputStream.write(buffer, 0, length);
+        }
+    }
+
+    private void throwDeferredFailure() throws IOException {
+        if (deferredFailure != null) {
+            throw deferredFailure;
+        }
+    }
+}
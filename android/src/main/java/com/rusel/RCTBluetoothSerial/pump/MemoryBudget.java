@@ -0,0 +1,48 @@
+package com.rusel.RCTBluetoothSerial.pump;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed amount of memory shared between connections. Reservations that would exceed it are refused.
+ */
+public class MemoryBudget {
+
+    private final long totalBytes;
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final AtomicLong refusals = new AtomicLong();
+
+    public MemoryBudget(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    public boolean tryReserve(long bytes) {
+        while (true) {
+            long reserved = reservedBytes.get();
+
+            if (reserved + bytes > totalBytes) {
+                refusals.incrementAndGet();
+                return false;
+            }
+
+            if (reservedBytes.compareAndSet(reserved, reserved + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    public void release(long bytes) {
+        reservedBytes.addAndGet(-bytes);
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    public long getRefusalCount() {
+        return refusals.get();
+    }
+}
@@ -0,0 +1,183 @@
+package com.rusel.RCTBluetoothSerial.pump;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the (long lived, blocking) pump tasks of bridged connections on a bounded pool of named threads.
+ * Idle threads are kept alive for a while so that connections coming and going reuse threads rather
+ * than creating new ones.
+ *
+ * The pumps of a connection are submitted together and either all accepted or all rejected. Under the
+ * QUEUE policy they also wait together, and only start once there is a thread for each of them, so a
+ * connection is never left with only one direction running.
+ */
+public class PumpExecutor {
+
+    public enum QueuePolicy {
+        /**
+         * Reject tasks when every thread is busy.
+         */
+        REJECT,
+
+        /**
+         * Queue up to queueCapacity tasks when there are not enough free threads, then reject.
+         */
+        QUEUE
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final int maxThreads;
+    private final QueuePolicy queuePolicy;
+    private final int queueCapacity;
+
+    /**
+     * Groups of tasks waiting for enough free threads to start together, oldest first.
+     */
+    private final Queue<Runnable[]> waitingGroups = new ArrayDeque<>();
+    private int waitingTasks = 0;
+    private int runningTasks = 0;
+
+    private final AtomicLong rejectedTasks = new AtomicLong();
+
+    public PumpExecutor(final String threadNamePrefix,
+                        int maxThreads,
+                        QueuePolicy queuePolicy,
+                        int queueCapacity,
+                        long keepAliveMillis) {
+        this.maxThreads = maxThreads;
+        this.queuePolicy = queuePolicy;
+        this.queueCapacity = queuePolicy == QueuePolicy.QUEUE ? queueCapacity : 0;
+
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, threadNamePrefix + "-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+
+        // Tasks are only handed over when there is a thread for them, so the executor's own queue stays empty
+        this.executor = new ThreadPoolExecutor(
+                maxThreads,
+                maxThreads,
+                keepAliveMillis,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                threadFactory
+        );
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs all of the given tasks, or none of them. If they are queued, they are started together.
+     *
+     * @throws RejectedExecutionException if there is not room for all of the tasks under the queue policy.
+     */
+    public synchronized void execute(Runnable... tasks) {
+        if (tasks.length > maxThreads) {
+            rejectedTasks.addAndGet(tasks.length);
+            throw new RejectedExecutionException(
+                    tasks.length + " tasks can never run together on " + maxThreads + " threads");
+        }
+
+        boolean startNow = waitingGroups.isEmpty() && runningTasks + tasks.length <= maxThreads;
+
+        if (executor.isShutdown() || (!startNow && waitingTasks + tasks.length > queueCapacity)) {
+            rejectedTasks.addAndGet(tasks.length);
+            throw new RejectedExecutionException(
+                    "Pump pool full (" + runningTasks + " running, " + waitingTasks + " waiting, capacity "
+                            + (maxThreads + queueCapacity) + ")");
+        }
+
+        if (startNow) {
+            start(tasks);
+        } else {
+            waitingGroups.add(tasks);
+            waitingTasks += tasks.length;
+        }
+    }
+
+    private void start(Runnable[] tasks) {
+        runningTasks += tasks.length;
+
+        for (final Runnable task : tasks) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        onTaskFinished();
+                    }
+                }
+            });
+        }
+    }
+
+    private synchronized void onTaskFinished() {
+        runningTasks--;
+
+        // Groups start in the order they were queued, even if a later, smaller one would fit sooner
+        while (!waitingGroups.isEmpty() && runningTasks + waitingGroups.peek().length <= maxThreads) {
+            Runnable[] group = waitingGroups.remove();
+            waitingTasks -= group.length;
+
+            if (!executor.isShutdown()) {
+                start(group);
+            }
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    public QueuePolicy getQueuePolicy() {
+        return queuePolicy;
+    }
+
+    /**
+     * @return the number of threads currently in the pool, busy or idle.
+     */
+    public int getThreadCount() {
+        return executor.getPoolSize();
+    }
+
+    public int getActiveThreadCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getLargestThreadCount() {
+        return executor.getLargestPoolSize();
+    }
+
+    /**
+     * @return the number of tasks waiting for free threads.
+     */
+    public synchronized int getQueueDepth() {
+        return waitingTasks;
+    }
+
+    public long getRejectedTaskCount() {
+        return rejectedTasks.get();
+    }
+
+    public long getCompletedTaskCount() {
+        return executor.getCompletedTaskCount();
+    }
+}
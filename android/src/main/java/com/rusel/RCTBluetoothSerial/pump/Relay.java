@@ -0,0 +1,114 @@
+package com.rusel.RCTBluetoothSerial.pump;
+
+import com.rusel.RCTBluetoothSerial.trace.TraceEvent;
+import com.rusel.RCTBluetoothSerial.trace.Tracer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copies one direction of a bridged connection. Without an intermediate buffer this is a single
+ * pump task. With one, a fill task copies the source into the buffer and a separate drain task copies
+ * the buffer into the sink, so a stalled sink only stalls the source once the buffer's high watermark
+ * is reached.
+ *
+ * When the direction stops (the end of the stream has been delivered, or either side failed) the
+ * connection is closed, which also stops the other direction. The listener is called once every task
+ * of the relay has finished.
+ */
+public class Relay {
+
+    public interface Listener {
+
+        /**
+         * @param failure the first error that stopped the relay, or null if it reached the end of the stream.
+         */
+        void onEnded(IOException failure);
+    }
+
+    private final StreamPump streamPump;
+    private final InputStream source;
+    private final OutputStream sink;
+    private final ByteRingBuffer buffer;
+    private final Closeable connection;
+    private final Listener listener;
+
+    private final AtomicInteger runningTasks = new AtomicInteger();
+    private volatile IOException failure = null;
+
+    /**
+     * @param buffer the intermediate buffer, or null to copy directly from the source to the sink.
+     */
+    public Relay(StreamPump streamPump,
+                 InputStream source,
+                 OutputStream sink,
+                 ByteRingBuffer buffer,
+                 Closeable connection,
+                 Listener listener) {
+        this.streamPump = streamPump;
+        this.source = source;
+        this.sink = sink;
+        this.buffer = buffer;
+        this.connection = connection;
+        this.listener = listener;
+    }
+
+    public ByteRingBuffer getBuffer() {
+        return buffer;
+    }
+
+    public Runnable[] createTasks() {
+        if (buffer == null) {
+            runningTasks.set(1);
+            return new Runnable[] {task(source, sink, true)};
+        }
+
+        runningTasks.set(2);
+        return new Runnable[] {
+                task(source, buffer.getOutputStream(), false),
+                task(buffer.getInputStream(), sink, true)
+        };
+    }
+
+    private Runnable task(final InputStream inputStream, final OutputStream outputStream, final boolean delivers) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                boolean stop = delivers;
+
+                try {
+                    streamPump.pump(inputStream, outputStream);
+
+                    if (!delivers) {
+                        // Let the drain task deliver what's left before closing the connection
+                        buffer.closeWrite();
+                    }
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                    stop = true;
+                } finally {
+                    if (stop) {
+                        if (buffer != null) {
+                            buffer.abort();
+                        }
+
+                        try {
+                            connection.close();
+                        } catch (IOException e) {
+                            Tracer.trace(Tracer.WARN, TraceEvent.CLOSE_FAILED, null, e.getMessage());
+                        }
+                    }
+
+                    if (runningTasks.decrementAndGet() == 0) {
+                        listener.onEnded(failure);
+                    }
+                }
+            }
+        };
+    }
+}
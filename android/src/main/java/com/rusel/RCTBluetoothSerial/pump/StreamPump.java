@@ -0,0 +1,89 @@
+package com.rusel.RCTBluetoothSerial.pump;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Copies an input stream to an output stream until the end of the input stream, using buffers
+ * borrowed from a shared BufferPool.
+ *
+ * The buffer size adapts to the traffic: after a run of reads that fill the buffer it moves up a size
+ * class (fewer, larger reads under sustained load), and after a run of reads that use only a small
+ * fraction of it, it moves back down so a connection that has settled into light traffic doesn't keep
+ * a large buffer. The buffer is held while blocked in a read, so a connection that goes quiet straight
+ * after a burst keeps whatever size it had until it has made enough small reads. Nothing is allocated
+ * per chunk; buffers are only exchanged with the pool when the size changes.
+ */
+public class StreamPump {
+
+    /**
+     * The number of consecutive full reads before growing the buffer.
+     */
+    private static final int GROW_AFTER_FULL_READS = 4;
+
+    /**
+     * The number of consecutive reads using at most a quarter of the buffer before shrinking it.
+     */
+    private static final int SHRINK_AFTER_SMALL_READS = 16;
+
+    private final BufferPool bufferPool;
+
+    public StreamPump(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Flushes the output stream once the end of the input stream is reached.
+     *
+     * @return the number of bytes copied
+     * @throws IOException if reading or writing fails. Neither stream is closed.
+     */
+    public long pump(InputStream inputStream, OutputStream outputStream) throws IOException {
+        byte[] buffer = bufferPool.acquire(bufferPool.getMinBufferSize());
+
+        long total = 0;
+        int fullReads = 0;
+        int smallReads = 0;
+
+        try {
+            while (true) {
+                int read = inputStream.read(buffer, 0, buffer.length);
+
+                if (read == -1) {
+                    outputStream.flush();
+                    return total;
+                }
+
+                outputStream.write(buffer, 0, read);
+                total += read;
+
+                if (read == buffer.length) {
+                    smallReads = 0;
+
+                    if (++fullReads >= GROW_AFTER_FULL_READS && buffer.length < bufferPool.getMaxBufferSize()) {
+                        buffer = exchange(buffer, buffer.length << 1);
+                        fullReads = 0;
+                    }
+                } else if (read <= buffer.length >> 2) {
+                    fullReads = 0;
+
+                    if (++smallReads >= SHRINK_AFTER_SMALL_READS && buffer.length > bufferPool.getMinBufferSize()) {
+                        buffer = exchange(buffer, buffer.length >> 1);
+                        smallReads = 0;
+                    }
+                } else {
+                    fullReads = 0;
+                    smallReads = 0;
+                }
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    private byte[] exchange(byte[] buffer, int newSize) {
+        bufferPool.release(buffer);
+        return bufferPool.acquire(newSize);
+    }
+}
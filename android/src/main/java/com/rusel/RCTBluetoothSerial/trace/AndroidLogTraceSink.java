@@ -0,0 +1,41 @@
+package com.rusel.RCTBluetoothSerial.trace;
+
+import android.util.Log;
+
+/**
+ * Writes events to the Android log. Only events at or above the sink's own level are formatted, so
+ * the ring can record in more detail than is logged.
+ */
+public class AndroidLogTraceSink implements TraceSink {
+
+    private static final String TAG = "bt_trace";
+
+    private final int minimumLevel;
+
+    public AndroidLogTraceSink(int minimumLevel) {
+        this.minimumLevel = minimumLevel;
+    }
+
+    @Override
+    public void onEvent(long timeMillis, int level, int event, String subject, String detail, long value) {
+        if (level < minimumLevel) {
+            return;
+        }
+
+        StringBuilder message = new StringBuilder(TraceEvent.nameOf(event));
+
+        if (subject != null) {
+            message.append(' ').append(subject);
+        }
+
+        if (detail != null) {
+            message.append(": ").append(detail);
+        }
+
+        if (value != 0) {
+            message.append(" (").append(value).append(')');
+        }
+
+        Log.println(level, TAG, message.toString());
+    }
+}
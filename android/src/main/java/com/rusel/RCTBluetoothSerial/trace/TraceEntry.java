@@ -0,0 +1,53 @@
+package com.rusel.RCTBluetoothSerial.trace;
+
+/**
+ * A recorded event, as dumped by the 'trace' control command.
+ */
+public class TraceEntry {
+
+    private final long sequence;
+    private final long timeMillis;
+    private final int level;
+    private final int event;
+    private final String subject;
+    private final String detail;
+    private final long value;
+
+    TraceEntry(long sequence, long timeMillis, int level, int event, String subject, String detail, long value) {
+        this.sequence = sequence;
+        this.timeMillis = timeMillis;
+        this.level = level;
+        this.event = event;
+        this.subject = subject;
+        this.detail = detail;
+        this.value = value;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public String getLevel() {
+        return Tracer.levelName(level);
+    }
+
+    public String getEvent() {
+        return TraceEvent.nameOf(event);
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getDetail() {
+        return detail;
+    }
+
+    public long getValue() {
+        return value;
+    }
+}
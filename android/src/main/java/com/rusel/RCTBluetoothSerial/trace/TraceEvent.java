@@ -0,0 +1,96 @@
+package com.rusel.RCTBluetoothSerial.trace;
+
+/**
+ * The codes of the events recorded with the Tracer. Codes are only meaningful within one build,
+ * dumps carry the names.
+ */
+public final class TraceEvent {
+
+    // Outgoing connections, subject is the remote address
+    public static final int CONNECT_QUEUED = 1;
+    public static final int CONNECT_JOINED = 2;
+    public static final int CONNECT_STARTED = 3;
+    public static final int CONNECT_SUCCEEDED = 4;
+    public static final int CONNECT_FAILED = 5;
+    public static final int CONNECT_RETRY = 6;
+    public static final int CONNECT_WORKERS_STARTED = 7;
+
+    // Bridged connections, subject is the remote address
+    public static final int ALREADY_CONNECTED = 8;
+    public static final int LOCAL_CONNECT_FAILED = 9;
+    public static final int BRIDGE_STARTED = 10;
+    public static final int BRIDGE_CLOSED = 11;
+    public static final int BRIDGE_FAILED = 12;
+    public static final int CHANNEL_OPENED = 13;
+    public static final int CHANNEL_OPEN_FAILED = 14;
+    public static final int RELAY_ENDED = 15;
+    public static final int CLOSE_FAILED = 16;
+
+    // Control socket, subject is the control socket path, or the command name for command events
+    public static final int CONTROL_CONNECTING = 17;
+    public static final int CONTROL_CONNECTED = 18;
+    public static final int CONTROL_CONNECT_FAILED = 19;
+    public static final int CONTROL_COMMAND = 20;
+    public static final int CONTROL_COMMAND_FAILED = 21;
+    public static final int CONTROL_RESPONSES_WRITTEN = 22;
+    public static final int CONTROL_WRITE_FAILED = 23;
+    public static final int CONTROL_READ_FAILED = 24;
+    public static final int CONTROL_ENCODING_CHANGED = 25;
+    public static final int CONTROL_DISCONNECTED = 26;
+
+    // Discovery scans, value is the number of requests or devices
+    public static final int DISCOVERY_STARTED = 27;
+    public static final int DISCOVERY_JOINED = 28;
+    public static final int DISCOVERY_FINISHED = 29;
+    public static final int DISCOVERY_DEFERRED = 30;
+    public static final int DISCOVERY_SUSPENDED = 31;
+    public static final int DISCOVERY_RESUMED = 32;
+
+    // Outgoing connection workers, subject is the worker's thread name
+    public static final int CONNECT_WORKER_STOPPED = 33;
+
+    private static final String[] NAMES = {
+            null,
+            "connectQueued",
+            "connectJoined",
+            "connectStarted",
+            "connectSucceeded",
+            "connectFailed",
+            "connectRetry",
+            "connectWorkersStarted",
+            "alreadyConnected",
+            "localConnectFailed",
+            "bridgeStarted",
+            "bridgeClosed",
+            "bridgeFailed",
+            "channelOpened",
+            "channelOpenFailed",
+            "relayEnded",
+            "closeFailed",
+            "controlConnecting",
+            "controlConnected",
+            "controlConnectFailed",
+            "controlCommand",
+            "controlCommandFailed",
+            "controlResponsesWritten",
+            "controlWriteFailed",
+            "controlReadFailed",
+            "controlEncodingChanged",
+            "controlDisconnected",
+            "discoveryStarted",
+            "discoveryJoined",
+            "discoveryFinished",
+            "discoveryDeferred",
+            "discoverySuspended",
+            "discoveryResumed",
+            "connectWorkerStopped"
+    };
+
+    private TraceEvent() {
+
+    }
+
+    public static String nameOf(int event) {
+        return event > 0 && event < NAMES.length ? NAMES[event] : String.valueOf(event);
+    }
+}
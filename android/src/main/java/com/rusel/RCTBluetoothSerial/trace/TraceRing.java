@@ -0,0 +1,90 @@
+package com.rusel.RCTBluetoothSerial.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The last few events, kept in preallocated arrays so recording one allocates nothing. Writers
+ * never wait for each other. A reader skips any slot that is overwritten while it is being read.
+ */
+class TraceRing {
+
+    private final int mask;
+
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    /**
+     * The sequence number of the event in each slot, set once the rest of the slot has been written.
+     */
+    private final AtomicLongArray sequences;
+
+    private final long[] times;
+    private final int[] levels;
+    private final int[] events;
+    private final String[] subjects;
+    private final String[] details;
+    private final long[] values;
+
+    /**
+     * @param capacity rounded up to a power of two.
+     */
+    TraceRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        this.times = new long[size];
+        this.levels = new int[size];
+        this.events = new int[size];
+        this.subjects = new String[size];
+        this.details = new String[size];
+        this.values = new long[size];
+
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, -1);
+        }
+    }
+
+    void record(long timeMillis, int level, int event, String subject, String detail, long value) {
+        long sequence = nextSequence.getAndIncrement();
+        int slot = (int) (sequence & mask);
+
+        sequences.set(slot, -1);
+
+        times[slot] = timeMillis;
+        levels[slot] = level;
+        events[slot] = event;
+        subjects[slot] = subject;
+        details[slot] = detail;
+        values[slot] = value;
+
+        sequences.set(slot, sequence);
+    }
+
+    List<TraceEntry> snapshot() {
+        long end = nextSequence.get();
+        long start = Math.max(0, end - (mask + 1));
+
+        List<TraceEntry> entries = new ArrayList<>((int) (end - start));
+
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) (sequence & mask);
+
+            if (sequences.get(slot) != sequence) {
+                continue;
+            }
+
+            TraceEntry entry = new TraceEntry(sequence, times[slot], levels[slot], events[slot],
+                    subjects[slot], details[slot], values[slot]);
+
+            // Still the same event once read, so it was not torn by a writer lapping us
+            if (sequences.get(slot) == sequence) {
+                entries.add(entry);
+            }
+        }
+
+        return entries;
+    }
+}
@@ -0,0 +1,9 @@
+package com.rusel.RCTBluetoothSerial.trace;
+
+/**
+ * Receives each event as it is recorded, on the thread that recorded it.
+ */
+public interface TraceSink {
+
+    void onEvent(long timeMillis, int level, int event, String subject, String detail, long value);
+}
@@ -0,0 +1,125 @@
+package com.rusel.RCTBluetoothSerial.trace;
+
+import java.util.List;
+
+/**
+ * Records diagnostic events cheaply enough to leave in hot paths. An event is an int code from
+ * TraceEvent plus a couple of strings the caller already has (such as an address or an exception
+ * message) and a number, so recording one costs no formatting or allocation. Events are kept in a
+ * fixed size ring, which can be dumped with the 'trace' control command, and passed to a sink if
+ * one is set.
+ *
+ * Levels are those of android.util.Log. Events below COMPILED_LEVEL are never recorded. A call
+ * site on a hot path can be guarded by comparing its level with COMPILED_LEVEL, so javac drops the
+ * call altogether in builds that compile that level out.
+ */
+public final class Tracer {
+
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    public static final int COMPILED_LEVEL = DEBUG;
+
+    private static final int RING_CAPACITY = 1024;
+
+    private static final TraceRing ring = new TraceRing(RING_CAPACITY);
+
+    private static volatile int level = DEBUG;
+    private static volatile TraceSink sink = null;
+
+    private Tracer() {
+
+    }
+
+    public static boolean isEnabled(int eventLevel) {
+        return eventLevel >= COMPILED_LEVEL && eventLevel >= level;
+    }
+
+    public static void trace(int eventLevel, int event, String subject) {
+        trace(eventLevel, event, subject, null, 0);
+    }
+
+    public static void trace(int eventLevel, int event, String subject, long value) {
+        trace(eventLevel, event, subject, null, value);
+    }
+
+    public static void trace(int eventLevel, int event, String subject, String detail) {
+        trace(eventLevel, event, subject, detail, 0);
+    }
+
+    /**
+     * @param subject what the event is about, usually a remote address or a command name, or null.
+     * @param detail more about the event, usually the reason for a failure, or null.
+     */
+    public static void trace(int eventLevel, int event, String subject, String detail, long value) {
+        if (!isEnabled(eventLevel)) {
+            return;
+        }
+
+        long timeMillis = System.currentTimeMillis();
+        ring.record(timeMillis, eventLevel, event, subject, detail, value);
+
+        TraceSink currentSink = sink;
+        if (currentSink != null) {
+            currentSink.onEvent(timeMillis, eventLevel, event, subject, detail, value);
+        }
+    }
+
+    public static int getLevel() {
+        return level;
+    }
+
+    /**
+     * The lowest level recorded from now on. Defaults to DEBUG.
+     */
+    public static void setLevel(int level) {
+        Tracer.level = level;
+    }
+
+    /**
+     * Also passes each recorded event to the sink, or stops doing so if null.
+     */
+    public static void setSink(TraceSink sink) {
+        Tracer.sink = sink;
+    }
+
+    /**
+     * @return the recorded events still in the ring, oldest first.
+     */
+    public static List<TraceEntry> snapshot() {
+        return ring.snapshot();
+    }
+
+    public static String levelName(int level) {
+        switch (level) {
+            case VERBOSE:
+                return "verbose";
+            case DEBUG:
+                return "debug";
+            case INFO:
+                return "info";
+            case WARN:
+                return "warn";
+            case ERROR:
+                return "error";
+            default:
+                return String.valueOf(level);
+        }
+    }
+
+    /**
+     * @return the level with the given name, or -1 if there is none.
+     */
+    public static int levelOf(String name) {
+        for (int candidate = VERBOSE; candidate <= ERROR; candidate++) {
+            if (levelName(candidate).equals(name)) {
+                return candidate;
+            }
+        }
+
+        return -1;
+    }
+}
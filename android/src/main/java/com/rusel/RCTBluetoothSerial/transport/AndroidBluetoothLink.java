@@ -0,0 +1,43 @@
+package com.rusel.RCTBluetoothSerial.transport;
+
+import android.bluetooth.BluetoothSocket;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public class AndroidBluetoothLink implements BluetoothLink {
+
+    private final BluetoothSocket bluetoothSocket;
+
+    public AndroidBluetoothLink(BluetoothSocket bluetoothSocket) {
+        this.bluetoothSocket = bluetoothSocket;
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return bluetoothSocket.getRemoteDevice().getAddress();
+    }
+
+    @Override
+    public void connect() throws IOException {
+        if (!bluetoothSocket.isConnected()) {
+            bluetoothSocket.connect();
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return bluetoothSocket.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return bluetoothSocket.getOutputStream();
+    }
+
+    @Override
+    public void close() throws IOException {
+        bluetoothSocket.close();
+    }
+}
@@ -0,0 +1,30 @@
+package com.rusel.RCTBluetoothSerial.transport;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothSocket;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Dials RFCOMM connections to the given service UUID on remote devices.
+ */
+public class AndroidBluetoothLinkConnector implements BluetoothLinkConnector {
+
+    private final BluetoothAdapter bluetoothAdapter;
+    private final UUID serviceUUID;
+
+    public AndroidBluetoothLinkConnector(BluetoothAdapter bluetoothAdapter, UUID serviceUUID) {
+        this.bluetoothAdapter = bluetoothAdapter;
+        this.serviceUUID = serviceUUID;
+    }
+
+    @Override
+    public BluetoothLink createLink(String remoteAddress) throws IOException {
+        BluetoothDevice remoteDevice = bluetoothAdapter.getRemoteDevice(remoteAddress);
+        BluetoothSocket bluetoothSocket = remoteDevice.createRfcommSocketToServiceRecord(serviceUUID);
+
+        return new AndroidBluetoothLink(bluetoothSocket);
+    }
+}
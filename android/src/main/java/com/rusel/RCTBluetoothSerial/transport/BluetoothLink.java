@@ -0,0 +1,26 @@
+package com.rusel.RCTBluetoothSerial.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The bluetooth side of a bridged connection. Mirrors the parts of android.bluetooth.BluetoothSocket
+ * that the bridge relies on, so that the bridge can be driven by something other than a real radio.
+ */
+public interface BluetoothLink extends Closeable {
+
+    String getRemoteAddress();
+
+    /**
+     * Blocks until the link is established. Closing the link from another thread aborts the attempt.
+     * Links that were accepted rather than dialled are already connected, so this is a no-op for them.
+     */
+    void connect() throws IOException;
+
+    InputStream getInputStream() throws IOException;
+
+    OutputStream getOutputStream() throws IOException;
+
+}
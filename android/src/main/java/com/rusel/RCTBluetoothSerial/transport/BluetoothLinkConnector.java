@@ -0,0 +1,12 @@
+package com.rusel.RCTBluetoothSerial.transport;
+
+import java.io.IOException;
+
+/**
+ * Creates (not yet connected) outgoing links to remote devices.
+ */
+public interface BluetoothLinkConnector {
+
+    BluetoothLink createLink(String remoteAddress) throws IOException;
+
+}
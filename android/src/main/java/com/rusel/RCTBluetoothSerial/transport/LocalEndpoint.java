@@ -0,0 +1,18 @@
+package com.rusel.RCTBluetoothSerial.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The local side of a bridged connection, i.e. the process / thread we're proxying the bluetooth
+ * connection to. On a device this is a unix socket.
+ */
+public interface LocalEndpoint extends Closeable {
+
+    InputStream getInputStream() throws IOException;
+
+    OutputStream getOutputStream() throws IOException;
+
+}
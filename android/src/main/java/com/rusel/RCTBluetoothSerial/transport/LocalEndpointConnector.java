@@ -0,0 +1,12 @@
+package com.rusel.RCTBluetoothSerial.transport;
+
+import java.io.IOException;
+
+/**
+ * Opens a new connection to the local process for each bridged bluetooth connection.
+ */
+public interface LocalEndpointConnector {
+
+    LocalEndpoint connect() throws IOException;
+
+}
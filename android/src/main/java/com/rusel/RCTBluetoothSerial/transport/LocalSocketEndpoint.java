@@ -0,0 +1,36 @@
+package com.rusel.RCTBluetoothSerial.transport;
+
+import android.net.LocalSocket;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public class LocalSocketEndpoint implements LocalEndpoint {
+
+    private final LocalSocket localSocket;
+
+    public LocalSocketEndpoint(LocalSocket localSocket) {
+        this.localSocket = localSocket;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return localSocket.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return localSocket.getOutputStream();
+    }
+
+    @Override
+    public void close() throws IOException {
+        localSocket.close();
+    }
+
+    @Override
+    public String toString() {
+        return "LocalSocketEndpoint(fd: " + localSocket.getFileDescriptor() + ")";
+    }
+}
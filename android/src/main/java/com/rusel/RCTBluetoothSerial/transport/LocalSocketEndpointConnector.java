@@ -0,0 +1,41 @@
+package com.rusel.RCTBluetoothSerial.transport;
+
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+
+import java.io.IOException;
+
+/**
+ * Connects to a unix socket on the filesystem.
+ */
+public class LocalSocketEndpointConnector implements LocalEndpointConnector {
+
+    private final String socketPath;
+
+    public LocalSocketEndpointConnector(String socketPath) {
+        this.socketPath = socketPath;
+    }
+
+    @Override
+    public LocalEndpoint connect() throws IOException {
+        LocalSocket localSocket = new LocalSocket();
+        LocalSocketAddress localSocketAddress = new LocalSocketAddress(
+                socketPath,
+                LocalSocketAddress.Namespace.FILESYSTEM
+        );
+
+        try {
+            localSocket.connect(localSocketAddress);
+        } catch (IOException e) {
+            localSocket.close();
+            throw e;
+        }
+
+        return new LocalSocketEndpoint(localSocket);
+    }
+
+    @Override
+    public String toString() {
+        return socketPath;
+    }
+}
@@ -0,0 +1,49 @@
+package com.rusel.RCTBluetoothSerial;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectRetryPolicyTest {
+
+    @Test
+    public void delaysGrowByTheMultiplierUpToTheMaximum() {
+        ConnectRetryPolicy policy = new ConnectRetryPolicy(10, 100, 1000, 2, 0);
+
+        assertEquals(100, policy.delayBeforeRetry(1, 0.5));
+        assertEquals(200, policy.delayBeforeRetry(2, 0.5));
+        assertEquals(400, policy.delayBeforeRetry(3, 0.5));
+        assertEquals(800, policy.delayBeforeRetry(4, 0.5));
+        assertEquals(1000, policy.delayBeforeRetry(5, 0.5));
+        assertEquals(1000, policy.delayBeforeRetry(10, 0.5));
+    }
+
+    @Test
+    public void jitterStaysWithinItsFractionOfTheDelay() {
+        ConnectRetryPolicy policy = new ConnectRetryPolicy(3, 1000, 1000, 1, 0.25);
+
+        assertEquals(750, policy.delayBeforeRetry(1, 0));
+        assertEquals(1000, policy.delayBeforeRetry(1, 0.5));
+
+        for (double random = 0; random < 1; random += 0.01) {
+            long delay = policy.delayBeforeRetry(1, random);
+            assertTrue(delay >= 750 && delay < 1250);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMultiplierBelowOne() {
+        new ConnectRetryPolicy(1, 100, 1000, 0.5, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsJitterAboveOne() {
+        new ConnectRetryPolicy(1, 100, 1000, 2, 1.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMaximumDelayBelowInitialDelay() {
+        new ConnectRetryPolicy(1, 1000, 100, 2, 0);
+    }
+}
@@ -0,0 +1,78 @@
+package com.rusel.RCTBluetoothSerial;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectRetrySchedulerTest {
+
+    private final BlockingQueue<String> retried = new LinkedBlockingQueue<>();
+    private ConnectRetryScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new ConnectRetryScheduler(
+                new ConnectRetryPolicy(2, 10, 10, 1, 0),
+                new ConnectRetryScheduler.RetryTarget() {
+                    @Override
+                    public void retryConnection(String remoteAddress) {
+                        retried.add(remoteAddress);
+                    }
+                });
+    }
+
+    @Test(timeout = 10000)
+    public void retriesUntilTheMaximumIsReached() throws Exception {
+        scheduler.attemptQueued("AA");
+
+        assertTrue(scheduler.onFailure("AA"));
+        assertEquals("AA", retried.take());
+
+        assertTrue(scheduler.onFailure("AA"));
+        assertEquals("AA", retried.take());
+
+        assertFalse(scheduler.onFailure("AA"));
+        assertEquals(2, scheduler.getScheduledRetryCount());
+    }
+
+    @Test(timeout = 10000)
+    public void cancellingDuringTheFirstAttemptStopsItsRetries() throws Exception {
+        scheduler.attemptQueued("AA");
+
+        assertFalse(scheduler.cancel("AA"));
+        assertFalse(scheduler.onFailure("AA"));
+        assertNull(retried.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void cancellingCallsOffAWaitingRetry() throws Exception {
+        scheduler.setPolicy(new ConnectRetryPolicy(2, 60000, 60000, 1, 0));
+        scheduler.attemptQueued("AA");
+
+        assertTrue(scheduler.onFailure("AA"));
+        assertEquals(1, scheduler.getWaitingCount());
+
+        assertTrue(scheduler.cancel("AA"));
+        assertEquals(0, scheduler.getWaitingCount());
+    }
+
+    @Test(timeout = 10000)
+    public void aNewAttemptStartsTheBackoffAfresh() throws Exception {
+        scheduler.attemptQueued("AA");
+        scheduler.cancel("AA");
+        scheduler.onFailure("AA");
+
+        scheduler.attemptQueued("AA");
+
+        assertTrue(scheduler.onFailure("AA"));
+        assertEquals("AA", retried.take());
+    }
+}
@@ -0,0 +1,117 @@
+package com.rusel.RCTBluetoothSerial;
+
+import android.bluetooth.BluetoothDevice;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DiscoveredDeviceCacheTest {
+
+    private static final long HOUR_MILLIS = 60 * 60 * 1000;
+
+    @Test
+    public void missesUntilAScanHasFinished() {
+        DiscoveredDeviceCache cache = new DiscoveredDeviceCache(HOUR_MILLIS, 10);
+        cache.recordSeen(device("AA", 0));
+
+        assertNull(cache.getDevicesSeenWithin(HOUR_MILLIS));
+
+        cache.recordScanFinished();
+
+        assertEquals(1, cache.getDevicesSeenWithin(HOUR_MILLIS).size());
+        assertEquals(1L, cache.getStats().get("misses"));
+        assertEquals(1L, cache.getStats().get("hits"));
+    }
+
+    @Test
+    public void forgetsDevicesNotSeenWithinTheTimeToLive() {
+        DiscoveredDeviceCache cache = new DiscoveredDeviceCache(HOUR_MILLIS, 10);
+        cache.recordSeen(device("AA", 2 * HOUR_MILLIS));
+        cache.recordSeen(device("BB", 0));
+        cache.recordScanFinished();
+
+        List<DiscoveredDevice> devices = cache.getDevicesSeenWithin(HOUR_MILLIS);
+
+        assertEquals(1, devices.size());
+        assertEquals("BB", devices.get(0).getAddress());
+        assertEquals(1, cache.getStats().get("devices"));
+    }
+
+    @Test
+    public void onlyReturnsDevicesSeenWithinTheRequestedAge() {
+        DiscoveredDeviceCache cache = new DiscoveredDeviceCache(HOUR_MILLIS, 10);
+        cache.recordSeen(device("AA", 30 * 60 * 1000));
+        cache.recordSeen(device("BB", 0));
+        cache.recordScanFinished();
+
+        assertEquals(1, cache.getDevicesSeenWithin(60 * 1000).size());
+        assertEquals(2, cache.getDevicesSeenWithin(HOUR_MILLIS).size());
+    }
+
+    @Test
+    public void dropsTheLeastRecentlySeenDeviceWhenFull() {
+        DiscoveredDeviceCache cache = new DiscoveredDeviceCache(HOUR_MILLIS, 2);
+        cache.recordSeen(device("AA", 0));
+        cache.recordSeen(device("BB", 0));
+
+        // Seen again, so BB is now the least recently seen
+        cache.recordSeen(device("AA", 0));
+        cache.recordSeen(device("CC", 0));
+        cache.recordScanFinished();
+
+        List<DiscoveredDevice> devices = cache.getDevicesSeenWithin(HOUR_MILLIS);
+
+        assertEquals(2, devices.size());
+        assertEquals("AA", devices.get(0).getAddress());
+        assertEquals("CC", devices.get(1).getAddress());
+    }
+
+    @Test
+    public void keepsOneEntryPerAddressWithTheLatestSignalStrengthAndClass() {
+        DiscoveredDeviceCache cache = new DiscoveredDeviceCache(HOUR_MILLIS, 10);
+        cache.recordSeen(device("AA", 0, (short) -40, 0x200));
+        cache.recordSeen(device("BB", 0, (short) -50, 0x100));
+        cache.recordSeen(device("AA", 0, (short) -70, 0x5a020c));
+        cache.recordScanFinished();
+
+        List<DiscoveredDevice> devices = cache.getDevicesSeenWithin(HOUR_MILLIS);
+
+        assertEquals(2, devices.size());
+        assertEquals("BB", devices.get(0).getAddress());
+        assertEquals("AA", devices.get(1).getAddress());
+        assertEquals(-70, devices.get(1).getRssi());
+        assertEquals(0x5a020c, devices.get(1).getDeviceClass());
+    }
+
+    @Test
+    public void keepsTheSignalStrengthAndClassALaterReportLacks() {
+        DiscoveredDeviceCache cache = new DiscoveredDeviceCache(HOUR_MILLIS, 10);
+        cache.recordSeen(device("AA", HOUR_MILLIS / 2, (short) -40, 0x200));
+        cache.recordSeen(device("AA", 0));
+        cache.recordScanFinished();
+
+        List<DiscoveredDevice> devices = cache.getDevicesSeenWithin(60 * 1000);
+
+        // Counts as seen by the later report
+        assertEquals(1, devices.size());
+        assertEquals(-40, devices.get(0).getRssi());
+        assertEquals(0x200, devices.get(0).getDeviceClass());
+    }
+
+    private static DiscoveredDevice device(String address, long ageMillis) {
+        return device(address, ageMillis, DiscoveredDevice.UNKNOWN_RSSI, DiscoveredDevice.UNKNOWN_DEVICE_CLASS);
+    }
+
+    private static DiscoveredDevice device(String address, long ageMillis, short rssi, int deviceClass) {
+        BluetoothDevice device = mock(BluetoothDevice.class);
+        when(device.getAddress()).thenReturn(address);
+
+        return new DiscoveredDevice(device, rssi, deviceClass, System.currentTimeMillis() - ageMillis);
+    }
+}
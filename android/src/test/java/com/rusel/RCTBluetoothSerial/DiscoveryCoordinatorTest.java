@@ -0,0 +1,296 @@
+package com.rusel.RCTBluetoothSerial;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DiscoveryCoordinatorTest {
+
+    private static final long HOUR_MILLIS = 60 * 60 * 1000;
+
+    private Context context;
+    private BluetoothAdapter bluetoothAdapter;
+    private DiscoveredDeviceCache cache;
+    private RadioScheduler radioScheduler;
+    private DiscoveryCoordinator coordinator;
+
+    @Before
+    public void setUp() {
+        context = mock(Context.class);
+        bluetoothAdapter = mock(BluetoothAdapter.class);
+        when(bluetoothAdapter.isEnabled()).thenReturn(true);
+        when(bluetoothAdapter.startDiscovery()).thenReturn(true);
+
+        cache = new DiscoveredDeviceCache(HOUR_MILLIS, 10);
+        radioScheduler = new RadioScheduler(true, false);
+        coordinator = new DiscoveryCoordinator(context, bluetoothAdapter, cache, radioScheduler, HOUR_MILLIS);
+    }
+
+    @Test
+    public void sendsAJoiningRequestTheDevicesFoundSoFarThenTheResult() {
+        RecordingHandler first = new RecordingHandler();
+        RecordingHandler second = new RecordingHandler();
+
+        coordinator.discover(first);
+        BroadcastReceiver receiver = registeredReceiver();
+
+        receiver.onReceive(context, deviceFound("AA"));
+        coordinator.discover(second);
+        receiver.onReceive(context, deviceFound("BB"));
+        receiver.onReceive(context, deviceFound("AA"));
+        receiver.onReceive(context, action(BluetoothAdapter.ACTION_DISCOVERY_FINISHED));
+
+        assertEquals("found AA, found BB, discovered 2", first.describe());
+        assertEquals("found AA, found BB, discovered 2", second.describe());
+        verify(bluetoothAdapter, times(1)).startDiscovery();
+        assertEquals(2, cache.getDevicesSeenWithin(HOUR_MILLIS).size());
+    }
+
+    @Test
+    public void reportsAnInquiryThatWouldNotStartAsAFailure() {
+        when(bluetoothAdapter.startDiscovery()).thenReturn(false);
+        RecordingHandler handler = new RecordingHandler();
+
+        coordinator.discover(handler);
+
+        assertEquals("failed Could not start discovery.", handler.describe());
+        assertEquals(0, handler.callsWithLockHeld);
+        verify(context).unregisterReceiver(any(BroadcastReceiver.class));
+
+        // Not a finished scan, so nothing can be answered from the cache
+        assertNull(cache.getDevicesSeenWithin(HOUR_MILLIS));
+    }
+
+    @Test
+    public void defersTheInquiryWhileTheRadioIsBusy() {
+        radioScheduler.connectStarted("CC");
+        RecordingHandler handler = new RecordingHandler();
+
+        coordinator.discover(handler);
+        verify(bluetoothAdapter, never()).startDiscovery();
+
+        radioScheduler.connectFinished("CC");
+        verify(bluetoothAdapter).startDiscovery();
+
+        registeredReceiver().onReceive(context, action(BluetoothAdapter.ACTION_DISCOVERY_FINISHED));
+        assertEquals("discovered 0", handler.describe());
+    }
+
+    @Test
+    public void resumesASuspendedScanOnceTheCancelledInquiryHasEnded() {
+        RecordingHandler handler = new RecordingHandler();
+
+        coordinator.discover(handler);
+        BroadcastReceiver receiver = registeredReceiver();
+        receiver.onReceive(context, deviceFound("AA"));
+
+        radioScheduler.connectStarted("CC");
+        verify(bluetoothAdapter).cancelDiscovery();
+
+        // The end of the cancelled inquiry, not of the scan
+        radioScheduler.connectFinished("CC");
+        receiver.onReceive(context, action(BluetoothAdapter.ACTION_DISCOVERY_FINISHED));
+        verify(bluetoothAdapter, times(2)).startDiscovery();
+        assertEquals("found AA", handler.describe());
+
+        receiver.onReceive(context, action(BluetoothAdapter.ACTION_DISCOVERY_FINISHED));
+        assertEquals("found AA, discovered 1", handler.describe());
+    }
+
+    @Test
+    public void failsASuspendedScanWhoseInquiryWouldNotResume() {
+        RecordingHandler handler = new RecordingHandler();
+
+        coordinator.discover(handler);
+        BroadcastReceiver receiver = registeredReceiver();
+
+        radioScheduler.connectStarted("CC");
+        when(bluetoothAdapter.startDiscovery()).thenReturn(false);
+        radioScheduler.connectFinished("CC");
+        receiver.onReceive(context, action(BluetoothAdapter.ACTION_DISCOVERY_FINISHED));
+
+        assertEquals("failed Could not start discovery.", handler.describe());
+        assertEquals(0, handler.callsWithLockHeld);
+        assertNull(cache.getDevicesSeenWithin(HOUR_MILLIS));
+    }
+
+    @Test
+    public void ignoresTheEndOfAnotherInquiryWhileDeferred() {
+        radioScheduler.connectStarted("CC");
+        RecordingHandler handler = new RecordingHandler();
+
+        coordinator.discover(handler);
+        BroadcastReceiver receiver = registeredReceiver();
+
+        // e.g. another app's inquiry, or one cancelled by the module
+        receiver.onReceive(context, action(BluetoothAdapter.ACTION_DISCOVERY_FINISHED));
+        assertEquals("", handler.describe());
+        assertNull(cache.getDevicesSeenWithin(HOUR_MILLIS));
+
+        radioScheduler.connectFinished("CC");
+        receiver.onReceive(context, deviceFound("AA"));
+        receiver.onReceive(context, action(BluetoothAdapter.ACTION_DISCOVERY_FINISHED));
+        assertEquals("found AA, discovered 1", handler.describe());
+    }
+
+    @Test
+    public void swallowsOnlyTheEndOfTheCancelledInquiryWhileSuspended() {
+        RecordingHandler handler = new RecordingHandler();
+
+        coordinator.discover(handler);
+        BroadcastReceiver receiver = registeredReceiver();
+        receiver.onReceive(context, deviceFound("AA"));
+
+        radioScheduler.connectStarted("CC");
+        receiver.onReceive(context, action(BluetoothAdapter.ACTION_DISCOVERY_FINISHED));
+        receiver.onReceive(context, action(BluetoothAdapter.ACTION_DISCOVERY_FINISHED));
+        assertEquals("found AA", handler.describe());
+        verify(bluetoothAdapter, times(1)).startDiscovery();
+
+        radioScheduler.connectFinished("CC");
+        verify(bluetoothAdapter, times(2)).startDiscovery();
+
+        receiver.onReceive(context, action(BluetoothAdapter.ACTION_DISCOVERY_FINISHED));
+        assertEquals("found AA, discovered 1", handler.describe());
+    }
+
+    @Test(timeout = 10000)
+    public void failsAScanHeldBackPastTheMaximumDeferral() throws Exception {
+        // Busy for as long as a connection is open
+        RadioScheduler transferScheduler = new RadioScheduler(true, true);
+        coordinator = new DiscoveryCoordinator(context, bluetoothAdapter, cache, transferScheduler, 50);
+        transferScheduler.transferStarted("CC");
+        RecordingHandler handler = new RecordingHandler();
+
+        coordinator.discover(handler);
+
+        assertTrue(handler.ended.await(5, TimeUnit.SECONDS));
+        assertEquals("failed Discovery was held back for too long while the radio was busy.",
+                handler.describe());
+        verify(bluetoothAdapter, never()).startDiscovery();
+        verify(context).unregisterReceiver(any(BroadcastReceiver.class));
+        assertNull(cache.getDevicesSeenWithin(HOUR_MILLIS));
+
+        // Nothing more once it has been given up
+        transferScheduler.transferFinished("CC");
+        verify(bluetoothAdapter, never()).startDiscovery();
+    }
+
+    @Test(timeout = 10000)
+    public void doesNotFailAScanThatStartedBeforeTheMaximumDeferral() throws Exception {
+        coordinator = new DiscoveryCoordinator(context, bluetoothAdapter, cache, radioScheduler, 50);
+        radioScheduler.connectStarted("CC");
+        RecordingHandler handler = new RecordingHandler();
+
+        coordinator.discover(handler);
+        radioScheduler.connectFinished("CC");
+
+        assertFalse(handler.ended.await(200, TimeUnit.MILLISECONDS));
+        assertEquals("", handler.describe());
+    }
+
+    private BroadcastReceiver registeredReceiver() {
+        ArgumentCaptor<BroadcastReceiver> receiver = ArgumentCaptor.forClass(BroadcastReceiver.class);
+        verify(context).registerReceiver(receiver.capture(), any(IntentFilter.class));
+
+        return receiver.getValue();
+    }
+
+    private static Intent action(String action) {
+        Intent intent = mock(Intent.class);
+        when(intent.getAction()).thenReturn(action);
+
+        return intent;
+    }
+
+    private static Intent deviceFound(String address) {
+        BluetoothDevice device = mock(BluetoothDevice.class);
+        when(device.getAddress()).thenReturn(address);
+
+        Intent intent = action(BluetoothDevice.ACTION_FOUND);
+        when(intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE)).thenReturn(device);
+        when(intent.getShortExtra(BluetoothDevice.EXTRA_RSSI, DiscoveredDevice.UNKNOWN_RSSI))
+                .thenReturn(DiscoveredDevice.UNKNOWN_RSSI);
+
+        return intent;
+    }
+
+    private class RecordingHandler implements DiscoveredBluetoothDevicesHandler {
+
+        private final List<String> calls = new ArrayList<>();
+        private final CountDownLatch ended = new CountDownLatch(1);
+        private int callsWithLockHeld = 0;
+
+        @Override
+        public void onDeviceFound(DiscoveredDevice device) {
+            calls.add("found " + device.getAddress());
+        }
+
+        @Override
+        public void onDiscovered(List<DiscoveredDevice> devices) {
+            record("discovered " + devices.size());
+        }
+
+        @Override
+        public void onDiscoveryFailed(String reason) {
+            record("failed " + reason);
+        }
+
+        @Override
+        public void onBluetoothDisabled() {
+            record("disabled");
+        }
+
+        @Override
+        public void onBluetoothNotSupported() {
+            record("notSupported");
+        }
+
+        private void record(String call) {
+            if (Thread.holdsLock(coordinator)) {
+                callsWithLockHeld++;
+            }
+
+            synchronized (this) {
+                calls.add(call);
+            }
+            ended.countDown();
+        }
+
+        synchronized String describe() {
+            StringBuilder description = new StringBuilder();
+
+            for (String call : calls) {
+                if (description.length() > 0) {
+                    description.append(", ");
+                }
+                description.append(call);
+            }
+
+            return description.toString();
+        }
+    }
+}
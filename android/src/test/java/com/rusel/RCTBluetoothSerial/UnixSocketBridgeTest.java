@@ -0,0 +1,373 @@
+package com.rusel.RCTBluetoothSerial;
+
+import com.rusel.RCTBluetoothSerial.metrics.ConnectionStats;
+import com.rusel.RCTBluetoothSerial.mux.MultiplexedLink;
+import com.rusel.RCTBluetoothSerial.pump.MemoryBudget;
+import com.rusel.RCTBluetoothSerial.pump.PumpExecutor;
+import com.rusel.RCTBluetoothSerial.transport.InMemoryBluetoothLinkConnector;
+import com.rusel.RCTBluetoothSerial.transport.InMemoryConnection;
+import com.rusel.RCTBluetoothSerial.transport.InMemoryLocalEndpointConnector;
+import com.rusel.RCTBluetoothSerial.transport.LocalEndpoint;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class UnixSocketBridgeTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private InMemoryLocalEndpointConnector outgoingEndpoints;
+    private InMemoryLocalEndpointConnector incomingEndpoints;
+    private InMemoryBluetoothLinkConnector remoteDevices;
+    private RecordingNotifier notifier;
+    private UnixSocketBridge bridge;
+
+    @Before
+    public void setUp() {
+        startBridge(new BluetoothSerialConfiguration("/unused"));
+    }
+
+    private void startBridge(BluetoothSerialConfiguration configuration) {
+        outgoingEndpoints = new InMemoryLocalEndpointConnector();
+        incomingEndpoints = new InMemoryLocalEndpointConnector();
+        remoteDevices = new InMemoryBluetoothLinkConnector();
+        notifier = new RecordingNotifier();
+
+        bridge = new UnixSocketBridge(
+                outgoingEndpoints,
+                incomingEndpoints,
+                remoteDevices,
+                notifier,
+                configuration
+        );
+
+        bridge.listenForOutgoingConnections();
+    }
+
+    @After
+    public void tearDown() {
+        bridge.closeAllOpenConnections();
+    }
+
+    @Test(timeout = 10000)
+    public void relaysBytesBothWaysOverOutgoingConnection() throws Exception {
+        bridge.connectToBluetoothAddress("AA");
+
+        InMemoryConnection remote = remoteDevices.accept(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        InMemoryConnection local = outgoingEndpoints.accept(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(remote);
+        assertNotNull(local);
+        assertEquals("connected AA outgoing", notifier.next());
+
+        byte[] toDevice = bytes(100 * 1024, 1);
+        byte[] toLocal = bytes(100 * 1024, 7);
+
+        writeInBackground(local.getOutputStream(), toDevice);
+        writeInBackground(remote.getOutputStream(), toLocal);
+
+        assertArrayEquals(toDevice, readFully(remote.getInputStream(), toDevice.length));
+        assertArrayEquals(toLocal, readFully(local.getInputStream(), toLocal.length));
+    }
+
+    @Test(timeout = 10000)
+    public void deliversCoalescedWritesOnceTheirDelayRunsOut() throws Exception {
+        bridge.closeAllOpenConnections();
+
+        BluetoothSerialConfiguration configuration = new BluetoothSerialConfiguration("/unused");
+        configuration.setWriteCoalescingEnabled(true);
+        configuration.setCoalesceTargetBytes(4096);
+        configuration.setCoalesceMaxDelayMicros(10000);
+        startBridge(configuration);
+
+        bridge.connectToBluetoothAddress("AA");
+
+        InMemoryConnection remote = remoteDevices.accept(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        InMemoryConnection local = outgoingEndpoints.accept(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals("connected AA outgoing", notifier.next());
+
+        byte[] message = bytes(10, 5);
+        local.getOutputStream().write(message);
+
+        assertArrayEquals(message, readFully(remote.getInputStream(), message.length));
+
+        // The connection's deadline flusher stops along with its pumps
+        remote.close();
+        assertEquals("disconnected AA", notifier.next());
+
+        while (bridge.getPumpExecutor().getActiveThreadCount() > 0) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void relaysBytesOverIncomingConnection() throws Exception {
+        InMemoryConnection[] ends = InMemoryConnection.pair("BB");
+        bridge.createIncomingServerConnection(ends[0]);
+
+        InMemoryConnection local = incomingEndpoints.accept(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(local);
+        assertEquals("connected BB incoming", notifier.next());
+
+        byte[] message = bytes(1000, 3);
+        ends[1].getOutputStream().write(message);
+
+        assertArrayEquals(message, readFully(local.getInputStream(), message.length));
+    }
+
+    @Test(timeout = 10000)
+    public void reportsDisconnectWhenDeviceCloses() throws Exception {
+        bridge.connectToBluetoothAddress("AA");
+
+        InMemoryConnection remote = remoteDevices.accept(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals("connected AA outgoing", notifier.next());
+
+        remote.close();
+
+        assertEquals("disconnected AA", notifier.next());
+    }
+
+    @Test(timeout = 10000)
+    public void reportsFailureForUnreachableDevice() throws Exception {
+        remoteDevices.setUnreachable("CC", true);
+
+        bridge.connectToBluetoothAddress("CC");
+
+        assertEquals("failed CC outgoing Page timeout.", notifier.next());
+    }
+
+    @Test(timeout = 10000)
+    public void joinsRequestsForAnAddressOntoTheAttemptInProgress() throws Exception {
+        remoteDevices.setPageDelayMillis(200);
+        RecordingResults results = new RecordingResults();
+
+        bridge.connectToBluetoothAddress("AA", results);
+        bridge.connectToBluetoothAddress("AA", results);
+        bridge.connectToBluetoothAddress("AA", results);
+
+        assertNotNull(remoteDevices.accept(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("connected AA outgoing", notifier.next());
+        assertEquals("AA connected", results.next());
+        assertEquals("AA connected", results.next());
+        assertEquals("AA connected", results.next());
+
+        // Only the one link was dialled
+        assertNull(remoteDevices.accept(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void doesNotDialAgainOnceConnected() throws Exception {
+        RecordingResults results = new RecordingResults();
+
+        bridge.connectToBluetoothAddress("AA", results);
+        InMemoryConnection remote = remoteDevices.accept(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals("connected AA outgoing", notifier.next());
+        assertEquals("AA connected", results.next());
+
+        bridge.connectToBluetoothAddress("AA", results);
+        assertEquals("failed AA outgoing Already connected.", notifier.next());
+        assertEquals("AA failed Already connected.", results.next());
+        assertNull(remoteDevices.accept(100, TimeUnit.MILLISECONDS));
+
+        // The first connection is still the one registered for the address
+        remote.close();
+        assertEquals("disconnected AA", notifier.next());
+    }
+
+    @Test(timeout = 10000)
+    public void reportsEachAddressOfABatchOnce() throws Exception {
+        remoteDevices.setUnreachable("CC", true);
+        final BlockingQueue<List<ConnectResult>> batches = new LinkedBlockingQueue<>();
+
+        bridge.connectToBluetoothAddresses(Arrays.asList("AA", "CC", "AA", "BB"), 2, new ConnectBatch.Listener() {
+            @Override
+            public void onBatchComplete(List<ConnectResult> results) {
+                batches.add(results);
+            }
+        });
+
+        List<ConnectResult> batch = batches.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(batch);
+
+        Map<String, String> outcomes = new TreeMap<>();
+        for (ConnectResult result : batch) {
+            outcomes.put(result.getRemoteAddress(), result.isSuccess() ? "connected" : result.getReason());
+        }
+
+        assertEquals(3, batch.size());
+        assertEquals("{AA=connected, BB=connected, CC=Page timeout.}", outcomes.toString());
+        assertNull(batches.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void metersBothSidesOfAMultiplexedLink() throws Exception {
+        bridge.closeAllOpenConnections();
+
+        BluetoothSerialConfiguration configuration = new BluetoothSerialConfiguration("/unused");
+        configuration.setMultiplexingEnabled(true);
+        startBridge(configuration);
+
+        bridge.connectToBluetoothAddress("AA");
+
+        // The device's end of the link, with its own local side
+        final InMemoryLocalEndpointConnector deviceEndpoints = new InMemoryLocalEndpointConnector();
+        PumpExecutor devicePumps = new PumpExecutor("device", 4, PumpExecutor.QueuePolicy.REJECT, 0, 1000);
+        InMemoryConnection remote = remoteDevices.accept(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        MultiplexedLink deviceLink = new MultiplexedLink("phone", remote, remote.getInputStream(),
+                remote.getOutputStream(), false, configuration.getMultiplexChannelWindow(),
+                configuration.getMultiplexMaxFrameSize(), new MemoryBudget(1024 * 1024), devicePumps,
+                new MultiplexedLink.Listener() {
+                    @Override
+                    public LocalEndpoint onChannelRequested(MultiplexedLink link, int channelId) {
+                        return deviceEndpoints.connect();
+                    }
+
+                    @Override
+                    public void onChannelOpened(MultiplexedLink link, int channelId, boolean remotelyOpened) {
+                    }
+
+                    @Override
+                    public void onChannelClosed(MultiplexedLink link, int channelId) {
+                    }
+
+                    @Override
+                    public void onLinkClosed(MultiplexedLink link, IOException failure) {
+                    }
+                });
+        deviceLink.start();
+
+        try {
+            InMemoryConnection local = outgoingEndpoints.accept(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            InMemoryConnection deviceLocal = deviceEndpoints.accept(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertEquals("connected AA outgoing", notifier.next());
+
+            byte[] toDevice = bytes(1000, 1);
+            byte[] toLocal = bytes(2000, 7);
+
+            local.getOutputStream().write(toDevice);
+            assertArrayEquals(toDevice, readFully(deviceLocal.getInputStream(), toDevice.length));
+
+            deviceLocal.getOutputStream().write(toLocal);
+            assertArrayEquals(toLocal, readFully(local.getInputStream(), toLocal.length));
+
+            // Each call is counted once it returns, which may be just after the bytes arrived, so
+            // this waits for the counts rather than failing straight away
+            ConnectionStats stats = connectionStats();
+            while (stats.getBytesToBluetooth() < toDevice.length
+                    || stats.getBytesFromBluetooth() < toLocal.length
+                    || stats.getLocalReads() == 0
+                    || stats.getLocalWrites() == 0) {
+                Thread.sleep(10);
+                stats = connectionStats();
+            }
+
+            assertEquals(0, stats.getLocalReadFailures() + stats.getLocalWriteFailures());
+        } finally {
+            deviceLink.close();
+            devicePumps.shutdown();
+        }
+    }
+
+    private ConnectionStats connectionStats() {
+        @SuppressWarnings("unchecked")
+        List<ConnectionStats> connections = (List<ConnectionStats>) bridge.getStats().get("connections");
+        assertEquals(1, connections.size());
+
+        return connections.get(0);
+    }
+
+    private static byte[] bytes(int length, int seed) {
+        byte[] bytes = new byte[length];
+
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (i * seed);
+        }
+
+        return bytes;
+    }
+
+    private static void writeInBackground(final OutputStream outputStream, final byte[] bytes) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    outputStream.write(bytes);
+                    outputStream.flush();
+                } catch (IOException e) {
+                    // Reported by the reading side coming up short
+                }
+            }
+        }).start();
+    }
+
+    private static byte[] readFully(InputStream inputStream, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int offset = 0;
+
+        while (offset < length) {
+            int read = inputStream.read(bytes, offset, length - offset);
+
+            if (read == -1) {
+                return Arrays.copyOf(bytes, offset);
+            }
+
+            offset += read;
+        }
+
+        return bytes;
+    }
+
+    private static class RecordingResults implements ConnectResultListener {
+
+        private final BlockingQueue<String> results = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onConnectResult(String remoteAddress, boolean success, String reason) {
+            results.add(remoteAddress + (success ? " connected" : " failed " + reason));
+        }
+
+        String next() throws InterruptedException {
+            return results.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private static class RecordingNotifier implements ConnectionStatusNotifier {
+
+        private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onConnectionSuccess(String remoteAddress, int channelId, boolean incoming) {
+            events.add("connected " + remoteAddress + (incoming ? " incoming" : " outgoing"));
+        }
+
+        @Override
+        public void onConnectionFailure(String remoteAddress, int channelId, String reason, boolean incoming) {
+            events.add("failed " + remoteAddress + (incoming ? " incoming " : " outgoing ") + reason);
+        }
+
+        @Override
+        public void onDisconnect(String remoteAddress, int channelId, String reason) {
+            events.add("disconnected " + remoteAddress);
+        }
+
+        String next() throws InterruptedException {
+            return events.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.rusel.RCTBluetoothSerial.ConnectResult;
+import com.rusel.RCTBluetoothSerial.trace.Tracer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CborControlCodecTest {
+
+    private static final int MAX_MESSAGE_SIZE = 1024 * 1024;
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private final ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+    private final CborControlCodec codec = new CborControlCodec(MAX_MESSAGE_SIZE);
+
+    private ControlRequestParser requestParser;
+
+    @Before
+    public void setUp() {
+        // As configured by the control socket
+        jsonMapper.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
+        jsonMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        jsonMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+
+        // Only parsed here, never carried out
+        ControlCommandRegistry commandRegistry = new ControlCommandRegistry(jsonMapper);
+        commandRegistry.register("useEncoding", EncodingArguments.class, CborControlCodecTest.<EncodingArguments>unused());
+        commandRegistry.register("subscribe", SubscribeArguments.class, CborControlCodecTest.<SubscribeArguments>unused());
+        commandRegistry.register("connect", RemoteAddressArguments.class,
+                CborControlCodecTest.<RemoteAddressArguments>unused());
+        commandRegistry.register("connectMany", ConnectManyArguments.class,
+                CborControlCodecTest.<ConnectManyArguments>unused());
+        commandRegistry.register("discoverDevices", DiscoverDevicesArguments.class,
+                CborControlCodecTest.<DiscoverDevicesArguments>unused());
+        commandRegistry.register("makeDiscoverable", MakeDiscoverableArguments.class,
+                CborControlCodecTest.<MakeDiscoverableArguments>unused());
+        commandRegistry.register("isEnabled", NoArguments.class, CborControlCodecTest.<NoArguments>unused());
+        commandRegistry.register("setRetryPolicy", RetryPolicyArguments.class,
+                CborControlCodecTest.<RetryPolicyArguments>unused());
+        commandRegistry.register("cancelConnect", RemoteAddressArguments.class,
+                CborControlCodecTest.<RemoteAddressArguments>unused());
+        commandRegistry.register("stats", NoArguments.class, CborControlCodecTest.<NoArguments>unused());
+        commandRegistry.register("trace", TraceArguments.class, CborControlCodecTest.<TraceArguments>unused());
+
+        requestParser = new ControlRequestParser(jsonMapper, commandRegistry);
+    }
+
+    @Test
+    public void decodesEachCommandAsItsJsonWouldBe() throws Exception {
+        String[] commands = {
+                "{\"command\":\"useEncoding\",\"requestId\":1,\"arguments\":{\"encoding\":\"json\"}}",
+                "{\"command\":\"subscribe\",\"requestId\":\"s\",\"arguments\":{\"events\":[\"connected\"]}}",
+                "{\"command\":\"connect\",\"arguments\":{\"remoteAddress\":\"AA:BB\"}}",
+                "{\"command\":\"connectMany\",\"arguments\":{\"remoteAddresses\":[\"AA\",\"BB\"],\"parallelism\":1}}",
+                "{\"command\":\"discoverDevices\",\"arguments\":{\"stream\":true,\"sortBySignalStrength\":false,"
+                        + "\"maxAgeSeconds\":30}}",
+                "{\"command\":\"makeDiscoverable\",\"arguments\":{\"forTime\":120}}",
+                "{\"command\":\"isEnabled\",\"requestId\":{\"n\":[1,2.5,null]}}",
+                "{\"command\":\"setRetryPolicy\",\"arguments\":{\"maxRetries\":3,\"initialDelayMillis\":100,"
+                        + "\"maxDelayMillis\":5000000000,\"multiplier\":1.5,\"jitter\":0.25}}",
+                "{\"command\":\"cancelConnect\",\"requestId\":-7,\"arguments\":{\"remoteAddress\":\"AA\"}}",
+                "{\"command\":\"stats\",\"arguments\":{}}",
+                "{\"arguments\":{\"level\":\"debug\"},\"command\":\"trace\"}"
+        };
+
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        for (String command : commands) {
+            writeFrame(frames, cborMapper.writeValueAsBytes(jsonMapper.readTree(command)));
+        }
+
+        ControlMessageReader reader = codec.createReader(new ByteArrayInputStream(frames.toByteArray()));
+
+        for (String command : commands) {
+            ControlRequest fromCbor = requestParser.parse(reader.next());
+            ControlRequest fromJson = requestParser.parse(jsonMapper.getFactory().createParser(command));
+
+            assertEquals(command, fromJson.getCommand(), fromCbor.getCommand());
+            assertEquals(command, fromJson.getRequestId(), fromCbor.getRequestId());
+            assertNull(command, fromCbor.getInvalidArguments());
+            assertEquals(command, jsonMapper.valueToTree(fromJson.getArguments()),
+                    jsonMapper.valueToTree(fromCbor.getArguments()));
+        }
+    }
+
+    @Test
+    public void encodesEachResponseAndEventAsItsJsonWouldBe() throws Exception {
+        List<BluetoothControlCommand> messages = new ArrayList<>();
+
+        messages.add(new BluetoothControlCommand("hello", arguments("encodings", Arrays.asList("json", "cbor"))));
+        messages.add(new EncodingChange(codec, 1));
+
+        Map<String, Object> connected = arguments("remoteAddress", "AA");
+        connected.put("channel", 3);
+        connected.put("isIncoming", true);
+        messages.add(new LifecycleEvent(LifecycleEvent.CONNECTED, "AA", 3, connected));
+
+        Map<String, Object> failure = arguments("remoteAddress", "BB");
+        failure.put("channel", 0);
+        failure.put("reason", "Page timeout.");
+        failure.put("isIncoming", false);
+        messages.add(new LifecycleEvent(LifecycleEvent.CONNECTION_FAILURE, "BB", 0, failure));
+
+        Map<String, Object> disconnected = arguments("remoteAddress", "CC");
+        disconnected.put("channel", 0);
+        disconnected.put("reason", null);
+        disconnected.put("isIncoming", null);
+        messages.add(new LifecycleEvent(LifecycleEvent.DISCONNECTED, "CC", 0, disconnected));
+
+        messages.add(new BluetoothControlCommand("connectQueued", arguments("remoteAddress", "AA"), "q"));
+        messages.add(new BluetoothControlCommand("connectManyResult", arguments("results", Arrays.asList(
+                new ConnectResult("AA", true, null), new ConnectResult("BB", false, "Page timeout.")))));
+
+        Map<String, Object> cancelled = arguments("remoteAddress", "AA");
+        cancelled.put("cancelled", false);
+        messages.add(new BluetoothControlCommand("connectCancelled", cancelled, 2L));
+
+        Map<String, Object> retryPolicy = arguments("maxRetries", 3);
+        retryPolicy.put("initialDelayMillis", 5000000000L);
+        retryPolicy.put("multiplier", 1.5);
+        messages.add(new BluetoothControlCommand("retryPolicy", retryPolicy));
+
+        messages.add(new BluetoothControlCommand("subscribed", arguments("events", null)));
+        messages.add(new BluetoothControlCommand("deviceFound",
+                arguments("device", new BluetoothDeviceProperties("AA", "\u00dcn\u00efcode \u2603", -40, 0x5a020c))));
+        messages.add(new BluetoothControlCommand("discovered", arguments("devices", Arrays.asList(
+                new BluetoothDeviceProperties("AA", "phone", -40, 0x5a020c),
+                new BluetoothDeviceProperties("BB", "")))));
+        messages.add(new BluetoothControlCommand("discoveryDone", arguments("count", 2)));
+        messages.add(new BluetoothControlCommand("discoverable", arguments("discoverableUntil", 1234567890123L)));
+        messages.add(new BluetoothControlCommand("isEnabled", arguments("enabled", true), Collections.singletonList(1)));
+        messages.add(new BluetoothControlCommand("stats",
+                arguments("bridge", arguments("connections", arguments("AA", arguments("bytes", 1L << 40))))));
+
+        // Whatever earlier tests left in the trace, as the 'trace' command would send it
+        Map<String, Object> trace = arguments("level", Tracer.levelName(Tracer.getLevel()));
+        trace.put("events", Tracer.snapshot());
+        messages.add(new BluetoothControlCommand("trace", trace));
+
+        Map<String, Object> error = arguments("command", "connect");
+        error.put("reason", "Missing argument: remoteAddress");
+        messages.add(new BluetoothControlCommand("error", error, 3));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ControlMessageWriter writer = codec.createWriter(output);
+        for (BluetoothControlCommand message : messages) {
+            writer.write(message);
+        }
+        writer.flush();
+
+        // Read back as the other side would, with the length of each message before it
+        ControlMessageReader reader = codec.createReader(new ByteArrayInputStream(output.toByteArray()));
+
+        for (BluetoothControlCommand message : messages) {
+            JsonNode expected = jsonMapper.readTree(jsonMapper.writeValueAsBytes(message));
+            JsonNode actual = reader.next().readValueAsTree();
+
+            assertEquals(message.getCommand(), expected, actual);
+        }
+    }
+
+    @Test
+    public void rejectsAMessageLongerThanTheLimit() throws Exception {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        writeFrame(frames, new byte[MAX_MESSAGE_SIZE + 1]);
+
+        ControlMessageReader reader = codec.createReader(new ByteArrayInputStream(frames.toByteArray()));
+
+        try {
+            reader.next();
+            fail("Read a message over the limit");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Control message too large"));
+        }
+    }
+
+    private static void writeFrame(ByteArrayOutputStream frames, byte[] message) throws IOException {
+        DataOutputStream dataOutputStream = new DataOutputStream(frames);
+        dataOutputStream.writeInt(message.length);
+        dataOutputStream.write(message);
+    }
+
+    private static Map<String, Object> arguments(String name, Object value) {
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put(name, value);
+        return arguments;
+    }
+
+    private static <A> ControlCommandHandler<A> unused() {
+        return new ControlCommandHandler<A>() {
+            @Override
+            public void handle(A arguments, ControlResponder responder) {
+            }
+        };
+    }
+}
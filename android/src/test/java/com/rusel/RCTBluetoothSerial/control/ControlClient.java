@@ -0,0 +1,94 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.rusel.RCTBluetoothSerial.transport.InMemoryConnection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The client's end of a control socket connection. Reads and writes messages in whichever encoding
+ * the test says is in use, as a client would after the 'encoding' response.
+ */
+class ControlClient {
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private final ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+
+    private final InMemoryConnection connection;
+    private final DataInputStream inputStream;
+    private final DataOutputStream outputStream;
+
+    private boolean cbor = false;
+
+    ControlClient(InMemoryConnection connection) {
+        this.connection = connection;
+        this.inputStream = new DataInputStream(connection.getInputStream());
+        this.outputStream = new DataOutputStream(connection.getOutputStream());
+    }
+
+    void useCbor(boolean cbor) {
+        this.cbor = cbor;
+    }
+
+    /**
+     * @param command a command as JSON, sent in the encoding in use.
+     */
+    void send(String command) throws IOException {
+        if (cbor) {
+            byte[] encoded = cborMapper.writeValueAsBytes(jsonMapper.readTree(command));
+            outputStream.writeInt(encoded.length);
+            outputStream.write(encoded);
+        } else {
+            outputStream.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        outputStream.flush();
+    }
+
+    /**
+     * Blocks until the next message has been read.
+     */
+    BluetoothControlCommand next() throws IOException {
+        return jsonMapper.treeToValue(nextTree(), BluetoothControlCommand.class);
+    }
+
+    /**
+     * Blocks until the next message has been read, and returns it as sent, so a test can tell a
+     * field that was left out from one that was null.
+     */
+    JsonNode nextTree() throws IOException {
+        if (cbor) {
+            byte[] encoded = new byte[inputStream.readInt()];
+            inputStream.readFully(encoded);
+
+            return cborMapper.readTree(encoded);
+        }
+
+        // Messages are separated by a blank line, and JSON can't have a raw line break in a string
+        ByteArrayOutputStream message = new ByteArrayOutputStream();
+        int previous = -1;
+
+        while (true) {
+            int next = inputStream.readByte();
+
+            if (next == '\n' && previous == '\n') {
+                break;
+            }
+
+            message.write(next);
+            previous = next;
+        }
+
+        return jsonMapper.readTree(message.toByteArray());
+    }
+
+    void close() {
+        connection.close();
+    }
+}
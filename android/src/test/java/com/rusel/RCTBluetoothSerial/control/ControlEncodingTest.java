@@ -0,0 +1,127 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import com.rusel.RCTBluetoothSerial.RCTBluetoothSerialModule;
+import com.rusel.RCTBluetoothSerial.transport.LocalEndpointConnector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ControlEncodingTest {
+
+    private RCTBluetoothSerialModule module;
+    private InMemoryControlSocket controlSocket;
+    private ControlUnixSocket control;
+    private ControlSession session;
+
+    @Before
+    public void setUp() {
+        module = mock(RCTBluetoothSerialModule.class);
+        when(module.isEnabled()).thenReturn(true);
+
+        controlSocket = new InMemoryControlSocket();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (session != null) {
+            session.stop();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void offersCborInTheFirstMessage() throws Exception {
+        ControlClient client = connect(true);
+
+        BluetoothControlCommand hello = client.next();
+        assertEquals("hello", hello.getCommand());
+        assertEquals(Arrays.asList("json", "cbor"), hello.getArguments().get("encodings"));
+    }
+
+    @Test(timeout = 10000)
+    public void switchesToCborAfterTheReplyAndBack() throws Exception {
+        ControlClient client = connect(true);
+        client.next();
+
+        client.send("{\"command\":\"useEncoding\",\"requestId\":1,\"arguments\":{\"encoding\":\"cbor\"}}");
+
+        // The reply is still JSON
+        BluetoothControlCommand reply = client.next();
+        assertEncoding(reply, "cbor", 1);
+
+        client.useCbor(true);
+
+        client.send("{\"command\":\"isEnabled\",\"requestId\":2}");
+        BluetoothControlCommand isEnabled = client.next();
+        assertEquals("isEnabled", isEnabled.getCommand());
+        assertEquals(2, isEnabled.getRequestId());
+        assertEquals(true, isEnabled.getArguments().get("enabled"));
+
+        control.sendConnectedEvent("AA", 3, true);
+        BluetoothControlCommand connected = client.next();
+        assertEquals("connected", connected.getCommand());
+        assertEquals("AA", connected.getArguments().get("remoteAddress"));
+        assertEquals(3, connected.getArguments().get("channel"));
+
+        client.send("{\"command\":\"useEncoding\",\"requestId\":3,\"arguments\":{\"encoding\":\"json\"}}");
+        assertEncoding(client.next(), "json", 3);
+
+        client.useCbor(false);
+
+        client.send("{\"command\":\"isEnabled\",\"requestId\":4}");
+        assertEquals(4, client.next().getRequestId());
+    }
+
+    @Test(timeout = 10000)
+    public void staysInJsonAfterAnUnknownEncoding() throws Exception {
+        ControlClient client = connect(true);
+        client.next();
+
+        client.send("{\"command\":\"useEncoding\",\"requestId\":1,\"arguments\":{\"encoding\":\"xml\"}}");
+        assertError(client.next(), "Unsupported encoding: xml", 1);
+
+        client.send("{\"command\":\"isEnabled\",\"requestId\":2}");
+        assertEquals(2, client.next().getRequestId());
+    }
+
+    @Test(timeout = 10000)
+    public void refusesCborIfItWasNotOffered() throws Exception {
+        ControlClient client = connect(false);
+
+        // No hello, so the first message is the reply
+        client.send("{\"command\":\"useEncoding\",\"requestId\":1,\"arguments\":{\"encoding\":\"cbor\"}}");
+        assertError(client.next(), "Unsupported encoding: cbor", 1);
+
+        client.send("{\"command\":\"isEnabled\",\"requestId\":2}");
+        assertEquals(2, client.next().getRequestId());
+    }
+
+    private ControlClient connect(boolean offerBinaryEncoding) throws InterruptedException {
+        control = new ControlUnixSocket(Collections.<String, LocalEndpointConnector>singletonMap("/control",
+                controlSocket), module, offerBinaryEncoding);
+        session = control.getSessions().get(0);
+        session.start();
+
+        return controlSocket.accept();
+    }
+
+    private static void assertEncoding(BluetoothControlCommand reply, String encoding, Object requestId) {
+        assertEquals("encoding", reply.getCommand());
+        assertEquals(encoding, reply.getArguments().get("encoding"));
+        assertEquals(requestId, reply.getRequestId());
+    }
+
+    private static void assertError(BluetoothControlCommand reply, String reason, Object requestId) {
+        assertEquals("error", reply.getCommand());
+        assertEquals("useEncoding", reply.getArguments().get("command"));
+        assertEquals(reason, reply.getArguments().get("reason"));
+        assertEquals(requestId, reply.getRequestId());
+    }
+}
@@ -0,0 +1,113 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ControlEventQueueTest {
+
+    private final ControlEventQueue queue = new ControlEventQueue(16);
+
+    @Test
+    public void keepsOnlyTheLatestStateOfEachConnection() throws Exception {
+        queue.addEvent(event(LifecycleEvent.CONNECTED, "AA", 0));
+        queue.addEvent(event(LifecycleEvent.CONNECTED, "BB", 0));
+        queue.addEvent(event(LifecycleEvent.DISCONNECTED, "AA", 0));
+
+        assertEquals("disconnected AA#0, connected BB#0", take());
+        assertEquals(1L, queue.getStats().get("coalesced"));
+    }
+
+    @Test
+    public void keepsTheChannelsOfADeviceApart() throws Exception {
+        queue.addEvent(event(LifecycleEvent.CONNECTED, "AA", 1));
+        queue.addEvent(event(LifecycleEvent.CONNECTED, "AA", 3));
+        queue.addEvent(event(LifecycleEvent.DISCONNECTED, "AA", 1));
+
+        assertEquals("disconnected AA#1, connected AA#3", take());
+    }
+
+    @Test
+    public void doesNotLetARefusedDuplicateHideTheConnection() throws Exception {
+        queue.addEvent(event(LifecycleEvent.CONNECTED, "AA", 0));
+        queue.addEvent(event(LifecycleEvent.CONNECTION_FAILURE, "AA", 0));
+
+        assertEquals("connected AA#0, connectionFailure AA#0", take());
+    }
+
+    @Test
+    public void replacesAWaitingFailureOrDisconnectWithAFailure() throws Exception {
+        queue.addEvent(event(LifecycleEvent.DISCONNECTED, "AA", 0));
+        queue.addEvent(event(LifecycleEvent.CONNECTION_FAILURE, "AA", 0));
+        queue.addEvent(event(LifecycleEvent.CONNECTION_FAILURE, "BB", 0));
+        queue.addEvent(event(LifecycleEvent.CONNECTION_FAILURE, "BB", 0));
+
+        assertEquals("connectionFailure AA#0, connectionFailure BB#0", take());
+    }
+
+    @Test
+    public void dropsAWaitingFailureOnceTheConnectionMovesOn() throws Exception {
+        queue.addEvent(event(LifecycleEvent.CONNECTED, "AA", 0));
+        queue.addEvent(event(LifecycleEvent.CONNECTION_FAILURE, "AA", 0));
+        queue.addEvent(event(LifecycleEvent.DISCONNECTED, "AA", 0));
+
+        assertEquals("disconnected AA#0", take());
+        assertEquals(2L, queue.getStats().get("coalesced"));
+    }
+
+    @Test
+    public void writesResponsesFirstAndReportsDrops() throws Exception {
+        ControlEventQueue small = new ControlEventQueue(2);
+        small.addEvent(event(LifecycleEvent.CONNECTED, "AA", 0));
+        small.addEvent(event(LifecycleEvent.CONNECTED, "BB", 0));
+        small.add(new BluetoothControlCommand("stats", new HashMap<String, Object>()));
+
+        List<BluetoothControlCommand> batch = new ArrayList<>();
+        small.takeBatch(batch, 10);
+
+        assertEquals("eventsDropped", batch.get(0).getCommand());
+        assertEquals(1L, batch.get(0).getArguments().get("count"));
+        assertEquals("stats", batch.get(1).getCommand());
+        assertEquals("BB", ((LifecycleEvent) batch.get(2)).getRemoteAddress());
+    }
+
+    @Test
+    public void requeuesAnUnwrittenBatchUnderNewerEvents() throws Exception {
+        queue.addEvent(event(LifecycleEvent.CONNECTED, "AA", 0));
+        queue.addEvent(event(LifecycleEvent.CONNECTED, "BB", 0));
+
+        List<BluetoothControlCommand> batch = new ArrayList<>();
+        queue.takeBatch(batch, 10);
+
+        queue.addEvent(event(LifecycleEvent.DISCONNECTED, "AA", 0));
+        queue.addEvent(event(LifecycleEvent.CONNECTION_FAILURE, "BB", 0));
+        queue.pushBack(batch);
+
+        assertEquals("disconnected AA#0, connected BB#0, connectionFailure BB#0", take());
+    }
+
+    private String take() throws InterruptedException {
+        List<BluetoothControlCommand> batch = new ArrayList<>();
+        queue.takeBatch(batch, 64);
+
+        StringBuilder description = new StringBuilder();
+        for (BluetoothControlCommand message : batch) {
+            LifecycleEvent event = (LifecycleEvent) message;
+
+            if (description.length() > 0) {
+                description.append(", ");
+            }
+            description.append(event.getCommand()).append(' ').append(event.getConnectionKey());
+        }
+
+        return description.toString();
+    }
+
+    private static LifecycleEvent event(String state, String remoteAddress, int channelId) {
+        return new LifecycleEvent(state, remoteAddress, channelId, new HashMap<String, Object>());
+    }
+}
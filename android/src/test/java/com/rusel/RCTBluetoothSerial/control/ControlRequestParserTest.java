@@ -0,0 +1,190 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ControlRequestParserTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ControlRequestParser requestParser;
+
+    @Before
+    public void setUp() {
+        // As configured by the control socket
+        objectMapper.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+        // Only parsed here, never carried out
+        ControlCommandRegistry commandRegistry = new ControlCommandRegistry(objectMapper);
+        commandRegistry.register("connect", RemoteAddressArguments.class,
+                ControlRequestParserTest.<RemoteAddressArguments>unused());
+        commandRegistry.register("connectMany", ConnectManyArguments.class,
+                ControlRequestParserTest.<ConnectManyArguments>unused());
+        commandRegistry.register("isEnabled", NoArguments.class,
+                ControlRequestParserTest.<NoArguments>unused());
+
+        requestParser = new ControlRequestParser(objectMapper, commandRegistry);
+    }
+
+    @Test
+    public void decodesArgumentsThatFollowTheCommand() throws Exception {
+        ControlRequest request = parseOne(
+                "{\"command\":\"connect\",\"requestId\":7,\"arguments\":{\"remoteAddress\":\"AA\"}}");
+
+        assertEquals("connect", request.getCommand());
+        assertEquals(7, request.getRequestId());
+        assertNull(request.getInvalidArguments());
+        assertEquals("AA", ((RemoteAddressArguments) request.getArguments()).getRemoteAddress());
+    }
+
+    @Test
+    public void decodesArgumentsThatComeBeforeTheCommand() throws Exception {
+        ControlRequest request = parseOne(
+                "{\"arguments\":{\"remoteAddresses\":[\"AA\",\"BB\"],\"parallelism\":2},"
+                        + "\"requestId\":{\"tag\":\"x\"},\"command\":\"connectMany\"}");
+
+        assertEquals("connectMany", request.getCommand());
+        assertNull(request.getInvalidArguments());
+
+        ConnectManyArguments arguments = (ConnectManyArguments) request.getArguments();
+        assertEquals(Arrays.asList("AA", "BB"), arguments.getRemoteAddresses());
+        assertEquals(Integer.valueOf(2), arguments.getParallelism());
+        assertEquals("{tag=x}", request.getRequestId().toString());
+    }
+
+    @Test
+    public void skipsFieldsAndArgumentsItDoesNotKnow() throws Exception {
+        JsonParser parser = parserFor(
+                "{\"command\":\"connect\",\"extra\":{\"a\":[1,{\"b\":2}]},"
+                        + "\"arguments\":{\"future\":[{\"x\":1}],\"remoteAddress\":\"AA\"}}"
+                        + "{\"command\":\"isEnabled\"}");
+
+        ControlRequest first = requestParser.parse(parser);
+        assertNull(first.getInvalidArguments());
+        assertEquals("AA", ((RemoteAddressArguments) first.getArguments()).getRemoteAddress());
+
+        ControlRequest second = requestParser.parse(parser);
+        assertEquals("isEnabled", second.getCommand());
+        assertNull(second.getArguments());
+    }
+
+    @Test
+    public void keepsReadingAfterArgumentsOfTheWrongType() throws Exception {
+        JsonParser parser = parserFor(
+                "{\"command\":\"connectMany\",\"arguments\":{\"remoteAddresses\":{\"a\":[1]},\"parallelism\":2},"
+                        + "\"requestId\":1}"
+                        + "{\"arguments\":{\"parallelism\":\"many\"},\"command\":\"connectMany\",\"requestId\":2}"
+                        + "{\"command\":\"connect\",\"arguments\":{\"remoteAddress\":\"AA\"},\"requestId\":3}");
+
+        ControlRequest wrongType = requestParser.parse(parser);
+        assertEquals(1, wrongType.getRequestId());
+        assertNull(wrongType.getArguments());
+        assertTrue(wrongType.getInvalidArguments().getMessage().startsWith("Invalid arguments"));
+
+        ControlRequest wrongTypeFirst = requestParser.parse(parser);
+        assertEquals(2, wrongTypeFirst.getRequestId());
+        assertTrue(wrongTypeFirst.getInvalidArguments().getMessage().startsWith("Invalid arguments"));
+
+        ControlRequest valid = requestParser.parse(parser);
+        assertEquals(3, valid.getRequestId());
+        assertEquals("AA", ((RemoteAddressArguments) valid.getArguments()).getRemoteAddress());
+    }
+
+    @Test
+    public void skipsTheArgumentsOfAnUnknownCommand() throws Exception {
+        JsonParser parser = parserFor(
+                "{\"command\":\"nope\",\"arguments\":{\"a\":[1,2]},\"requestId\":1}"
+                        + "{\"arguments\":{\"a\":1},\"command\":\"nope\"}"
+                        + "{\"command\":\"isEnabled\"}");
+
+        ControlRequest unknown = requestParser.parse(parser);
+        assertEquals("nope", unknown.getCommand());
+        assertEquals("Unknown command: nope", unknown.getInvalidArguments().getMessage());
+
+        ControlRequest unknownFirst = requestParser.parse(parser);
+        assertEquals("Unknown command: nope", unknownFirst.getInvalidArguments().getMessage());
+
+        assertEquals("isEnabled", requestParser.parse(parser).getCommand());
+    }
+
+    @Test
+    public void leavesTheCommandNullIfItIsMissing() throws Exception {
+        ControlRequest request = parseOne("{\"arguments\":{\"remoteAddress\":\"AA\"}}");
+
+        assertNull(request.getCommand());
+        assertEquals("Unknown command: null", request.getInvalidArguments().getMessage());
+    }
+
+    @Test
+    public void rejectsAValueThatIsNotAnObject() throws Exception {
+        assertParseFails("[{\"command\":\"isEnabled\"}]");
+        assertParseFails("\"isEnabled\"");
+    }
+
+    @Test
+    public void rejectsMalformedJson() throws Exception {
+        assertParseFails("{\"command\":\"connect\",,\"arguments\":{}}");
+        assertParseFails("{\"command\" \"connect\"}");
+    }
+
+    @Test
+    public void rejectsATruncatedCommand() throws Exception {
+        JsonParser parser = parserFor("{\"command\":\"connect\",\"arguments\":{\"remoteAddress\":");
+
+        try {
+            requestParser.parse(parser);
+            fail("Parsed a truncated command");
+        } catch (EOFException e) {
+            fail("A truncated command is not the end of the stream");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void reportsTheEndOfTheStream() throws Exception {
+        JsonParser parser = parserFor("{\"command\":\"isEnabled\"}");
+
+        requestParser.parse(parser);
+        requestParser.parse(parser);
+    }
+
+    private ControlRequest parseOne(String json) throws IOException {
+        return requestParser.parse(parserFor(json));
+    }
+
+    private JsonParser parserFor(String json) throws IOException {
+        return objectMapper.getFactory().createParser(json);
+    }
+
+    private void assertParseFails(String json) throws IOException {
+        try {
+            parseOne(json);
+            fail("Parsed " + json);
+        } catch (JsonParseException e) {
+            // Expected
+        }
+    }
+
+    private static <A> ControlCommandHandler<A> unused() {
+        return new ControlCommandHandler<A>() {
+            @Override
+            public void handle(A arguments, ControlResponder responder) {
+            }
+        };
+    }
+}
@@ -0,0 +1,211 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.rusel.RCTBluetoothSerial.RCTBluetoothSerialModule;
+import com.rusel.RCTBluetoothSerial.transport.LocalEndpointConnector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ControlSessionTest {
+
+    private RCTBluetoothSerialModule module;
+    private InMemoryControlSocket controlSocket;
+    private ControlUnixSocket control;
+    private ControlSession session;
+
+    @Before
+    public void setUp() {
+        module = mock(RCTBluetoothSerialModule.class);
+        when(module.isEnabled()).thenReturn(true);
+
+        controlSocket = new InMemoryControlSocket();
+        control = new ControlUnixSocket(
+                Collections.<String, LocalEndpointConnector>singletonMap("/control", controlSocket), module, false);
+        session = control.getSessions().get(0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        session.stop();
+    }
+
+    @Test(timeout = 10000)
+    public void reconnectsOnceTheClientIsListening() throws Exception {
+        controlSocket.setListening(false);
+        session.start();
+
+        // Long enough for a few attempts to fail
+        Thread.sleep(300);
+        controlSocket.setListening(true);
+
+        ControlClient client = controlSocket.accept();
+        assertNotNull(client);
+
+        client.send("{\"command\":\"isEnabled\",\"requestId\":1}");
+        assertResponse(client.next(), "isEnabled", 1);
+    }
+
+    @Test(timeout = 10000)
+    public void reconnectsAfterTheConnectionIsLost() throws Exception {
+        session.start();
+
+        ControlClient first = controlSocket.accept();
+        first.send("{\"command\":\"isEnabled\",\"requestId\":1}");
+        assertResponse(first.next(), "isEnabled", 1);
+
+        first.close();
+
+        ControlClient second = controlSocket.accept();
+        assertNotNull(second);
+
+        second.send("{\"command\":\"isEnabled\",\"requestId\":2}");
+        assertResponse(second.next(), "isEnabled", 2);
+    }
+
+    @Test(timeout = 10000)
+    public void sendsTheEventsQueuedBeforeConnectingInOrder() throws Exception {
+        controlSocket.setListening(false);
+        session.start();
+
+        control.sendConnectedEvent("AA", 0, false);
+        control.sendConnectionFailureEvent("BB", 0, "Page timeout.", false);
+        control.sendDisconnectionEvent("CC", 0, "Connection lost.");
+
+        controlSocket.setListening(true);
+        ControlClient client = controlSocket.accept();
+
+        assertEvent(client.next(), "connected", "AA");
+        assertEvent(client.next(), "connectionFailure", "BB");
+        assertEvent(client.next(), "disconnected", "CC");
+    }
+
+    @Test(timeout = 10000)
+    public void replaysTheEventsQueuedWhileDisconnectedInOrder() throws Exception {
+        session.start();
+
+        ControlClient first = controlSocket.accept();
+        control.sendConnectedEvent("AA", 0, false);
+        assertEvent(first.next(), "connected", "AA");
+
+        controlSocket.setListening(false);
+        first.close();
+
+        // Whether the writer has noticed the lost connection yet or not, these wait for the next one
+        control.sendConnectedEvent("BB", 0, false);
+        control.sendDisconnectionEvent("CC", 0, "Connection lost.");
+        control.sendConnectedEvent("DD", 0, true);
+
+        controlSocket.setListening(true);
+        ControlClient second = controlSocket.accept();
+
+        assertEvent(second.next(), "connected", "BB");
+        assertEvent(second.next(), "disconnected", "CC");
+        assertEvent(second.next(), "connected", "DD");
+    }
+
+    @Test(timeout = 10000)
+    public void writesQueuedEventsInOneBatch() throws Exception {
+        controlSocket.setListening(false);
+        session.start();
+
+        for (int i = 0; i < 10; i++) {
+            control.sendConnectedEvent("AA-" + i, 0, false);
+        }
+
+        controlSocket.setListening(true);
+        ControlClient client = controlSocket.accept();
+
+        for (int i = 0; i < 10; i++) {
+            assertEvent(client.next(), "connected", "AA-" + i);
+        }
+
+        assertEquals(1, controlSocket.getWriteCount());
+    }
+
+    @Test(timeout = 10000)
+    public void writesALongBurstInBatchesOfAtMostTheBatchSize() throws Exception {
+        controlSocket.setListening(false);
+        session.start();
+
+        for (int i = 0; i < 100; i++) {
+            control.sendConnectedEvent("AA-" + i, 0, false);
+        }
+
+        controlSocket.setListening(true);
+        ControlClient client = controlSocket.accept();
+
+        for (int i = 0; i < 100; i++) {
+            assertEvent(client.next(), "connected", "AA-" + i);
+        }
+
+        // 64 messages to a batch, each batch small enough to go out in one write
+        assertEquals(2, controlSocket.getWriteCount());
+    }
+
+    @Test(timeout = 10000)
+    public void echoesTheRequestIdOfEachResponse() throws Exception {
+        session.start();
+        ControlClient client = controlSocket.accept();
+
+        client.send("{\"command\":\"isEnabled\",\"requestId\":1}");
+        client.send("{\"command\":\"isEnabled\",\"requestId\":\"two\"}");
+        client.send("{\"requestId\":{\"n\":[3]},\"command\":\"isEnabled\"}");
+
+        assertEquals("1", client.nextTree().get("requestId").toString());
+        assertEquals("\"two\"", client.nextTree().get("requestId").toString());
+        assertEquals("{\"n\":[3]}", client.nextTree().get("requestId").toString());
+    }
+
+    @Test(timeout = 10000)
+    public void echoesTheRequestIdOfACommandThatFailed() throws Exception {
+        session.start();
+        ControlClient client = controlSocket.accept();
+
+        client.send("{\"command\":\"connect\",\"requestId\":1,\"arguments\":{}}");
+        client.send("{\"command\":\"nope\",\"requestId\":2}");
+
+        JsonNode missingArgument = client.nextTree();
+        assertEquals("error", missingArgument.get("command").asText());
+        assertEquals(1, missingArgument.get("requestId").asInt());
+
+        JsonNode unknownCommand = client.nextTree();
+        assertEquals("error", unknownCommand.get("command").asText());
+        assertEquals(2, unknownCommand.get("requestId").asInt());
+    }
+
+    @Test(timeout = 10000)
+    public void leavesTheRequestIdOutOfEventsAndResponsesToCommandsWithoutOne() throws Exception {
+        session.start();
+        ControlClient client = controlSocket.accept();
+
+        client.send("{\"command\":\"isEnabled\"}");
+        JsonNode response = client.nextTree();
+        assertEquals("isEnabled", response.get("command").asText());
+        assertFalse(response.has("requestId"));
+
+        control.sendConnectedEvent("AA", 0, false);
+        JsonNode event = client.nextTree();
+        assertEquals("connected", event.get("command").asText());
+        assertFalse(event.has("requestId"));
+    }
+
+    private static void assertResponse(BluetoothControlCommand response, String command, Object requestId) {
+        assertEquals(command, response.getCommand());
+        assertEquals(requestId, response.getRequestId());
+    }
+
+    private static void assertEvent(BluetoothControlCommand event, String command, String remoteAddress) {
+        assertEquals(command, event.getCommand());
+        assertEquals(remoteAddress, event.getArguments().get("remoteAddress"));
+    }
+}
@@ -0,0 +1,118 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import com.rusel.RCTBluetoothSerial.RCTBluetoothSerialModule;
+import com.rusel.RCTBluetoothSerial.transport.LocalEndpointConnector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ControlSubscriptionTest {
+
+    // Small enough that a client that stops reading blocks its session's writer after a few events
+    private static final int SLOW_PIPE_CAPACITY = 256;
+
+    private InMemoryControlSocket firstSocket;
+    private InMemoryControlSocket secondSocket;
+    private ControlUnixSocket control;
+    private ControlSession firstSession;
+    private ControlSession secondSession;
+
+    @Before
+    public void setUp() {
+        RCTBluetoothSerialModule module = mock(RCTBluetoothSerialModule.class);
+        when(module.isEnabled()).thenReturn(true);
+
+        firstSocket = new InMemoryControlSocket();
+        secondSocket = new InMemoryControlSocket(SLOW_PIPE_CAPACITY);
+
+        Map<String, LocalEndpointConnector> connectors = new LinkedHashMap<>();
+        connectors.put("/first", firstSocket);
+        connectors.put("/second", secondSocket);
+
+        control = new ControlUnixSocket(connectors, module, false);
+        firstSession = control.getSessions().get(0);
+        secondSession = control.getSessions().get(1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        firstSession.stop();
+        secondSession.stop();
+    }
+
+    @Test(timeout = 10000)
+    public void sendsOnlyTheEventsASessionSubscribedTo() throws Exception {
+        firstSession.start();
+        secondSession.start();
+
+        ControlClient filtered = firstSocket.accept();
+        ControlClient unfiltered = secondSocket.accept();
+
+        filtered.send("{\"command\":\"subscribe\",\"requestId\":1,\"arguments\":{\"events\":[\"disconnected\"]}}");
+        assertEquals("subscribed", filtered.next().getCommand());
+
+        control.sendConnectedEvent("AA", 0, false);
+        control.sendDisconnectionEvent("BB", 0, "Connection lost.");
+        control.sendConnectionFailureEvent("CC", 0, "Page timeout.", false);
+        control.sendDisconnectionEvent("DD", 0, "Connection lost.");
+
+        assertEvent(filtered.next(), "disconnected", "BB");
+        assertEvent(filtered.next(), "disconnected", "DD");
+
+        assertEvent(unfiltered.next(), "connected", "AA");
+        assertEvent(unfiltered.next(), "disconnected", "BB");
+        assertEvent(unfiltered.next(), "connectionFailure", "CC");
+        assertEvent(unfiltered.next(), "disconnected", "DD");
+    }
+
+    @Test(timeout = 10000)
+    public void sendsEverythingAgainAfterSubscribingToAllEvents() throws Exception {
+        firstSession.start();
+        ControlClient client = firstSocket.accept();
+
+        client.send("{\"command\":\"subscribe\",\"arguments\":{\"events\":[\"connected\"]}}");
+        assertEquals("subscribed", client.next().getCommand());
+
+        client.send("{\"command\":\"subscribe\",\"arguments\":{}}");
+        assertEquals("subscribed", client.next().getCommand());
+
+        control.sendDisconnectionEvent("AA", 0, "Connection lost.");
+        assertEvent(client.next(), "disconnected", "AA");
+    }
+
+    @Test(timeout = 10000)
+    public void aClientThatStopsReadingDoesNotHoldUpTheOthers() throws Exception {
+        firstSession.start();
+        secondSession.start();
+
+        ControlClient reading = firstSocket.accept();
+
+        // Connected, but never read from
+        secondSocket.accept();
+
+        for (int i = 0; i < 200; i++) {
+            control.sendConnectedEvent("AA-" + i, 0, false);
+        }
+
+        for (int i = 0; i < 200; i++) {
+            assertEvent(reading.next(), "connected", "AA-" + i);
+        }
+
+        // Still waiting behind the full pipe
+        assertTrue(secondSession.getQueue().size() > 0);
+    }
+
+    private static void assertEvent(BluetoothControlCommand event, String command, String remoteAddress) {
+        assertEquals(command, event.getCommand());
+        assertEquals(remoteAddress, event.getArguments().get("remoteAddress"));
+    }
+}
@@ -0,0 +1,156 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rusel.RCTBluetoothSerial.ConnectRetryPolicy;
+import com.rusel.RCTBluetoothSerial.RCTBluetoothSerialModule;
+import com.rusel.RCTBluetoothSerial.metrics.ConnectionMetrics;
+import com.rusel.RCTBluetoothSerial.metrics.MeteredInputStream;
+import com.rusel.RCTBluetoothSerial.metrics.MeteredOutputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ControlUnixSocketTest {
+
+    private RCTBluetoothSerialModule module;
+    private ControlSession session;
+
+    @Before
+    public void setUp() {
+        module = mock(RCTBluetoothSerialModule.class);
+        when(module.getConnectRetryPolicy()).thenReturn(new ConnectRetryPolicy(3, 100, 1000, 2, 0));
+
+        session = new ControlUnixSocket("/unused", module).getSessions().get(0);
+    }
+
+    @Test(timeout = 10000)
+    public void rejectsAnInvalidRetryPolicyAndCarriesOn() throws Exception {
+        List<BluetoothControlCommand> responses = run(
+                "{\"command\":\"setRetryPolicy\",\"requestId\":1,\"arguments\":{\"multiplier\":0.5}}",
+                "{\"command\":\"setRetryPolicy\",\"requestId\":2,\"arguments\":{\"jitter\":2}}",
+                "{\"command\":\"connect\",\"requestId\":3,\"arguments\":{\"remoteAddress\":\"AA\"}}");
+
+        assertEquals(3, responses.size());
+        assertError(responses.get(0), 1, "setRetryPolicy");
+        assertError(responses.get(1), 2, "setRetryPolicy");
+        assertEquals("connectQueued", responses.get(2).getCommand());
+
+        verify(module, never()).setConnectRetryPolicy(any(ConnectRetryPolicy.class));
+        verify(module).connect("AA");
+    }
+
+    @Test(timeout = 10000)
+    public void answersAValidRetryPolicyWithTheMergedPolicy() throws Exception {
+        List<BluetoothControlCommand> responses = run(
+                "{\"command\":\"setRetryPolicy\",\"arguments\":{\"maxRetries\":5}}");
+
+        BluetoothControlCommand response = responses.get(0);
+        assertEquals("retryPolicy", response.getCommand());
+        assertEquals(5, response.getArguments().get("maxRetries"));
+        assertEquals(100L, response.getArguments().get("initialDelayMillis"));
+        assertEquals(2.0, response.getArguments().get("multiplier"));
+    }
+
+    @Test(timeout = 10000)
+    public void rejectsConnectManyWithANullAddress() throws Exception {
+        List<BluetoothControlCommand> responses = run(
+                "{\"command\":\"connectMany\",\"requestId\":\"a\",\"arguments\":{\"remoteAddresses\":[null]}}");
+
+        assertError(responses.get(0), "a", "connectMany");
+    }
+
+    @Test(timeout = 10000)
+    public void reportsAFailingHandlerAsAnErrorAndCarriesOn() throws Exception {
+        doThrow(new IllegalStateException("Broken")).when(module).connect("AA");
+
+        List<BluetoothControlCommand> responses = run(
+                "{\"command\":\"connect\",\"requestId\":1,\"arguments\":{\"remoteAddress\":\"AA\"}}",
+                "{\"command\":\"connect\",\"requestId\":2,\"arguments\":{\"remoteAddress\":\"BB\"}}");
+
+        assertError(responses.get(0), 1, "connect");
+        assertTrue(((String) responses.get(0).getArguments().get("reason")).contains("Broken"));
+        assertEquals("connectQueued", responses.get(1).getCommand());
+        assertEquals(2, responses.get(1).getRequestId());
+    }
+
+    @Test(timeout = 10000)
+    public void answersStatsWithTheBridgeStatsAndTheSessions() throws Exception {
+        ConnectionMetrics metrics = new ConnectionMetrics("AA", false);
+        new MeteredOutputStream(new ByteArrayOutputStream(), metrics.getBluetoothWrites()).write(new byte[10]);
+
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Connection reset.");
+            }
+        };
+
+        try {
+            new MeteredInputStream(failing, metrics.getLocalReads()).read();
+        } catch (IOException e) {
+            // Counted as a local read that failed
+        }
+
+        Map<String, Object> bridgeStats = new HashMap<>();
+        bridgeStats.put("connections", Collections.singletonList(metrics.snapshot()));
+        when(module.getBridgeStats()).thenReturn(bridgeStats);
+
+        List<BluetoothControlCommand> responses = run("{\"command\":\"stats\",\"requestId\":1}");
+        assertEquals("stats", responses.get(0).getCommand());
+
+        // As the other side would see it
+        JsonNode stats = new ObjectMapper().valueToTree(responses.get(0)).get("arguments");
+
+        JsonNode connection = stats.get("connections").get(0);
+        assertEquals("AA", connection.get("remoteAddress").asText());
+        assertEquals(false, connection.get("incoming").asBoolean());
+        assertEquals(10, connection.get("bytesToBluetooth").asLong());
+        assertEquals(1, connection.get("bluetoothWrites").asLong());
+        assertEquals(1, connection.get("localReads").asLong());
+        assertEquals(1, connection.get("localReadFailures").asLong());
+        assertEquals(0, connection.get("bluetoothWriteFailures").asLong());
+
+        JsonNode sessionStats = stats.get("controlSessions").get("/unused");
+        assertEquals(1024, sessionStats.get("capacity").asInt());
+    }
+
+    private List<BluetoothControlCommand> run(String... commands) throws InterruptedException {
+        StringBuilder input = new StringBuilder();
+        for (String command : commands) {
+            input.append(command).append('\n');
+        }
+
+        session.handleCommands(new ByteArrayInputStream(input.toString().getBytes(StandardCharsets.UTF_8)));
+
+        List<BluetoothControlCommand> responses = new ArrayList<>();
+        session.getQueue().takeBatch(responses, 64);
+        return responses;
+    }
+
+    private static void assertError(BluetoothControlCommand response, Object requestId, String command) {
+        assertEquals("error", response.getCommand());
+        assertEquals(requestId, response.getRequestId());
+        assertEquals(command, response.getArguments().get("command"));
+    }
+}
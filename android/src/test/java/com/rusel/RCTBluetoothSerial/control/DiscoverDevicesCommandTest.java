@@ -0,0 +1,193 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+import com.rusel.RCTBluetoothSerial.DiscoveredDevice;
+import com.rusel.RCTBluetoothSerial.DiscoveredDeviceCache;
+import com.rusel.RCTBluetoothSerial.DiscoveryCoordinator;
+import com.rusel.RCTBluetoothSerial.RCTBluetoothSerialModule;
+import com.rusel.RCTBluetoothSerial.RadioScheduler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the 'discoverDevices' command against a coordinator driven by fake discovery broadcasts.
+ */
+public class DiscoverDevicesCommandTest {
+
+    private static final long HOUR_MILLIS = 60 * 60 * 1000;
+
+    private Context context;
+    private BluetoothAdapter bluetoothAdapter;
+    private ControlSession session;
+
+    @Before
+    public void setUp() {
+        context = mock(Context.class);
+        bluetoothAdapter = mock(BluetoothAdapter.class);
+        when(bluetoothAdapter.isEnabled()).thenReturn(true);
+        when(bluetoothAdapter.startDiscovery()).thenReturn(true);
+
+        final DiscoveryCoordinator coordinator = new DiscoveryCoordinator(context, bluetoothAdapter,
+                new DiscoveredDeviceCache(HOUR_MILLIS, 10), new RadioScheduler(true, false), HOUR_MILLIS);
+
+        RCTBluetoothSerialModule module = mock(RCTBluetoothSerialModule.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                coordinator.discover(invocation.<DiscoveredDevicesHandler>getArgument(0));
+                return null;
+            }
+        }).when(module).discoverNearbyDevices(any(DiscoveredDevicesHandler.class), anyLong());
+
+        session = new ControlUnixSocket("/unused", module).getSessions().get(0);
+    }
+
+    @Test(timeout = 10000)
+    public void streamsEachDeviceAsItIsFoundThenDiscoveryDone() throws Exception {
+        run("{\"command\":\"discoverDevices\",\"requestId\":1,\"arguments\":{\"stream\":true}}");
+
+        BroadcastReceiver receiver = registeredReceiver();
+        receiver.onReceive(context, deviceFound("AA", "phone", (short) -40));
+        receiver.onReceive(context, deviceFound("BB", null, DiscoveredDevice.UNKNOWN_RSSI));
+        receiver.onReceive(context, deviceFound("AA", "phone", (short) -45));
+        receiver.onReceive(context, action(BluetoothAdapter.ACTION_DISCOVERY_FINISHED));
+
+        List<BluetoothControlCommand> responses = takeResponses();
+        assertEquals(3, responses.size());
+
+        BluetoothDeviceProperties first = assertDeviceFound(responses.get(0), "AA");
+        assertEquals("phone", first.getDisplayName());
+        assertEquals(Integer.valueOf(-40), first.getRssi());
+
+        BluetoothDeviceProperties second = assertDeviceFound(responses.get(1), "BB");
+        assertEquals("", second.getDisplayName());
+        assertNull(second.getRssi());
+
+        BluetoothControlCommand done = responses.get(2);
+        assertEquals("discoveryDone", done.getCommand());
+        assertEquals(1, done.getRequestId());
+        assertEquals(2, done.getArguments().get("count"));
+    }
+
+    @Test(timeout = 10000)
+    public void answersWithAllTheDevicesAtOnceWhenNotStreaming() throws Exception {
+        run("{\"command\":\"discoverDevices\",\"requestId\":1}");
+
+        BroadcastReceiver receiver = registeredReceiver();
+        receiver.onReceive(context, deviceFound("AA", "phone", (short) -40));
+        receiver.onReceive(context, deviceFound("BB", "watch", (short) -60));
+        receiver.onReceive(context, action(BluetoothAdapter.ACTION_DISCOVERY_FINISHED));
+
+        List<BluetoothControlCommand> responses = takeResponses();
+        assertEquals(1, responses.size());
+        assertEquals("discovered", responses.get(0).getCommand());
+        assertEquals(2, ((List<?>) responses.get(0).getArguments().get("devices")).size());
+    }
+
+    @Test(timeout = 10000)
+    public void sortsTheDevicesByStrongestSignalWithUnknownLast() throws Exception {
+        run("{\"command\":\"discoverDevices\",\"arguments\":{\"sortBySignalStrength\":true}}");
+
+        BroadcastReceiver receiver = registeredReceiver();
+        receiver.onReceive(context, deviceFound("AA", "far", (short) -80));
+        receiver.onReceive(context, deviceFound("BB", "unknown", DiscoveredDevice.UNKNOWN_RSSI));
+        receiver.onReceive(context, deviceFound("CC", "near", (short) -30));
+        receiver.onReceive(context, deviceFound("DD", "middle", (short) -55));
+        receiver.onReceive(context, action(BluetoothAdapter.ACTION_DISCOVERY_FINISHED));
+
+        List<?> devices = (List<?>) takeResponses().get(0).getArguments().get("devices");
+
+        List<String> addresses = new ArrayList<>();
+        for (Object device : devices) {
+            addresses.add(((BluetoothDeviceProperties) device).getRemoteAddress());
+        }
+
+        assertEquals(Arrays.asList("CC", "DD", "AA", "BB"), addresses);
+    }
+
+    @Test(timeout = 10000)
+    public void endsAStreamThatCouldNotStartWithAnErrorInDiscoveryDone() throws Exception {
+        when(bluetoothAdapter.startDiscovery()).thenReturn(false);
+
+        run("{\"command\":\"discoverDevices\",\"requestId\":1,\"arguments\":{\"stream\":true}}");
+
+        List<BluetoothControlCommand> responses = takeResponses();
+        assertEquals(1, responses.size());
+
+        BluetoothControlCommand done = responses.get(0);
+        assertEquals("discoveryDone", done.getCommand());
+        assertEquals(1, done.getRequestId());
+        assertEquals(true, done.getArguments().get("error"));
+        assertEquals("discoveryFailed", done.getArguments().get("errorCode"));
+    }
+
+    private void run(String command) {
+        session.handleCommands(new ByteArrayInputStream((command + "\n").getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private List<BluetoothControlCommand> takeResponses() throws InterruptedException {
+        List<BluetoothControlCommand> responses = new ArrayList<>();
+        session.getQueue().takeBatch(responses, 64);
+        return responses;
+    }
+
+    private BroadcastReceiver registeredReceiver() {
+        ArgumentCaptor<BroadcastReceiver> receiver = ArgumentCaptor.forClass(BroadcastReceiver.class);
+        verify(context).registerReceiver(receiver.capture(), any(IntentFilter.class));
+
+        return receiver.getValue();
+    }
+
+    private static BluetoothDeviceProperties assertDeviceFound(BluetoothControlCommand response, String address) {
+        assertEquals("deviceFound", response.getCommand());
+        assertEquals(1, response.getRequestId());
+
+        BluetoothDeviceProperties device = (BluetoothDeviceProperties) response.getArguments().get("device");
+        assertEquals(address, device.getRemoteAddress());
+        return device;
+    }
+
+    private static Intent action(String action) {
+        Intent intent = mock(Intent.class);
+        when(intent.getAction()).thenReturn(action);
+
+        return intent;
+    }
+
+    private static Intent deviceFound(String address, String name, short rssi) {
+        BluetoothDevice device = mock(BluetoothDevice.class);
+        when(device.getAddress()).thenReturn(address);
+        when(device.getName()).thenReturn(name);
+
+        Intent intent = action(BluetoothDevice.ACTION_FOUND);
+        when(intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE)).thenReturn(device);
+        when(intent.getShortExtra(BluetoothDevice.EXTRA_RSSI, DiscoveredDevice.UNKNOWN_RSSI)).thenReturn(rssi);
+
+        return intent;
+    }
+}
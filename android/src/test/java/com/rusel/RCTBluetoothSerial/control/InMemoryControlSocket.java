@@ -0,0 +1,100 @@
+package com.rusel.RCTBluetoothSerial.control;
+
+import com.rusel.RCTBluetoothSerial.transport.InMemoryConnection;
+import com.rusel.RCTBluetoothSerial.transport.LocalEndpoint;
+import com.rusel.RCTBluetoothSerial.transport.LocalEndpointConnector;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays the part of a client listening on a control socket. Each connection a session makes is handed
+ * to whoever calls accept(), and the writes the session makes to its connections are counted.
+ */
+class InMemoryControlSocket implements LocalEndpointConnector {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final BlockingQueue<ControlClient> clients = new LinkedBlockingQueue<>();
+    private final AtomicInteger writes = new AtomicInteger();
+
+    private final int pipeCapacity;
+    private volatile boolean listening = true;
+
+    InMemoryControlSocket(int pipeCapacity) {
+        this.pipeCapacity = pipeCapacity;
+    }
+
+    InMemoryControlSocket() {
+        this(InMemoryConnection.DEFAULT_PIPE_CAPACITY);
+    }
+
+    /**
+     * While not listening, sessions fail to connect as if the client were not running.
+     */
+    void setListening(boolean listening) {
+        this.listening = listening;
+    }
+
+    /**
+     * @return how many writes sessions have made to the underlying streams of their connections.
+     */
+    int getWriteCount() {
+        return writes.get();
+    }
+
+    @Override
+    public LocalEndpoint connect() throws IOException {
+        if (!listening) {
+            throw new IOException("Connection refused.");
+        }
+
+        InMemoryConnection[] ends = InMemoryConnection.pair(null, pipeCapacity);
+        final InMemoryConnection sessionEnd = ends[0];
+        final OutputStream countingOutputStream = new FilterOutputStream(sessionEnd.getOutputStream()) {
+            @Override
+            public void write(int b) throws IOException {
+                writes.incrementAndGet();
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                writes.incrementAndGet();
+                out.write(bytes, offset, length);
+            }
+        };
+
+        clients.add(new ControlClient(ends[1]));
+
+        return new LocalEndpoint() {
+            @Override
+            public InputStream getInputStream() {
+                return sessionEnd.getInputStream();
+            }
+
+            @Override
+            public OutputStream getOutputStream() {
+                return countingOutputStream;
+            }
+
+            @Override
+            public void close() {
+                sessionEnd.close();
+            }
+        };
+    }
+
+    /**
+     * @return the next connection made by a session, or null if none is made within a few seconds.
+     */
+    ControlClient accept() throws InterruptedException {
+        return clients.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,100 @@
+package com.rusel.RCTBluetoothSerial.metrics;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MeteredStreamsTest {
+
+    private static final long BLOCKED_MILLIS = 20;
+
+    @Test
+    public void countsReadsAndTheBytesRead() throws Exception {
+        StreamMetrics metrics = new StreamMetrics();
+        InputStream inputStream = new MeteredInputStream(new ByteArrayInputStream(new byte[10]), metrics);
+
+        assertEquals(6, inputStream.read(new byte[6], 0, 6));
+        assertEquals(0, inputStream.read());
+        assertEquals(3, inputStream.read(new byte[6], 0, 6));
+        assertEquals(-1, inputStream.read(new byte[6], 0, 6));
+
+        assertEquals(10, metrics.getBytes());
+        assertEquals(4, metrics.getCalls());
+        assertEquals(0, metrics.getFailures());
+    }
+
+    @Test
+    public void countsAReadThatFailsAndTheTimeItWaited() throws Exception {
+        StreamMetrics metrics = new StreamMetrics();
+        InputStream inputStream = new MeteredInputStream(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                return failAfterBlocking();
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                return failAfterBlocking();
+            }
+        }, metrics);
+
+        try {
+            inputStream.read(new byte[6], 0, 6);
+            fail("The read should have failed");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        try {
+            inputStream.read();
+            fail("The read should have failed");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        assertEquals(0, metrics.getBytes());
+        assertEquals(2, metrics.getCalls());
+        assertEquals(2, metrics.getFailures());
+        assertTrue(metrics.getBlockedNanos() >= 2 * BLOCKED_MILLIS * 1000000);
+    }
+
+    @Test
+    public void countsAWriteThatFailsWithoutItsBytes() throws Exception {
+        StreamMetrics metrics = new StreamMetrics();
+        OutputStream outputStream = new MeteredOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                failAfterBlocking();
+            }
+        }, metrics);
+
+        try {
+            outputStream.write(new byte[6], 0, 6);
+            fail("The write should have failed");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        assertEquals(0, metrics.getBytes());
+        assertEquals(1, metrics.getCalls());
+        assertEquals(1, metrics.getFailures());
+        assertTrue(metrics.getBlockedNanos() >= BLOCKED_MILLIS * 1000000);
+    }
+
+    private static int failAfterBlocking() throws IOException {
+        try {
+            Thread.sleep(BLOCKED_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        throw new IOException("Connection reset.");
+    }
+}
@@ -0,0 +1,297 @@
+package com.rusel.RCTBluetoothSerial.mux;
+
+import com.rusel.RCTBluetoothSerial.pump.MemoryBudget;
+import com.rusel.RCTBluetoothSerial.pump.PumpExecutor;
+import com.rusel.RCTBluetoothSerial.transport.InMemoryConnection;
+import com.rusel.RCTBluetoothSerial.transport.InMemoryLocalEndpointConnector;
+import com.rusel.RCTBluetoothSerial.transport.LocalEndpoint;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives an accepting link from the test, which plays the dialling side by reading and writing raw frames.
+ */
+public class MultiplexedLinkTest {
+
+    private static final int WINDOW = 1024;
+    private static final int MAX_FRAME_SIZE = 256;
+
+    private final InMemoryLocalEndpointConnector localEndpoints = new InMemoryLocalEndpointConnector();
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    private final Map<Integer, InMemoryConnection> localEnds = new ConcurrentHashMap<>();
+
+    private PumpExecutor pumpExecutor;
+    private MemoryBudget bufferBudget;
+    private MultiplexedLink link;
+    private DataInputStream fromLink;
+    private DataOutputStream toLink;
+
+    /**
+     * Held by onChannelRequested until counted down.
+     */
+    private volatile CountDownLatch localConnectAllowed = new CountDownLatch(0);
+
+    @Before
+    public void setUp() {
+        pumpExecutor = new PumpExecutor("mux-test", 16, PumpExecutor.QueuePolicy.REJECT, 0, 1000);
+        startLink(WINDOW * 4);
+    }
+
+    private void startLink(long budgetBytes) {
+        InMemoryConnection[] ends = InMemoryConnection.pair("AA");
+        bufferBudget = new MemoryBudget(budgetBytes);
+
+        link = new MultiplexedLink("AA", ends[0], ends[0].getInputStream(), ends[0].getOutputStream(),
+                false, WINDOW, MAX_FRAME_SIZE, bufferBudget, pumpExecutor, new RecordingListener());
+        link.start();
+
+        fromLink = new DataInputStream(ends[1].getInputStream());
+        toLink = new DataOutputStream(ends[1].getOutputStream());
+    }
+
+    @After
+    public void tearDown() {
+        link.close();
+        pumpExecutor.shutdown();
+    }
+
+    @Test(timeout = 10000)
+    public void grantsTheWindowAndReturnsCreditAsDataIsDelivered() throws Exception {
+        writeFrame(MultiplexedLink.OPEN, 1, WINDOW);
+        assertFrame(MultiplexedLink.CREDIT, 1, WINDOW);
+
+        assertEquals("opened 1 remotely", events.take());
+        InMemoryConnection local = localEnds.get(1);
+        assertEquals(WINDOW, bufferBudget.getReservedBytes());
+
+        byte[] data = bytes(WINDOW);
+        for (int offset = 0; offset < data.length; offset += MAX_FRAME_SIZE) {
+            writeData(1, Arrays.copyOfRange(data, offset, offset + MAX_FRAME_SIZE));
+        }
+
+        assertArrayEquals(data, readFully(new DataInputStream(local.getInputStream()), data.length));
+
+        // Granted back in batches of a quarter of the window, adding up to everything delivered
+        int granted = 0;
+        while (granted < WINDOW) {
+            granted += assertFrame(MultiplexedLink.CREDIT, 1, -1);
+        }
+        assertEquals(WINDOW, granted);
+    }
+
+    @Test(timeout = 10000)
+    public void closesTheLinkWhenSentMoreThanTheCredit() throws Exception {
+        writeFrame(MultiplexedLink.OPEN, 1, WINDOW);
+        assertFrame(MultiplexedLink.CREDIT, 1, WINDOW);
+        assertEquals("opened 1 remotely", events.take());
+
+        for (int sent = 0; sent <= WINDOW; sent += MAX_FRAME_SIZE) {
+            writeData(1, bytes(MAX_FRAME_SIZE));
+        }
+
+        assertEquals("closed 1", events.take());
+        assertTrue(events.take().startsWith("link closed Channel 1 sent"));
+        assertEquals(0, bufferBudget.getReservedBytes());
+    }
+
+    @Test(timeout = 10000)
+    public void closesTheLinkWhenOpenedWithOneOfItsOwnIds() throws Exception {
+        writeFrame(MultiplexedLink.OPEN, 2, WINDOW);
+
+        assertEquals("link closed Channel opened with one of our ids: 2", events.take());
+    }
+
+    @Test(timeout = 10000)
+    public void closesTheLinkWhenOpenedWithANegativeWindow() throws Exception {
+        writeFrame(MultiplexedLink.OPEN, 1, -1);
+
+        assertEquals("link closed Channel 1 opened with invalid window: -1", events.take());
+        assertEquals(0, bufferBudget.getReservedBytes());
+    }
+
+    @Test(timeout = 10000)
+    public void closesTheLinkWhenGrantedNegativeCredit() throws Exception {
+        writeFrame(MultiplexedLink.OPEN, 1, WINDOW);
+        assertFrame(MultiplexedLink.CREDIT, 1, WINDOW);
+        assertEquals("opened 1 remotely", events.take());
+
+        writeFrame(MultiplexedLink.CREDIT, 1, -WINDOW * 2);
+
+        assertEquals("closed 1", events.take());
+        assertEquals("link closed Channel 1 granted invalid credit: " + (-WINDOW * 2), events.take());
+    }
+
+    @Test(timeout = 10000)
+    public void closesTheLinkWhenGrantedCreditPastTheLargestInt() throws Exception {
+        writeFrame(MultiplexedLink.OPEN, 1, WINDOW);
+        assertFrame(MultiplexedLink.CREDIT, 1, WINDOW);
+        assertEquals("opened 1 remotely", events.take());
+
+        writeFrame(MultiplexedLink.CREDIT, 1, Integer.MAX_VALUE - WINDOW);
+        writeFrame(MultiplexedLink.CREDIT, 1, 1);
+
+        assertEquals("closed 1", events.take());
+        assertEquals("link closed Channel 1 granted invalid credit: 1", events.take());
+    }
+
+    @Test(timeout = 10000)
+    public void refusesChannelsBeyondTheBufferBudget() throws Exception {
+        link.close();
+        events.clear();
+        startLink(WINDOW);
+
+        writeFrame(MultiplexedLink.OPEN, 1, WINDOW);
+        assertFrame(MultiplexedLink.CREDIT, 1, WINDOW);
+
+        writeFrame(MultiplexedLink.OPEN, 3, WINDOW);
+        assertFrame(MultiplexedLink.CLOSE, 3, 0);
+
+        assertEquals("opened 1 remotely", events.take());
+        assertEquals(WINDOW, bufferBudget.getReservedBytes());
+        assertEquals(1, bufferBudget.getRefusalCount());
+    }
+
+    @Test(timeout = 10000)
+    public void dropsDataStillInFlightToAClosedChannel() throws Exception {
+        writeFrame(MultiplexedLink.OPEN, 1, WINDOW);
+        assertFrame(MultiplexedLink.CREDIT, 1, WINDOW);
+
+        assertEquals("opened 1 remotely", events.take());
+
+        localEnds.get(1).close();
+        assertFrame(MultiplexedLink.CLOSE, 1, 0);
+        assertEquals("closed 1", events.take());
+        assertEquals(0, bufferBudget.getReservedBytes());
+
+        writeData(1, bytes(MAX_FRAME_SIZE));
+
+        // The link is still up for other channels
+        writeFrame(MultiplexedLink.OPEN, 3, WINDOW);
+        assertFrame(MultiplexedLink.CREDIT, 3, WINDOW);
+        assertEquals("opened 3 remotely", events.take());
+    }
+
+    @Test(timeout = 10000)
+    public void keepsReadingFramesWhileALocalEndpointIsConnecting() throws Exception {
+        localConnectAllowed = new CountDownLatch(1);
+
+        writeFrame(MultiplexedLink.OPEN, 1, WINDOW);
+        assertFrame(MultiplexedLink.CREDIT, 1, WINDOW);
+
+        byte[] data = bytes(MAX_FRAME_SIZE);
+        writeData(1, data);
+
+        // Answered even though channel 1 is still waiting for its local endpoint
+        writeFrame(MultiplexedLink.OPEN, 3, WINDOW);
+        assertFrame(MultiplexedLink.CREDIT, 3, WINDOW);
+
+        localConnectAllowed.countDown();
+
+        assertTrue(events.take().endsWith("remotely"));
+        assertTrue(events.take().endsWith("remotely"));
+
+        // Channel 1 gets the data that arrived before it was attached
+        InMemoryConnection local = localEnds.get(1);
+        assertArrayEquals(data, readFully(new DataInputStream(local.getInputStream()), data.length));
+    }
+
+    private void writeFrame(byte type, int channelId, int value) throws IOException {
+        toLink.writeByte(type);
+        toLink.writeInt(channelId);
+        toLink.writeInt(value);
+        toLink.flush();
+    }
+
+    private void writeData(int channelId, byte[] payload) throws IOException {
+        toLink.writeByte(MultiplexedLink.DATA);
+        toLink.writeInt(channelId);
+        toLink.writeInt(payload.length);
+        toLink.write(payload);
+        toLink.flush();
+    }
+
+    /**
+     * @param value the expected value, or -1 for any.
+     * @return the frame's value.
+     */
+    private int assertFrame(byte type, int channelId, int value) throws IOException {
+        assertEquals(type, fromLink.readByte());
+        assertEquals(channelId, fromLink.readInt());
+
+        int actual = fromLink.readInt();
+        if (value != -1) {
+            assertEquals(value, actual);
+        }
+
+        return actual;
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (i * 3);
+        }
+
+        return bytes;
+    }
+
+    private static byte[] readFully(DataInputStream inputStream, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        inputStream.readFully(bytes);
+        return bytes;
+    }
+
+    private class RecordingListener implements MultiplexedLink.Listener {
+
+        @Override
+        public LocalEndpoint onChannelRequested(MultiplexedLink link, int channelId) {
+            try {
+                localConnectAllowed.await();
+            } catch (InterruptedException e) {
+                return null;
+            }
+
+            LocalEndpoint localEndpoint = localEndpoints.connect();
+
+            try {
+                localEnds.put(channelId, localEndpoints.accept());
+            } catch (InterruptedException e) {
+                return null;
+            }
+
+            return localEndpoint;
+        }
+
+        @Override
+        public void onChannelOpened(MultiplexedLink link, int channelId, boolean remotelyOpened) {
+            events.add("opened " + channelId + (remotelyOpened ? " remotely" : " locally"));
+        }
+
+        @Override
+        public void onChannelClosed(MultiplexedLink link, int channelId) {
+            events.add("closed " + channelId);
+        }
+
+        @Override
+        public void onLinkClosed(MultiplexedLink link, IOException failure) {
+            events.add("link closed" + (failure == null ? "" : " " + failure.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.rusel.RCTBluetoothSerial.pump;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class BufferPoolTest {
+
+    @Test
+    public void roundsSizesUpToPowersOfTwoWithinBounds() {
+        BufferPool pool = new BufferPool(1000, 5000, 1024 * 1024);
+
+        assertEquals(1024, pool.getMinBufferSize());
+        assertEquals(8192, pool.getMaxBufferSize());
+
+        assertEquals(1024, pool.acquire(1).length);
+        assertEquals(2048, pool.acquire(1025).length);
+        assertEquals(8192, pool.acquire(100000).length);
+    }
+
+    @Test
+    public void reusesReleasedBuffersOfTheSameSize() {
+        BufferPool pool = new BufferPool(1024, 8192, 1024 * 1024);
+
+        byte[] buffer = pool.acquire(2048);
+        pool.release(buffer);
+
+        assertSame(buffer, pool.acquire(2000));
+        assertNotSame(buffer, pool.acquire(4096));
+        assertEquals(2, pool.getAllocationCount());
+        assertEquals(1, pool.getReuseCount());
+    }
+
+    @Test
+    public void retainsNoMoreThanEachSizeClassesShareOfTheBudget() {
+        // Two size classes, so 2048 bytes each: two 1024 byte buffers, one 2048 byte buffer
+        BufferPool pool = new BufferPool(1024, 2048, 4096);
+
+        for (int i = 0; i < 4; i++) {
+            pool.release(new byte[1024]);
+            pool.release(new byte[2048]);
+        }
+
+        assertEquals(2 * 1024 + 2048, pool.getPooledBytes());
+    }
+
+    @Test
+    public void ignoresBuffersItCouldNotHaveHandedOut() {
+        BufferPool pool = new BufferPool(1024, 2048, 1024 * 1024);
+
+        pool.release(new byte[512]);
+        pool.release(new byte[1500]);
+        pool.release(new byte[4096]);
+
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMaximumBelowMinimum() {
+        new BufferPool(4096, 1024, 1024 * 1024);
+    }
+}
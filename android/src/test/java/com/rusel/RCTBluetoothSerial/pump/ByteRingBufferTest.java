@@ -0,0 +1,98 @@
+package com.rusel.RCTBluetoothSerial.pump;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ByteRingBufferTest {
+
+    @Test
+    public void deliversBytesInOrderAcrossTheWrapAround() throws IOException {
+        ByteRingBuffer buffer = new ByteRingBuffer(8, 8, 4, new AtomicLong());
+        byte[] read = new byte[6];
+
+        buffer.getOutputStream().write(new byte[] {1, 2, 3, 4, 5, 6});
+        assertEquals(6, buffer.getInputStream().read(read, 0, 6));
+
+        buffer.getOutputStream().write(new byte[] {7, 8, 9, 10, 11, 12});
+        assertEquals(6, buffer.getInputStream().read(read, 0, 6));
+        assertArrayEquals(new byte[] {7, 8, 9, 10, 11, 12}, read);
+    }
+
+    @Test(timeout = 10000)
+    public void pausesTheProducerAtTheHighWatermarkUntilTheLowWatermark() throws Exception {
+        AtomicLong pauses = new AtomicLong();
+        final ByteRingBuffer buffer = new ByteRingBuffer(16, 8, 4, pauses);
+
+        buffer.getOutputStream().write(new byte[8]);
+        assertEquals(1, pauses.get());
+
+        final CountDownLatch written = new CountDownLatch(1);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    buffer.getOutputStream().write(new byte[1]);
+                    written.countDown();
+                } catch (IOException e) {
+                    // Leaves the latch unreleased
+                }
+            }
+        });
+        producer.start();
+
+        // Draining to just above the low watermark is not enough to resume the producer
+        buffer.getInputStream().read(new byte[3], 0, 3);
+        assertFalse(written.await(100, TimeUnit.MILLISECONDS));
+
+        buffer.getInputStream().read(new byte[1], 0, 1);
+        assertTrue(written.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void signalsTheEndOfTheStreamOnceDrained() throws IOException {
+        ByteRingBuffer buffer = new ByteRingBuffer(8, 8, 4, new AtomicLong());
+
+        buffer.getOutputStream().write(new byte[] {1, 2});
+        buffer.closeWrite();
+
+        assertEquals(2, buffer.getInputStream().read(new byte[8], 0, 8));
+        assertEquals(-1, buffer.getInputStream().read(new byte[8], 0, 8));
+    }
+
+    @Test
+    public void failsBothEndsOnceAborted() throws IOException {
+        ByteRingBuffer buffer = new ByteRingBuffer(8, 8, 4, new AtomicLong());
+
+        buffer.getOutputStream().write(new byte[] {1, 2});
+        buffer.abort();
+
+        try {
+            buffer.getInputStream().read(new byte[8], 0, 8);
+            fail("Expected the read to fail");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        try {
+            buffer.getOutputStream().write(new byte[1]);
+            fail("Expected the write to fail");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsLowWatermarkAboveHighWatermark() {
+        new ByteRingBuffer(16, 8, 12, new AtomicLong());
+    }
+}
@@ -0,0 +1,155 @@
+package com.rusel.RCTBluetoothSerial.pump;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CoalescingOutputStreamTest {
+
+    @Test
+    public void passesLargeWritesStraightThrough() throws IOException {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        CoalescingOutputStream stream = new CoalescingOutputStream(sink, 16, 1000000);
+
+        stream.write(new byte[20]);
+
+        assertEquals(20, sink.size());
+    }
+
+    @Test
+    public void holdsSmallWritesBackUntilTheTargetIsReached() throws IOException {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        CoalescingOutputStream stream = new CoalescingOutputStream(sink, 16, 1000000);
+
+        stream.write(new byte[10]);
+        assertEquals(0, sink.size());
+
+        stream.write(new byte[10]);
+        assertEquals(16, sink.size());
+
+        stream.flush();
+        assertEquals(20, sink.size());
+    }
+
+    @Test(timeout = 10000)
+    public void flushesHeldBackBytesOnceTheirDelayRunsOut() throws Exception {
+        RecordingOutputStream sink = new RecordingOutputStream();
+        CoalescingOutputStream stream = new CoalescingOutputStream(sink, 1024, 20000);
+        Thread flusher = startFlusher(stream);
+
+        stream.write(new byte[10]);
+
+        assertTrue(sink.written.await(5, TimeUnit.SECONDS));
+        assertEquals(10, sink.bytes.size());
+
+        stream.close();
+        flusher.join(5000);
+        assertFalse(flusher.isAlive());
+    }
+
+    @Test(timeout = 10000)
+    public void aStalledSinkDoesNotHoldUpAnotherStreamsFlushes() throws Exception {
+        StalledOutputStream stalledSink = new StalledOutputStream();
+        CoalescingOutputStream stalled = new CoalescingOutputStream(stalledSink, 1024, 1000);
+        startFlusher(stalled);
+
+        RecordingOutputStream sink = new RecordingOutputStream();
+        CoalescingOutputStream healthy = new CoalescingOutputStream(sink, 1024, 20000);
+        startFlusher(healthy);
+
+        stalled.write(new byte[10]);
+        assertTrue(stalledSink.entered.await(5, TimeUnit.SECONDS));
+
+        healthy.write(new byte[10]);
+        assertTrue(sink.written.await(5, TimeUnit.SECONDS));
+
+        stalledSink.release.countDown();
+    }
+
+    @Test(timeout = 10000)
+    public void rethrowsAFailedDeadlineFlushOnTheNextWrite() throws Exception {
+        OutputStream failingSink = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe.");
+            }
+        };
+
+        CoalescingOutputStream stream = new CoalescingOutputStream(failingSink, 1024, 1000);
+        Thread flusher = startFlusher(stream);
+
+        stream.write(new byte[10]);
+
+        // The flusher stops once a flush fails
+        flusher.join(5000);
+        assertFalse(flusher.isAlive());
+
+        try {
+            stream.write(new byte[10]);
+            fail("Expected the failed flush to be rethrown");
+        } catch (IOException e) {
+            assertEquals("Broken pipe.", e.getMessage());
+        }
+    }
+
+    private static Thread startFlusher(final CoalescingOutputStream stream) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                stream.runDeadlineFlushes();
+            }
+        });
+
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static class RecordingOutputStream extends OutputStream {
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final CountDownLatch written = new CountDownLatch(1);
+
+        @Override
+        public void write(int b) {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            bytes.write(b, off, len);
+            written.countDown();
+        }
+    }
+
+    private static class StalledOutputStream extends OutputStream {
+
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            entered.countDown();
+
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
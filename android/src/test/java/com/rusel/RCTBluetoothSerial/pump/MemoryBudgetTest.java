@@ -0,0 +1,32 @@
+package com.rusel.RCTBluetoothSerial.pump;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryBudgetTest {
+
+    @Test
+    public void refusesReservationsBeyondTheTotal() {
+        MemoryBudget budget = new MemoryBudget(100);
+
+        assertTrue(budget.tryReserve(60));
+        assertFalse(budget.tryReserve(60));
+        assertTrue(budget.tryReserve(40));
+
+        assertEquals(100, budget.getReservedBytes());
+        assertEquals(1, budget.getRefusalCount());
+    }
+
+    @Test
+    public void releasedBytesCanBeReservedAgain() {
+        MemoryBudget budget = new MemoryBudget(100);
+
+        assertTrue(budget.tryReserve(100));
+        budget.release(100);
+
+        assertTrue(budget.tryReserve(100));
+    }
+}
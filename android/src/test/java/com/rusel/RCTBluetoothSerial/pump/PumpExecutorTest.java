@@ -0,0 +1,123 @@
+package com.rusel.RCTBluetoothSerial.pump;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PumpExecutorTest {
+
+    private PumpExecutor executor;
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test(timeout = 10000)
+    public void rejectsAllOfAGroupThatDoesNotFit() throws Exception {
+        executor = new PumpExecutor("test", 3, PumpExecutor.QueuePolicy.REJECT, 0, 1000);
+        BlockingTask first = new BlockingTask();
+        BlockingTask second = new BlockingTask();
+        BlockingTask third = new BlockingTask();
+
+        executor.execute(first, second);
+
+        try {
+            executor.execute(third, new BlockingTask());
+            fail("Expected the group to be rejected");
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+
+        assertEquals(2, executor.getRejectedTaskCount());
+        assertTrue(first.awaitStarted());
+        assertFalse(third.started.await(100, TimeUnit.MILLISECONDS));
+
+        first.finish();
+        second.finish();
+    }
+
+    @Test(timeout = 10000)
+    public void startsAQueuedGroupOnlyOnceThereIsAThreadForEachTask() throws Exception {
+        executor = new PumpExecutor("test", 2, PumpExecutor.QueuePolicy.QUEUE, 2, 1000);
+        BlockingTask running1 = new BlockingTask();
+        BlockingTask running2 = new BlockingTask();
+        BlockingTask queued1 = new BlockingTask();
+        BlockingTask queued2 = new BlockingTask();
+
+        executor.execute(running1, running2);
+        assertTrue(running1.awaitStarted());
+        assertTrue(running2.awaitStarted());
+
+        executor.execute(queued1, queued2);
+        assertEquals(2, executor.getQueueDepth());
+
+        // One free thread is not enough for the pair
+        running1.finish();
+        assertFalse(queued1.started.await(200, TimeUnit.MILLISECONDS));
+        assertFalse(queued2.started.await(0, TimeUnit.MILLISECONDS));
+
+        running2.finish();
+        assertTrue(queued1.awaitStarted());
+        assertTrue(queued2.awaitStarted());
+        assertEquals(0, executor.getQueueDepth());
+
+        queued1.finish();
+        queued2.finish();
+    }
+
+    @Test(timeout = 10000)
+    public void rejectsOnceTheQueueIsFull() throws Exception {
+        executor = new PumpExecutor("test", 2, PumpExecutor.QueuePolicy.QUEUE, 2, 1000);
+        BlockingTask running1 = new BlockingTask();
+        BlockingTask running2 = new BlockingTask();
+
+        executor.execute(running1, running2);
+        executor.execute(new BlockingTask(), new BlockingTask());
+
+        try {
+            executor.execute(new BlockingTask(), new BlockingTask());
+            fail("Expected the group to be rejected");
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+
+        assertEquals(2, executor.getQueueDepth());
+
+        running1.finish();
+        running2.finish();
+    }
+
+    private static class BlockingTask implements Runnable {
+
+        final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch finish = new CountDownLatch(1);
+
+        @Override
+        public void run() {
+            started.countDown();
+
+            try {
+                finish.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        boolean awaitStarted() throws InterruptedException {
+            return started.await(5, TimeUnit.SECONDS);
+        }
+
+        void finish() {
+            finish.countDown();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.rusel.RCTBluetoothSerial.pump;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RelayTest {
+
+    private final StreamPump streamPump = new StreamPump(new BufferPool(1024, 8192, 1024 * 1024));
+
+    @Test(timeout = 10000)
+    public void copiesThroughTheIntermediateBufferAndEndsOnce() throws Exception {
+        byte[] data = new byte[200 * 1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        RecordingListener listener = new RecordingListener();
+        CountingCloseable connection = new CountingCloseable();
+
+        Relay relay = new Relay(streamPump, new ByteArrayInputStream(data), sink,
+                new ByteRingBuffer(16 * 1024, 12 * 1024, 4 * 1024, new AtomicLong()), connection, listener);
+
+        Runnable[] tasks = relay.createTasks();
+        assertEquals(2, tasks.length);
+        runAll(tasks);
+
+        assertTrue(listener.ended.await(5, TimeUnit.SECONDS));
+        assertNull(listener.failure.get());
+        assertEquals(1, listener.calls.get());
+        assertEquals(1, connection.closes.get());
+        assertArrayEquals(data, sink.toByteArray());
+    }
+
+    @Test(timeout = 10000)
+    public void reportsTheFailureThatStoppedIt() throws Exception {
+        InputStream failingSource = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Connection reset.");
+            }
+        };
+
+        RecordingListener listener = new RecordingListener();
+        CountingCloseable connection = new CountingCloseable();
+
+        Relay relay = new Relay(streamPump, failingSource, new ByteArrayOutputStream(),
+                new ByteRingBuffer(1024, 1024, 512, new AtomicLong()), connection, listener);
+
+        runAll(relay.createTasks());
+
+        assertTrue(listener.ended.await(5, TimeUnit.SECONDS));
+        assertEquals("Connection reset.", listener.failure.get().getMessage());
+        assertEquals(1, listener.calls.get());
+    }
+
+    private static void runAll(Runnable[] tasks) {
+        for (Runnable task : tasks) {
+            new Thread(task).start();
+        }
+    }
+
+    private static class RecordingListener implements Relay.Listener {
+
+        final CountDownLatch ended = new CountDownLatch(1);
+        final AtomicReference<IOException> failure = new AtomicReference<>();
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public void onEnded(IOException failure) {
+            this.failure.set(failure);
+            calls.incrementAndGet();
+            ended.countDown();
+        }
+    }
+
+    private static class CountingCloseable implements Closeable {
+
+        final AtomicInteger closes = new AtomicInteger();
+
+        @Override
+        public void close() {
+            closes.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.rusel.RCTBluetoothSerial.pump;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class StreamPumpTest {
+
+    @Test
+    public void copiesTheWholeStream() throws IOException {
+        byte[] data = new byte[300 * 1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        long copied = new StreamPump(new BufferPool(1024, 32 * 1024, 1024 * 1024))
+                .pump(new ByteArrayInputStream(data), output);
+
+        assertEquals(data.length, copied);
+        assertArrayEquals(data, output.toByteArray());
+    }
+
+    @Test
+    public void growsTheBufferUnderSustainedLoad() throws IOException {
+        RecordingInputStream input = new RecordingInputStream(new ByteArrayInputStream(new byte[256 * 1024]));
+
+        new StreamPump(new BufferPool(1024, 8192, 1024 * 1024)).pump(input, new ByteArrayOutputStream());
+
+        assertEquals(1024, (int) input.requestedLengths.get(0));
+        assertEquals(8192, (int) input.requestedLengths.get(input.requestedLengths.size() - 1));
+    }
+
+    @Test
+    public void shrinksTheBufferWhenReadsAreSmall() throws IOException {
+        BufferPool pool = new BufferPool(1024, 8192, 1024 * 1024);
+        TricklingInputStream input = new TricklingInputStream(64 * 1024, 100);
+
+        new StreamPump(pool).pump(input, new ByteArrayOutputStream());
+
+        int last = input.requestedLengths.get(input.requestedLengths.size() - 1);
+        int largest = 0;
+        for (int length : input.requestedLengths) {
+            largest = Math.max(largest, length);
+        }
+
+        assertEquals(8192, largest);
+        assertEquals(1024, last);
+    }
+
+    @Test
+    public void returnsItsBufferToThePool() throws IOException {
+        BufferPool pool = new BufferPool(1024, 1024, 1024 * 1024);
+
+        new StreamPump(pool).pump(new ByteArrayInputStream(new byte[10]), new ByteArrayOutputStream());
+
+        assertEquals(1024, pool.getPooledBytes());
+    }
+
+    private static class RecordingInputStream extends InputStream {
+
+        final List<Integer> requestedLengths = new ArrayList<>();
+        private final InputStream inputStream;
+
+        RecordingInputStream(InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return inputStream.read();
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            requestedLengths.add(length);
+            return inputStream.read(bytes, offset, length);
+        }
+    }
+
+    /**
+     * Fills every read for the first bulkBytes, then hands out a few bytes per read.
+     */
+    private static class TricklingInputStream extends InputStream {
+
+        final List<Integer> requestedLengths = new ArrayList<>();
+        private int bulkRemaining;
+        private int smallReadsRemaining;
+
+        TricklingInputStream(int bulkBytes, int smallReads) {
+            this.bulkRemaining = bulkBytes;
+            this.smallReadsRemaining = smallReads;
+        }
+
+        @Override
+        public int read() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            requestedLengths.add(length);
+
+            if (bulkRemaining > 0) {
+                int count = Math.min(length, bulkRemaining);
+                bulkRemaining -= count;
+                return count;
+            }
+
+            if (smallReadsRemaining-- > 0) {
+                return 10;
+            }
+
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.rusel.RCTBluetoothSerial.trace;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import static org.junit.Assert.assertEquals;
+
+public class TraceEventTest {
+
+    @Test
+    public void numbersEventsInOrderAndNamesEachOne() throws Exception {
+        int expected = 1;
+
+        for (Field field : TraceEvent.class.getDeclaredFields()) {
+            if (field.getType() != int.class || !Modifier.isPublic(field.getModifiers())) {
+                continue;
+            }
+
+            assertEquals(field.getName(), expected, field.getInt(null));
+            assertEquals(camelCase(field.getName()), TraceEvent.nameOf(expected));
+            expected++;
+        }
+
+        assertEquals(String.valueOf(expected), TraceEvent.nameOf(expected));
+    }
+
+    private static String camelCase(String constant) {
+        StringBuilder name = new StringBuilder();
+
+        for (String word : constant.toLowerCase().split("_")) {
+            name.append(name.length() == 0 ? word : Character.toUpperCase(word.charAt(0)) + word.substring(1));
+        }
+
+        return name.toString();
+    }
+}
@@ -0,0 +1,81 @@
+package com.rusel.RCTBluetoothSerial.transport;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dials in-memory 'remote devices'. The remote end of each successful connection can be picked up
+ * with accept(), and addresses can be marked as unreachable to exercise connection failures.
+ */
+public class InMemoryBluetoothLinkConnector implements BluetoothLinkConnector {
+
+    private final BlockingQueue<InMemoryConnection> remoteEnds = new LinkedBlockingQueue<>();
+    private final Set<String> unreachableAddresses =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final int pipeCapacity;
+    private volatile long pageTimeoutMillis = 0;
+    private volatile long pageDelayMillis = 0;
+
+    public InMemoryBluetoothLinkConnector(int pipeCapacity) {
+        this.pipeCapacity = pipeCapacity;
+    }
+
+    public InMemoryBluetoothLinkConnector() {
+        this(InMemoryConnection.DEFAULT_PIPE_CAPACITY);
+    }
+
+    /**
+     * How long connection attempts to unreachable addresses block before failing. Defaults to failing
+     * immediately.
+     */
+    public void setPageTimeoutMillis(long pageTimeoutMillis) {
+        this.pageTimeoutMillis = pageTimeoutMillis;
+    }
+
+    /**
+     * How long connection attempts to reachable addresses block before succeeding. Defaults to
+     * succeeding immediately.
+     */
+    public void setPageDelayMillis(long pageDelayMillis) {
+        this.pageDelayMillis = pageDelayMillis;
+    }
+
+    public void setUnreachable(String remoteAddress, boolean unreachable) {
+        if (unreachable) {
+            unreachableAddresses.add(remoteAddress);
+        } else {
+            unreachableAddresses.remove(remoteAddress);
+        }
+    }
+
+    @Override
+    public BluetoothLink createLink(String remoteAddress) {
+        InMemoryConnection[] ends = InMemoryConnection.pair(remoteAddress, pipeCapacity);
+
+        if (unreachableAddresses.contains(remoteAddress)) {
+            ends[0].failConnectWith(new IOException("Page timeout."), pageTimeoutMillis);
+        } else {
+            ends[0].delayConnect(pageDelayMillis);
+            ends[0].offerPeerOnConnect(remoteEnds);
+        }
+
+        return ends[0];
+    }
+
+    /**
+     * Blocks until a connection has been made, and returns the remote device's end of it.
+     */
+    public InMemoryConnection accept() throws InterruptedException {
+        return remoteEnds.take();
+    }
+
+    public InMemoryConnection accept(long timeout, TimeUnit unit) throws InterruptedException {
+        return remoteEnds.poll(timeout, unit);
+    }
+}
@@ -0,0 +1,147 @@
+package com.rusel.RCTBluetoothSerial.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * One end of an in-memory duplex connection. Can stand in for either side of the bridge, so that
+ * the bridge can be exercised on a plain JVM without a radio or unix sockets.
+ */
+public class InMemoryConnection implements BluetoothLink, LocalEndpoint {
+
+    public static final int DEFAULT_PIPE_CAPACITY = 64 * 1024;
+
+    private final String remoteAddress;
+    private final InMemoryPipe incoming;
+    private final InMemoryPipe outgoing;
+
+    private InMemoryConnection peer;
+
+    private IOException connectFailure = null;
+    private long connectFailureDelayMillis = 0;
+    private long connectDelayMillis = 0;
+    private boolean closed = false;
+    private BlockingQueue<InMemoryConnection> connectedPeers = null;
+
+    private InMemoryConnection(String remoteAddress, InMemoryPipe incoming, InMemoryPipe outgoing) {
+        this.remoteAddress = remoteAddress;
+        this.incoming = incoming;
+        this.outgoing = outgoing;
+    }
+
+    /**
+     * Creates two connected ends. The first reports remoteAddress as the address of its peer.
+     */
+    public static InMemoryConnection[] pair(String remoteAddress, int pipeCapacity) {
+        InMemoryPipe aToB = new InMemoryPipe(pipeCapacity);
+        InMemoryPipe bToA = new InMemoryPipe(pipeCapacity);
+
+        InMemoryConnection a = new InMemoryConnection(remoteAddress, bToA, aToB);
+        InMemoryConnection b = new InMemoryConnection(null, aToB, bToA);
+        a.peer = b;
+        b.peer = a;
+
+        return new InMemoryConnection[] {a, b};
+    }
+
+    public static InMemoryConnection[] pair(String remoteAddress) {
+        return pair(remoteAddress, DEFAULT_PIPE_CAPACITY);
+    }
+
+    public InMemoryConnection getPeer() {
+        return peer;
+    }
+
+    /**
+     * Makes connect() block for the given time and then fail with the given exception rather than
+     * succeed, like paging a device that is out of range. Closing the connection aborts the wait.
+     */
+    void failConnectWith(IOException connectFailure, long delayMillis) {
+        this.connectFailure = connectFailure;
+        this.connectFailureDelayMillis = delayMillis;
+    }
+
+    /**
+     * Makes a successful connect() take the given time, like paging a device that is in range.
+     */
+    void delayConnect(long delayMillis) {
+        this.connectDelayMillis = delayMillis;
+    }
+
+    /**
+     * The peer end is offered to the given queue when connect() succeeds.
+     */
+    void offerPeerOnConnect(BlockingQueue<InMemoryConnection> connectedPeers) {
+        this.connectedPeers = connectedPeers;
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        if (connectFailure != null) {
+            awaitClose(connectFailureDelayMillis);
+            throw connectFailure;
+        }
+
+        if (connectDelayMillis > 0) {
+            awaitClose(connectDelayMillis);
+        }
+
+        if (connectedPeers != null) {
+            connectedPeers.add(peer);
+            connectedPeers = null;
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return incoming.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return outgoing.getOutputStream();
+    }
+
+    @Override
+    public void close() {
+        incoming.closeRead();
+        outgoing.closeWrite();
+
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+    }
+
+    private synchronized void awaitClose(long timeoutMillis) throws IOException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining = timeoutMillis;
+
+        try {
+            while (!closed && remaining > 0) {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+
+        if (closed) {
+            throw new IOException("Socket closed.");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "InMemoryConnection(" + remoteAddress + ")";
+    }
+}
@@ -0,0 +1,40 @@
+package com.rusel.RCTBluetoothSerial.transport;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays the part of the local process listening on a unix socket. Each connection the bridge opens
+ * is handed to whoever calls accept().
+ */
+public class InMemoryLocalEndpointConnector implements LocalEndpointConnector {
+
+    private final BlockingQueue<InMemoryConnection> acceptedEnds = new LinkedBlockingQueue<>();
+
+    private final int pipeCapacity;
+
+    public InMemoryLocalEndpointConnector(int pipeCapacity) {
+        this.pipeCapacity = pipeCapacity;
+    }
+
+    public InMemoryLocalEndpointConnector() {
+        this(InMemoryConnection.DEFAULT_PIPE_CAPACITY);
+    }
+
+    @Override
+    public LocalEndpoint connect() {
+        InMemoryConnection[] ends = InMemoryConnection.pair(null, pipeCapacity);
+        acceptedEnds.add(ends[1]);
+
+        return ends[0];
+    }
+
+    public InMemoryConnection accept() throws InterruptedException {
+        return acceptedEnds.take();
+    }
+
+    public InMemoryConnection accept(long timeout, TimeUnit unit) throws InterruptedException {
+        return acceptedEnds.poll(timeout, unit);
+    }
+}
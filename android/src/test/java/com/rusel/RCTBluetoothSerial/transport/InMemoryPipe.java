@@ -0,0 +1,169 @@
+package com.rusel.RCTBluetoothSerial.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * A bounded, blocking, in-memory byte pipe. Unlike java.io.PipedInputStream this isn't tied to the
+ * liveness of the threads that happen to read and write it, and it moves whole chunks per call so
+ * that it doesn't become the bottleneck when benchmarking the bridge.
+ */
+public class InMemoryPipe {
+
+    private final byte[] buffer;
+
+    private int readPosition = 0;
+    private int available = 0;
+
+    private boolean writeClosed = false;
+    private boolean readClosed = false;
+
+    private final InputStream inputStream = new PipeInputStream();
+    private final OutputStream outputStream = new PipeOutputStream();
+
+    public InMemoryPipe(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    /**
+     * Readers see end of stream once the remaining bytes have been read.
+     */
+    public synchronized void closeWrite() {
+        writeClosed = true;
+        notifyAll();
+    }
+
+    /**
+     * Pending and future writes fail.
+     */
+    public synchronized void closeRead() {
+        readClosed = true;
+        notifyAll();
+    }
+
+    private synchronized int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        while (available == 0) {
+            if (readClosed) {
+                throw new IOException("Pipe closed.");
+            }
+
+            if (writeClosed) {
+                return -1;
+            }
+
+            awaitChange();
+        }
+
+        if (readClosed) {
+            throw new IOException("Pipe closed.");
+        }
+
+        int count = Math.min(length, available);
+        int firstPart = Math.min(count, buffer.length - readPosition);
+
+        System.arraycopy(buffer, readPosition, bytes, offset, firstPart);
+        System.arraycopy(buffer, 0, bytes, offset + firstPart, count - firstPart);
+
+        readPosition = (readPosition + count) % buffer.length;
+        available -= count;
+
+        notifyAll();
+        return count;
+    }
+
+    private synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (readClosed || writeClosed) {
+                throw new IOException("Pipe closed.");
+            }
+
+            if (available == buffer.length) {
+                awaitChange();
+                continue;
+            }
+
+            int writePosition = (readPosition + available) % buffer.length;
+            int count = Math.min(length, buffer.length - available);
+            int firstPart = Math.min(count, buffer.length - writePosition);
+
+            System.arraycopy(bytes, offset, buffer, writePosition, firstPart);
+            System.arraycopy(bytes, offset + firstPart, buffer, 0, count - firstPart);
+
+            available += count;
+            offset += count;
+            length -= count;
+
+            notifyAll();
+        }
+    }
+
+    private synchronized int available() {
+        return available;
+    }
+
+    private void awaitChange() throws InterruptedIOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+    }
+
+    private class PipeInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = InMemoryPipe.this.read(single, 0, 1);
+            return read == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            return InMemoryPipe.this.read(bytes, offset, length);
+        }
+
+        @Override
+        public int available() {
+            return InMemoryPipe.this.available();
+        }
+
+        @Override
+        public void close() {
+            closeRead();
+        }
+    }
+
+    private class PipeOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            InMemoryPipe.this.write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            InMemoryPipe.this.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() {
+            closeWrite();
+        }
+    }
+}
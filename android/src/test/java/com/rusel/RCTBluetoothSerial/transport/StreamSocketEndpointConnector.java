@@ -0,0 +1,61 @@
+package com.rusel.RCTBluetoothSerial.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketAddress;
+
+/**
+ * Connects the local side of the bridge to a java.net stream socket. Useful for driving the bridge
+ * on a desktop JVM against a real socket (e.g. a loopback listener in a benchmark harness) where
+ * android.net.LocalSocket is not available.
+ */
+public class StreamSocketEndpointConnector implements LocalEndpointConnector {
+
+    private final SocketAddress socketAddress;
+
+    public StreamSocketEndpointConnector(SocketAddress socketAddress) {
+        this.socketAddress = socketAddress;
+    }
+
+    @Override
+    public LocalEndpoint connect() throws IOException {
+        final Socket socket = new Socket();
+
+        try {
+            socket.connect(socketAddress);
+            socket.setTcpNoDelay(true);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+
+        return new LocalEndpoint() {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return socket.getInputStream();
+            }
+
+            @Override
+            public OutputStream getOutputStream() throws IOException {
+                return socket.getOutputStream();
+            }
+
+            @Override
+            public void close() throws IOException {
+                socket.close();
+            }
+
+            @Override
+            public String toString() {
+                return "StreamSocketEndpoint(" + socketAddress + ")";
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(socketAddress);
+    }
+}